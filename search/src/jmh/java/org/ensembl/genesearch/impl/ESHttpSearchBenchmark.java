@@ -0,0 +1,130 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.ensembl.genesearch.impl.ESHttpSearch.Format;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmark comparing decoding of a page of scroll hits containing
+ * representative gene documents in each {@link Format} supported by
+ * {@link ESHttpSearch}. The size of each encoded page is printed during setup.
+ *
+ * @author dstaines
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ESHttpSearchBenchmark {
+
+    private static final int HITS = 100;
+
+    @Param({ "JSON", "SMILE", "CBOR" })
+    public Format format;
+
+    private final static Logger log = LoggerFactory.getLogger(ESHttpSearchBenchmark.class);
+
+    private byte[] page;
+
+    @Setup
+    public void setup() throws IOException {
+        List<Map<String, Object>> hits = new ArrayList<>(HITS);
+        for (int i = 0; i < HITS; i++) {
+            Map<String, Object> hit = new LinkedHashMap<>();
+            hit.put("_id", "ENSG" + i);
+            hit.put("_source", gene(i));
+            hits.add(hit);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("_scroll_id", "DXF1ZXJ5QW5kRmV0Y2gBAAAAAAAAAD4WYm9laVYtZndUQlNsdDcwakFMNjU1QQ==");
+        response.put("hits", Collections.singletonMap("hits", hits));
+        page = new ObjectMapper(format.getFactory()).writeValueAsBytes(response);
+        log.info(format + " page of " + HITS + " hits: " + page.length + " bytes (" + (page.length / HITS)
+                + " per hit)");
+    }
+
+    @Benchmark
+    public void readPage(Blackhole bh) throws IOException {
+        try (JsonParser parser = format.getFactory().createParser(page)) {
+            ESHttpSearch.readPage(bh::consume, parser);
+        }
+    }
+
+    private static Map<String, Object> gene(int n) {
+        Map<String, Object> gene = new LinkedHashMap<>();
+        gene.put("id", "ENSG" + n);
+        gene.put("name", "GENE" + n);
+        gene.put("description", "BRCA2 DNA repair associated [Source:HGNC Symbol;Acc:HGNC:1101]");
+        gene.put("genome", "homo_sapiens");
+        gene.put("biotype", "protein_coding");
+        gene.put("seq_region_name", "13");
+        gene.put("start", 32315474 + n);
+        gene.put("end", 32400266 + n);
+        gene.put("strand", 1);
+        gene.put("synonyms", Arrays.asList("BRCC2", "FACD", "FANCD1", "XRCC11"));
+        List<Map<String, Object>> transcripts = new ArrayList<>();
+        for (int t = 0; t < 5; t++) {
+            Map<String, Object> transcript = new LinkedHashMap<>();
+            transcript.put("id", "ENST" + n + "_" + t);
+            transcript.put("biotype", "protein_coding");
+            transcript.put("start", 32315474 + t);
+            transcript.put("end", 32400266 - t);
+            List<Map<String, Object>> xrefs = new ArrayList<>();
+            for (int x = 0; x < 6; x++) {
+                Map<String, Object> xref = new LinkedHashMap<>();
+                xref.put("primary_id", "NM_0000" + x);
+                xref.put("display_id", "NM_0000" + x + ".4");
+                xref.put("dbname", "RefSeq_mRNA");
+                xrefs.add(xref);
+            }
+            transcript.put("xrefs", xrefs);
+            transcripts.add(transcript);
+        }
+        gene.put("transcripts", transcripts);
+        List<Map<String, Object>> homologues = new ArrayList<>();
+        for (int h = 0; h < 10; h++) {
+            Map<String, Object> homologue = new LinkedHashMap<>();
+            homologue.put("stable_id", "ENSMUSG" + h);
+            homologue.put("genome", "mus_musculus");
+            homologue.put("orthology_type", "ortholog_one2one");
+            homologues.add(homologue);
+        }
+        gene.put("homologues", homologues);
+        return gene;
+    }
+
+}
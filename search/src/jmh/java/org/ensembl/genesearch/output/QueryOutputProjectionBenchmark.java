@@ -0,0 +1,210 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.output;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.ensembl.genesearch.QueryOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmark comparing projection of representative gene and variant rows
+ * using the original path-matching filter, the compiled projection applied
+ * to a parsed row, and the compiled projection applied directly to the token
+ * stream.
+ *
+ * @author dstaines
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class QueryOutputProjectionBenchmark {
+
+    private static final ObjectMapper om = new ObjectMapper();
+
+    @Param({ "gene", "variant" })
+    public String row;
+
+    private byte[] json;
+    private QueryOutput output;
+    private QueryOutputProjection projection;
+
+    @Setup
+    public void setup() throws IOException {
+        Map<String, Object> obj;
+        if ("gene".equals(row)) {
+            obj = gene();
+            output = QueryOutput.build("[\"id\",\"name\",\"genome\",\"location.start\",\"location.end\","
+                    + "{\"transcripts\":[\"id\",\"biotype\",{\"translations\":[\"id\"]}]}]");
+        } else {
+            obj = variant();
+            output = QueryOutput.build("[\"id\",\"seq_region_name\",\"start\",\"alt_allele\","
+                    + "{\"genotypes\":[\"id\",\"genotype\"]}]");
+        }
+        json = om.writeValueAsBytes(obj);
+        projection = output.compile();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public Map<String, Object> pathFilter() throws IOException {
+        return filterByPath(om.readValue(json, Map.class), output, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public Map<String, Object> compiledFilter() throws IOException {
+        return projection.filter(om.readValue(json, Map.class));
+    }
+
+    @Benchmark
+    public Map<String, Object> compiledRead() throws IOException {
+        try (JsonParser parser = om.getFactory().createParser(json)) {
+            return projection.read(parser);
+        }
+    }
+
+    private static Map<String, Object> gene() {
+        Map<String, Object> gene = new LinkedHashMap<>();
+        gene.put("id", "ENSG00000139618");
+        gene.put("name", "BRCA2");
+        gene.put("description", "BRCA2 DNA repair associated [Source:HGNC Symbol;Acc:HGNC:1101]");
+        gene.put("genome", "homo_sapiens");
+        gene.put("biotype", "protein_coding");
+        Map<String, Object> location = new LinkedHashMap<>();
+        location.put("seq_region_name", "13");
+        location.put("start", 32315474);
+        location.put("end", 32400266);
+        location.put("strand", 1);
+        gene.put("location", location);
+        gene.put("synonyms", Arrays.asList("BRCC2", "FACD", "FANCD1", "XRCC11"));
+        List<Map<String, Object>> transcripts = new ArrayList<>();
+        for (int t = 0; t < 10; t++) {
+            Map<String, Object> transcript = new LinkedHashMap<>();
+            transcript.put("id", "ENST0000038015" + t);
+            transcript.put("biotype", "protein_coding");
+            transcript.put("start", 32315474 + t);
+            transcript.put("end", 32400266 - t);
+            List<Map<String, Object>> xrefs = new ArrayList<>();
+            for (int x = 0; x < 8; x++) {
+                Map<String, Object> xref = new LinkedHashMap<>();
+                xref.put("primary_id", "X" + x);
+                xref.put("display_id", "XREF" + x);
+                xref.put("dbname", "RefSeq_mRNA");
+                xrefs.add(xref);
+            }
+            transcript.put("xrefs", xrefs);
+            Map<String, Object> translation = new LinkedHashMap<>();
+            translation.put("id", "ENSP0000038015" + t);
+            translation.put("protein_features", Arrays.asList("PF09169", "PF09103", "PF00634"));
+            transcript.put("translations", Arrays.asList(translation));
+            transcripts.add(transcript);
+        }
+        gene.put("transcripts", transcripts);
+        return gene;
+    }
+
+    private static Map<String, Object> variant() {
+        Map<String, Object> variant = new LinkedHashMap<>();
+        variant.put("id", "rs699");
+        variant.put("seq_region_name", "1");
+        variant.put("start", "230710048");
+        variant.put("ref_allele", "A");
+        variant.put("alt_allele", "G");
+        variant.put("quality", ".");
+        variant.put("filter", "PASS");
+        variant.put("allele_freq", Arrays.asList(0.7, 0.3));
+        List<Map<String, Object>> genotypes = new ArrayList<>();
+        for (int g = 0; g < 100; g++) {
+            Map<String, Object> genotype = new LinkedHashMap<>();
+            genotype.put("id", "SAMPLE" + g);
+            genotype.put("genotype", g % 3 == 0 ? "0|1" : "1|1");
+            genotype.put("heterozygosity", g % 3 == 0);
+            genotype.put("depth", "12");
+            genotypes.add(genotype);
+        }
+        variant.put("genotypes", genotypes);
+        return variant;
+    }
+
+    /**
+     * Path-based filter as originally implemented in
+     * {@link org.ensembl.genesearch.utils.QueryUtils}, retained here for
+     * comparison
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> filterByPath(Map<String, Object> obj, QueryOutput output, String path) {
+        if (path == null && output.isWild()) {
+            return obj;
+        }
+        Iterator<String> i = obj.keySet().iterator();
+        while (i.hasNext()) {
+            String key = i.next();
+            String keyPath = path == null ? key : path + '.' + key;
+            Object so = obj.get(key);
+            if (so instanceof Map && output.containsPathChildren(keyPath)) {
+                Map<String, Object> mo = (Map<String, Object>) so;
+                filterByPath(mo, output, keyPath);
+                if (mo.isEmpty()) {
+                    i.remove();
+                }
+            } else if (so instanceof List) {
+                List<?> lo = (List<?>) so;
+                if (lo.isEmpty()) {
+                    i.remove();
+                } else if (lo.get(0) instanceof Map) {
+                    if (output.containsPathChildren(keyPath)) {
+                        Iterator<Map<String, Object>> li = ((List<Map<String, Object>>) lo).iterator();
+                        while (li.hasNext()) {
+                            Map<String, Object> mo = li.next();
+                            filterByPath(mo, output, keyPath);
+                            if (mo.isEmpty()) {
+                                li.remove();
+                            }
+                        }
+                        if (lo.isEmpty()) {
+                            i.remove();
+                        }
+                    } else if (!output.containsPath(keyPath)) {
+                        i.remove();
+                    }
+                } else if (!output.containsPath(keyPath)) {
+                    i.remove();
+                }
+            } else if (!output.containsPath(keyPath)) {
+                i.remove();
+            }
+        }
+        return obj;
+    }
+
+}
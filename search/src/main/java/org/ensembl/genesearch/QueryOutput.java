@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.commons.lang3.StringUtils;
+import org.ensembl.genesearch.output.QueryOutputProjection;
 import org.ensembl.genesearch.utils.QueryUtils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -180,6 +181,17 @@ public class QueryOutput {
         return getFields().stream().anyMatch(s -> s.equals(WILD));
     }
 
+    /**
+     * Compile this output into a projection that can be applied to many
+     * results. Note that the projection reflects the fields at the time of
+     * compilation.
+     * 
+     * @return compiled projection
+     */
+    public QueryOutputProjection compile() {
+        return QueryOutputProjection.compile(this);
+    }
+
     /**
      * Detect if the output contains the specified path. Used by
      * {@link QueryUtils} to decide whether to filter out fields
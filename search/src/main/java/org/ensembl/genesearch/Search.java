@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import org.ensembl.genesearch.info.DataTypeInfo;
@@ -136,6 +137,67 @@ public interface Search {
     public QueryResult query(List<Query> queries, QueryOutput output, List<String> facets, int offset, int limit,
             List<String> sorts);
 
+    /**
+     * Count the number of objects matching the supplied queries. The default
+     * implementation counts the results of
+     * {@link #fetch(Consumer, List, QueryOutput)} retrieving only the ID, and
+     * should be overridden where the backing store can count more cheaply.
+     * 
+     * @param queries
+     *            list of queries to combine with AND
+     * @return number of matching objects
+     */
+    public default long count(List<Query> queries) {
+        AtomicLong n = new AtomicLong();
+        fetch(row -> n.incrementAndGet(), queries, QueryOutput.build(Arrays.asList(getIdField())));
+        return n.get();
+    }
+
+    /**
+     * Find whether any objects match the supplied queries. The default
+     * implementation uses {@link #count(List)}, and should be overridden where
+     * the backing store can stop at the first match.
+     * 
+     * @param queries
+     *            list of queries to combine with AND
+     * @return true if at least one object matches
+     */
+    public default boolean exists(List<Query> queries) {
+        return count(queries) > 0;
+    }
+
+    /**
+     * Count the number of objects matching the supplied queries, where the
+     * output may name joined data needed to resolve them. The default
+     * implementation ignores the output and uses {@link #count(List)}.
+     * 
+     * @param queries
+     *            list of queries to combine with AND
+     * @param output
+     *            output that would be requested from
+     *            {@link #query(List, QueryOutput, List, int, int, List)}
+     * @return number of matching objects
+     */
+    public default long count(List<Query> queries, QueryOutput output) {
+        return count(queries);
+    }
+
+    /**
+     * Find whether any objects match the supplied queries, where the output
+     * may name joined data needed to resolve them. The default implementation
+     * ignores the output and uses {@link #exists(List)}.
+     * 
+     * @param queries
+     *            list of queries to combine with AND
+     * @param output
+     *            output that would be requested from
+     *            {@link #query(List, QueryOutput, List, int, int, List)}
+     * @return true if at least one object matches
+     */
+    public default boolean exists(List<Query> queries, QueryOutput output) {
+        return exists(queries);
+    }
+
     /**
      * Retrieve genes with the supplied ID and write to the consumer
      * 
@@ -195,4 +257,26 @@ public interface Search {
      */
     public boolean up();
 
+    /**
+     * Operational statistics for the search backend (e.g. cache hit rates),
+     * used for monitoring. The default implementation returns no statistics.
+     * 
+     * @return map of statistic names to values
+     */
+    public default Map<String, Object> getStats() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Token identifying the version of the data behind this search (e.g. the
+     * UUIDs of the underlying indices), which changes whenever the data is
+     * reloaded. The default implementation returns null, meaning the version
+     * is unknown.
+     * 
+     * @return version token or null
+     */
+    public default String getDataVersion() {
+        return null;
+    }
+
 }
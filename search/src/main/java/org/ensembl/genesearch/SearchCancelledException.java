@@ -0,0 +1,32 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch;
+
+/**
+ * Unchecked exception thrown by {@link Search} implementations when the
+ * {@link SearchContext} they are running in has been cancelled, e.g. because
+ * the client has disconnected or a time limit has been reached.
+ * 
+ * @author dstaines
+ *
+ */
+public class SearchCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SearchCancelledException(String message) {
+        super(message);
+    }
+
+}
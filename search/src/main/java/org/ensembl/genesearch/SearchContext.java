@@ -0,0 +1,221 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Information about the request being served that is not part of the query
+ * itself, such as the client session. A context is opened by the caller (e.g.
+ * a web service) on the thread that calls {@link Search}, and is then
+ * available to implementations via {@link #current()} without changing the
+ * {@link Search} interface. Contexts should be closed when the request is
+ * complete, ideally with try-with-resources.
+ * <p>
+ * A context can also be cancelled, either directly (e.g. when the client
+ * disconnects) or after a time limit. Implementations should call
+ * {@link #checkCancelled()} between pages or batches of work, and can register
+ * actions with {@link #onCancel(Runnable)} to release resources (such as HTTP
+ * connections) immediately. A context opened while another is current shares
+ * its cancellation state.
+ *
+ * @author dstaines
+ *
+ */
+public class SearchContext implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchContext.class);
+    private static final ThreadLocal<SearchContext> current = new ThreadLocal<>();
+    private static final SearchContext EMPTY = new SearchContext(null, null);
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("search-timeout").setDaemon(true).build());
+
+    /**
+     * Registration of an action to run on cancellation, which should be closed
+     * once the resource it releases is no longer in use
+     */
+    @FunctionalInterface
+    public static interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Cancellation state shared by nested contexts
+     */
+    private static final class Cancellation {
+        private volatile String reason;
+        private final List<Runnable> actions = new CopyOnWriteArrayList<>();
+
+        private void cancel(String why) {
+            synchronized (this) {
+                if (reason != null) {
+                    return;
+                }
+                reason = why;
+            }
+            log.info("Cancelling search: " + why);
+            for (Runnable action : actions) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    log.warn("Could not run cancellation action", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open a new context for the current thread
+     *
+     * @param sessionId
+     *            optional identifier for the client session
+     * @return new context
+     */
+    public static SearchContext open(String sessionId) {
+        SearchContext context = new SearchContext(sessionId, current.get());
+        current.set(context);
+        return context;
+    }
+
+    /**
+     * @return context for the current thread, or an empty context if none has
+     *         been opened
+     */
+    public static SearchContext current() {
+        SearchContext context = current.get();
+        return context == null ? EMPTY : context;
+    }
+
+    private final String sessionId;
+    private final SearchContext previous;
+    private final Cancellation cancellation;
+    private ScheduledFuture<?> timeout;
+
+    private SearchContext(String sessionId, SearchContext previous) {
+        this.sessionId = sessionId;
+        this.previous = previous;
+        this.cancellation = previous == null ? new Cancellation() : previous.cancellation;
+    }
+
+    /**
+     * @return identifier for the client session, if supplied
+     */
+    public Optional<String> getSessionId() {
+        return StringUtils.isEmpty(sessionId) ? Optional.empty() : Optional.of(sessionId);
+    }
+
+    /**
+     * Cancel any search running in this context. Has no effect on the empty
+     * context or a context that has already been cancelled.
+     * 
+     * @param reason
+     *            description of why the search was cancelled
+     */
+    public void cancel(String reason) {
+        if (this != EMPTY) {
+            cancellation.cancel(reason);
+        }
+    }
+
+    /**
+     * Cancel this context if it is still open after the specified time
+     * 
+     * @param delay
+     * @param unit
+     * @return this context
+     */
+    public synchronized SearchContext cancelAfter(long delay, TimeUnit unit) {
+        if (this != EMPTY) {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            timeout = timer.schedule(() -> cancel("time limit of " + delay + " " + unit.toString().toLowerCase()
+                    + " exceeded"), delay, unit);
+        }
+        return this;
+    }
+
+    /**
+     * @return true if this context has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancellation.reason != null;
+    }
+
+    /**
+     * @throws SearchCancelledException
+     *             if this context has been cancelled
+     */
+    public void checkCancelled() {
+        String reason = cancellation.reason;
+        if (reason != null) {
+            throw new SearchCancelledException("Search cancelled: " + reason);
+        }
+    }
+
+    /**
+     * Register an action to run when this context is cancelled, e.g. to abort
+     * an HTTP request. The action is run immediately if the context is
+     * already cancelled, and runs on the thread that cancels the context, so
+     * should be idempotent and thread-safe.
+     * 
+     * @param action
+     * @return registration to close when the action is no longer needed
+     */
+    public Registration onCancel(Runnable action) {
+        if (this == EMPTY) {
+            return () -> {
+            };
+        }
+        cancellation.actions.add(action);
+        if (isCancelled() && cancellation.actions.remove(action)) {
+            action.run();
+        }
+        return () -> cancellation.actions.remove(action);
+    }
+
+    /**
+     * Close this context, restoring any context it replaced
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+        }
+        if (this != EMPTY && current.get() == this) {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+}
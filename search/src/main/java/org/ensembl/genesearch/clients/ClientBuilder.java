@@ -21,7 +21,9 @@ import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import org.apache.http.HttpHost;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.TransportAddress;
@@ -103,4 +105,9 @@ public class ClientBuilder {
 
     }
 
+    public static RestClient buildRestClient(String hostName, int port) {
+        log.info("Connecting to REST API on " + hostName + ":" + port);
+        return RestClient.builder(new HttpHost(hostName, port, "http")).build();
+    }
+
 }
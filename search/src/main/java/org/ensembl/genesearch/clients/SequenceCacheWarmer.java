@@ -0,0 +1,122 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.clients;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.elasticsearch.client.Client;
+import org.ensembl.genesearch.Query;
+import org.ensembl.genesearch.QueryOutput;
+import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.impl.ESSearch;
+import org.ensembl.genesearch.impl.EnsemblRestSequenceSearch;
+import org.ensembl.genesearch.impl.SequenceStore;
+import org.ensembl.genesearch.info.DataTypeInfo;
+import org.ensembl.genesearch.info.FieldType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+/**
+ * Command line client to preload the persistent sequence cache used by
+ * {@link EnsemblRestSequenceSearch} with sequences for all genes in popular
+ * genomes. Gene IDs are retrieved from Elastic and sequences from REST. The
+ * store is locked while open, so this must be run while no server is using
+ * the same cache directory and release.
+ *
+ * @author dstaines
+ */
+public class SequenceCacheWarmer {
+
+    public static class Params extends ClientParams {
+
+        @Parameter(names = "-cache_dir", description = "Directory holding the sequence cache", required = true)
+        private String cacheDir;
+
+        @Parameter(names = "-release", description = "Release the sequences belong to", required = true)
+        private String release;
+
+        @Parameter(names = "-size_mb", description = "Maximum size of the cache in MB")
+        private long sizeMb = SequenceStore.DEFAULT_CAPACITY >> 20;
+
+        @Parameter(names = "-rest_url", description = "Base URL of Ensembl REST")
+        private String restUrl = "http://rest.ensembl.org/";
+
+        @Parameter(names = "-genomes", description = "Genomes to preload", required = true)
+        private List<String> genomes;
+
+        @Parameter(names = "-types", description = "Sequence types to preload")
+        private List<String> types = Arrays.asList("genomic");
+
+        @Parameter(names = "-workers", description = "Number of batches to request from REST concurrently")
+        private int workers = EnsemblRestSequenceSearch.DEFAULT_WORKERS;
+
+    }
+
+    private final static Logger log = LoggerFactory.getLogger(SequenceCacheWarmer.class);
+
+    public static void main(String[] args) throws IOException {
+
+        Params params = new Params();
+        JCommander jc = new JCommander(params, args);
+        jc.setProgramName(SequenceCacheWarmer.class.getSimpleName());
+        if (params.help) {
+            jc.usage();
+            System.exit(1);
+        }
+
+        Client client = ClientBuilder.buildClient(params);
+
+        if (client == null) {
+            jc.usage();
+            System.exit(1);
+        }
+
+        Search geneSearch = new ESSearch(client, ESSearch.GENES_INDEX, ESSearch.GENE_ESTYPE,
+                DataTypeInfo.fromResource("/datatypes/genes_datatype_info.json"));
+        EnsemblRestSequenceSearch seqSearch = new EnsemblRestSequenceSearch(params.restUrl,
+                DataTypeInfo.fromResource("/datatypes/sequences_datatype_info.json"));
+        seqSearch.setWorkers(params.workers);
+
+        try (SequenceStore store = new SequenceStore(Paths.get(params.cacheDir), params.release,
+                params.sizeMb << 20)) {
+            seqSearch.setCache(store);
+            for (String genome : params.genomes) {
+                List<String> ids = new ArrayList<>();
+                geneSearch.fetch(g -> ids.add(String.valueOf(g.get(Search.ID))),
+                        Arrays.asList(new Query(FieldType.TERM, "genome", genome)),
+                        QueryOutput.build(Arrays.asList(Search.ID)));
+                log.info("Found " + ids.size() + " genes for " + genome);
+                for (String type : params.types) {
+                    log.info("Loading " + type + " sequences for " + genome);
+                    seqSearch.fetch(genome, s -> {
+                    }, Arrays.asList(new Query(FieldType.TERM, Search.ID, ids), new Query(FieldType.TERM, "type", type)),
+                            QueryOutput.build(Arrays.asList(Search.ID)));
+                }
+            }
+            log.info("Cache contains " + store.getStats());
+        }
+
+        log.info("Closing client");
+        client.close();
+
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.clients;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.EofSensorInputStream;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Pooled HTTP client shared by REST-based searches, so that connections to
+ * each backend host are kept alive and reused rather than opened for every
+ * request. Provides per-route connection limits, connect, read and pool
+ * timeouts, transparent gzip and proxy support (using the standard
+ * <code>http.proxyHost</code> and <code>https.proxyHost</code> system
+ * properties).
+ * <p>
+ * A default instance configured from system properties is available from
+ * {@link #getDefault()} for library and command-line use. Applications that
+ * manage their own lifecycle (such as the web application) should create and
+ * close their own instance instead, and pass it to each search.
+ *
+ * @author dstaines
+ */
+public class SharedHttpClient implements Closeable {
+
+    public static final int DEFAULT_MAX_TOTAL = 200;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_READ_TIMEOUT = 60000;
+    public static final int DEFAULT_POOL_TIMEOUT = 10000;
+    public static final long DEFAULT_KEEP_ALIVE = 30000;
+
+    private static final Logger log = LoggerFactory.getLogger(SharedHttpClient.class);
+    private static volatile SharedHttpClient defaultClient;
+
+    /**
+     * @return shared instance configured from system properties
+     *         <code>http.max_total</code>, <code>http.max_per_route</code>,
+     *         <code>http.connect_timeout</code>,
+     *         <code>http.read_timeout</code>, <code>http.pool_timeout</code>
+     *         and <code>http.keep_alive</code> (all times in milliseconds).
+     *         The instance is never closed, so is intended for library and
+     *         command-line use only.
+     */
+    public static SharedHttpClient getDefault() {
+        if (defaultClient == null) {
+            synchronized (SharedHttpClient.class) {
+                if (defaultClient == null) {
+                    defaultClient = new SharedHttpClient(
+                            Integer.parseInt(System.getProperty("http.max_total", String.valueOf(DEFAULT_MAX_TOTAL))),
+                            Integer.parseInt(
+                                    System.getProperty("http.max_per_route", String.valueOf(DEFAULT_MAX_PER_ROUTE))),
+                            Integer.parseInt(
+                                    System.getProperty("http.connect_timeout", String.valueOf(DEFAULT_CONNECT_TIMEOUT))),
+                            Integer.parseInt(
+                                    System.getProperty("http.read_timeout", String.valueOf(DEFAULT_READ_TIMEOUT))),
+                            Integer.parseInt(
+                                    System.getProperty("http.pool_timeout", String.valueOf(DEFAULT_POOL_TIMEOUT))),
+                            Long.parseLong(System.getProperty("http.keep_alive", String.valueOf(DEFAULT_KEEP_ALIVE))));
+                }
+            }
+        }
+        return defaultClient;
+    }
+
+    /**
+     * Release a response body without reading the remainder of it, which is
+     * what closing a pooled response normally does so the connection can be
+     * reused. The underlying connection is discarded instead.
+     *
+     * @param body response body as returned by the request factory
+     */
+    public static void abort(InputStream body) {
+        if (body instanceof EofSensorInputStream) {
+            try {
+                ((EofSensorInputStream) body).abortConnection();
+            } catch (IOException e) {
+                log.debug("Could not abort connection", e);
+            }
+        } else {
+            IOUtils.closeQuietly(body);
+        }
+    }
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    private final HttpComponentsClientHttpRequestFactory requestFactory;
+    private final RestTemplate restTemplate;
+
+    /**
+     * @param maxTotal       maximum number of connections across all hosts
+     * @param maxPerRoute    maximum number of connections to a single host
+     * @param connectTimeout time allowed to connect (ms)
+     * @param readTimeout    maximum time between packets when reading (ms)
+     * @param poolTimeout    time to wait for a free pooled connection (ms)
+     * @param keepAlive      maximum time to keep an idle connection, where the
+     *                       server does not specify a shorter time (ms)
+     */
+    public SharedHttpClient(int maxTotal, int maxPerRoute, int connectTimeout, int readTimeout, int poolTimeout,
+            long keepAlive) {
+        log.info("Creating HTTP connection pool with " + maxTotal + " connections (" + maxPerRoute + " per host)");
+        connectionManager = new PoolingHttpClientConnectionManager(keepAlive, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig config = RequestConfig.custom().setConnectTimeout(connectTimeout).setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(poolTimeout).build();
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+        };
+        client = HttpClientBuilder.create().useSystemProperties().setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(config).setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections().evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS).build();
+        requestFactory = new HttpComponentsClientHttpRequestFactory(client);
+        requestFactory.setBufferRequestBody(false);
+        restTemplate = new RestTemplate(requestFactory);
+    }
+
+    /**
+     * @return underlying client
+     */
+    public CloseableHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return request factory using the shared pool, for creating
+     *         {@link RestTemplate}s with their own converters or error handling
+     */
+    public HttpComponentsClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    /**
+     * @return template using the shared pool with default configuration
+     */
+    public RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+    /**
+     * @return pool utilisation overall and for each host
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = toMap(connectionManager.getTotalStats());
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            routes.put(route.getTargetHost().toURI(), toMap(connectionManager.getStats(route)));
+        }
+        stats.put("routes", routes);
+        return stats;
+    }
+
+    private static Map<String, Object> toMap(PoolStats poolStats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("leased", poolStats.getLeased());
+        map.put("available", poolStats.getAvailable());
+        map.put("pending", poolStats.getPending());
+        map.put("max", poolStats.getMax());
+        return map;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+}
@@ -14,30 +14,26 @@
 package org.ensembl.genesearch.impl;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.net.Proxy.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.StringUtils;
 import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.clients.SharedHttpClient;
 import org.ensembl.genesearch.info.DataTypeInfo;
-import org.ensembl.genesearch.utils.QueryUtils;
+import org.ensembl.genesearch.output.QueryOutputProjection;
+import org.ensembl.genesearch.utils.PeriodicLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -46,8 +42,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 /**
  * Simple {@link Search} using EBiSC REST service to retrieve metadata for cell
  * lines. Due to the limited API available, this implementation retrieves all
- * cell line items into a hash the first time it is called. This initial load is
- * slow, but subsequent calls are very fast.
+ * cell line items into an indexed {@link CellLineStore}. The load is started
+ * in the background on construction and repeated periodically (daily by
+ * default), so requests only wait if the initial load is still running.
  * 
  * @author dstaines
  *
@@ -55,6 +52,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class CellLineSearch implements Search {
 
     private static final String CELL_LINE_NAME = "name";
+    public static final long DEFAULT_REFRESH = 86400;
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
 
     private final String url;
@@ -62,77 +60,109 @@ public class CellLineSearch implements Search {
     private final String apiKey;
     private final ObjectMapper mapper = new ObjectMapper();
     private final DataTypeInfo info;
+    private final SharedHttpClient httpClient;
+    private final PeriodicLoader<CellLineStore> stores;
 
     public CellLineSearch(DataTypeInfo info, String url, String user, String apiKey) {
+        this(info, url, user, apiKey, SharedHttpClient.getDefault());
+    }
+
+    public CellLineSearch(DataTypeInfo info, String url, String user, String apiKey, SharedHttpClient httpClient) {
+        this(info, url, user, apiKey, httpClient, DEFAULT_REFRESH);
+    }
+
+    /**
+     * @param info
+     * @param url
+     *            base URL of EBiSC REST
+     * @param user
+     * @param apiKey
+     * @param httpClient
+     *            pooled client used for all requests
+     * @param refresh
+     *            interval between loads in seconds
+     */
+    public CellLineSearch(DataTypeInfo info, String url, String user, String apiKey, SharedHttpClient httpClient,
+            long refresh) {
         this.url = url;
         this.user = user;
         this.apiKey = apiKey;
         this.info = info;
+        this.httpClient = httpClient;
+        // load in the background and refresh periodically
+        this.stores = new PeriodicLoader<>("cell lines",
+                () -> new CellLineStore(loadCellLines(), CELL_LINE_NAME), refresh);
+    }
+
+    /**
+     * Reload all cell line documents from REST, replacing the current store
+     */
+    public void refresh() {
+        stores.refresh();
     }
 
-    private List<Map<String, Object>> cellLines;
+    /**
+     * @return current store, waiting for the initial load if needed
+     */
+    protected CellLineStore getStore() {
+        return stores.get();
+    }
+
+    /**
+     * @return all cell line documents, which must not be modified
+     */
+    protected List<Map<String, Object>> getCellLines() {
+        return getStore().getCellLines();
+    }
 
     /**
-     * Internal method to lazily preload all cell line documents from REST. Used
-     * for all subsequent searches
+     * Internal method to retrieve all cell line documents from REST
      * 
-     * @return
+     * @return cell lines
      */
     @SuppressWarnings("unchecked")
-    protected List<Map<String, Object>> getCellLines() {
-        if (cellLines == null) {
-            // retrieve all cell lines using REST
-            String uri = url + "?username=" + user + "&api_key=" + apiKey;
-            log.info("Querying base " + uri);
-            int offset = 0;
-            int resultCnt = 0;
-            int limit = 100;
-            cellLines = new ArrayList<>();
-            do {
-                try {
-
-                    ResponseEntity<String> response = getTemplate()
-                            .getForEntity(uri + "&offset=" + offset + "&limit=" + limit, String.class);
-                    if (response.getStatusCode() != HttpStatus.OK) {
-                        throw new RestSearchException(uri, response.getBody(), response.getStatusCode());
-                    }
-                    JsonNode body = mapper.readTree(response.getBody());
-                    log.info("Response retrieved");
-                    RestBasedSearch.resultsToStream(body.get("objects")).map(n -> mapper.convertValue(n, Map.class))
-                            .map(n -> {
-                                n.remove("batches");
-                                n.remove("status_log");
-                                return n;
-                            }).forEach(n -> cellLines.add(n));
-                    if (resultCnt == 0) {
-                        resultCnt = Integer.parseUnsignedInt(body.get("meta").get("total_count").asText());
-                    }
-                } catch (IOException e) {
-                    throw new RestSearchException("Could not parse response body", url, e);
+    protected List<Map<String, Object>> loadCellLines() {
+        // retrieve all cell lines using REST
+        String uri = url + "?username=" + user + "&api_key=" + apiKey;
+        log.info("Querying base " + uri);
+        int offset = 0;
+        int resultCnt = 0;
+        int limit = 100;
+        List<Map<String, Object>> cellLines = new ArrayList<>();
+        do {
+            try {
+
+                ResponseEntity<String> response = getTemplate()
+                        .getForEntity(uri + "&offset=" + offset + "&limit=" + limit, String.class);
+                if (response.getStatusCode() != HttpStatus.OK) {
+                    throw new RestSearchException(uri, response.getBody(), response.getStatusCode());
+                }
+                JsonNode body = mapper.readTree(response.getBody());
+                log.info("Response retrieved");
+                RestBasedSearch.resultsToStream(body.get("objects")).map(n -> mapper.convertValue(n, Map.class))
+                        .map(n -> {
+                            n.remove("batches");
+                            n.remove("status_log");
+                            return n;
+                        }).forEach(n -> cellLines.add(n));
+                if (resultCnt == 0) {
+                    resultCnt = Integer.parseUnsignedInt(body.get("meta").get("total_count").asText());
                 }
-                log.info("Executing fetch");
-                log.info("Fetch executed");
-                offset += limit;
-            } while (resultCnt > 0 && offset < resultCnt);
-            log.info(cellLines.size() + " cell lines retrieved");
-        }
+            } catch (IOException e) {
+                throw new RestSearchException("Could not parse response body", url, e);
+            }
+            offset += limit;
+        } while (resultCnt > 0 && offset < resultCnt);
+        log.info(cellLines.size() + " cell lines retrieved");
         return cellLines;
     }
 
     /**
-     * @return template configured to use proxy where specified
+     * @return template using the shared connection pool (which uses a proxy
+     *         where specified)
      */
     protected RestTemplate getTemplate() {
-        String proxyHost = System.getProperty("https.proxyHost");
-        if (!StringUtils.isEmpty(proxyHost)) {
-            int proxyPort = Integer.parseInt(System.getProperty("https.proxyPort", "80"));
-            SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-            Proxy proxy = new Proxy(Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
-            requestFactory.setProxy(proxy);
-            return new RestTemplate(requestFactory);
-        } else {
-            return new RestTemplate();
-        }
+        return httpClient.getRestTemplate();
     }
 
     /*
@@ -143,9 +173,9 @@ public class CellLineSearch implements Search {
      */
     @Override
     public void fetch(Consumer<Map<String, Object>> consumer, List<Query> queries, QueryOutput fieldNames) {
-        getCellLines().stream().map(v -> (Map<String, Object>) mapper.convertValue(v, Map.class))
-                .filter(v -> QueryUtils.filterResultsByQueries.test(v, queries))
-                .map(v -> QueryUtils.filterFields(v, fieldNames)).forEach(consumer);
+        // stored cell lines are shared so are copied by the projection
+        QueryOutputProjection projection = QueryOutputProjection.compile(fieldNames);
+        getStore().find(queries).stream().map(projection::copy).forEach(consumer);
     }
 
     /*
@@ -158,18 +188,11 @@ public class CellLineSearch implements Search {
     @Override
     public QueryResult query(List<Query> queries, QueryOutput output, List<String> facets, int offset, int limit,
             List<String> sorts) {
-        // use stream methods on cached cell line objects to perform query
-        AtomicLong n = new AtomicLong(0); // use for count - AtomicLong allows
-                                          // you to increment an effectively
-                                          // final number
-        List<Map<String, Object>> results = getCellLines().stream()
-                .map(v -> (Map<String, Object>) mapper.convertValue(v, Map.class))
-                .filter(v -> QueryUtils.filterResultsByQueries.test(v, queries))
-                .map(v -> QueryUtils.filterFields(v, output)).map(node -> {
-                    n.incrementAndGet();
-                    return node;
-                }).skip(offset).limit(limit).collect(Collectors.toList());
-        return new QueryResult(n.longValue(), (long) offset, (long) limit, getFieldInfo(output), results,
+        QueryOutputProjection projection = QueryOutputProjection.compile(output);
+        List<Map<String, Object>> matches = getStore().find(queries);
+        List<Map<String, Object>> results = matches.stream().skip(offset).limit(limit).map(projection::copy)
+                .collect(Collectors.toList());
+        return new QueryResult(matches.size(), (long) offset, (long) limit, getFieldInfo(output), results,
                 Collections.emptyMap());
     }
 
@@ -205,13 +228,13 @@ public class CellLineSearch implements Search {
     }
 
     /**
-     * Retrieve the named cell line, lazily loading if needed
+     * Retrieve the named cell line, waiting for the initial load if needed
      * 
      * @param name
-     * @return cell line as document
+     * @return cell line as an unmodifiable document
      */
     public Optional<Map<String, Object>> getCellLine(String name) {
-        return getCellLines().stream().filter(c -> name.equals(c.get(CELL_LINE_NAME))).findFirst();
+        return Optional.ofNullable(getStore().getCellLine(name));
     }
 
 }
@@ -0,0 +1,207 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ensembl.genesearch.Query;
+import org.ensembl.genesearch.info.FieldType;
+import org.ensembl.genesearch.utils.DataUtils;
+import org.ensembl.genesearch.utils.QueryUtils;
+
+/**
+ * Immutable in-memory store of cell line documents, used by
+ * {@link CellLineSearch}. Documents are made unmodifiable on loading so they
+ * can be shared between requests without copying. Cell lines are indexed by
+ * name, and inverted indexes for term fields are built the first time each
+ * field is queried, so that term queries only test the cell lines holding one
+ * of the requested values.
+ * 
+ * @author dstaines
+ *
+ */
+public class CellLineStore {
+
+    private static final int[] NONE = new int[0];
+
+    private final List<Map<String, Object>> cellLines;
+    // name to position in cellLines
+    private final Map<String, Integer> byName;
+    // value to positions in cellLines, for each field queried so far
+    private final Map<String, Map<String, int[]>> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * @param cellLines
+     *            documents to store, which must not be modified afterwards
+     * @param nameField
+     *            field holding the unique name of each cell line
+     */
+    @SuppressWarnings("unchecked")
+    public CellLineStore(List<Map<String, Object>> cellLines, String nameField) {
+        List<Map<String, Object>> docs = new ArrayList<>(cellLines.size());
+        Map<String, Integer> names = new HashMap<>();
+        for (Map<String, Object> cellLine : cellLines) {
+            Object name = cellLine.get(nameField);
+            if (name != null) {
+                names.putIfAbsent(String.valueOf(name), docs.size());
+            }
+            docs.add((Map<String, Object>) unmodifiable(cellLine));
+        }
+        this.cellLines = Collections.unmodifiableList(docs);
+        this.byName = names;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object unmodifiable(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            ((Map<String, Object>) value).forEach((k, v) -> map.put(k, unmodifiable(v)));
+            return Collections.unmodifiableMap(map);
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) value).size());
+            ((List<?>) value).forEach(v -> list.add(unmodifiable(v)));
+            return Collections.unmodifiableList(list);
+        } else {
+            return value;
+        }
+    }
+
+    /**
+     * @return all cell lines
+     */
+    public List<Map<String, Object>> getCellLines() {
+        return cellLines;
+    }
+
+    /**
+     * @param name
+     * @return named cell line, or null if not found
+     */
+    public Map<String, Object> getCellLine(String name) {
+        Integer i = byName.get(name);
+        return i == null ? null : cellLines.get(i);
+    }
+
+    /**
+     * Find cell lines matching all the supplied queries, using the term
+     * indexes to narrow the cell lines tested
+     * 
+     * @param queries
+     * @return matching cell lines, in the order they were loaded
+     */
+    public List<Map<String, Object>> find(List<Query> queries) {
+        int[] candidates = null;
+        for (Query q : queries) {
+            if (q.getType() == FieldType.TERM && !q.isNot()) {
+                int[] matches = lookup(q);
+                candidates = candidates == null ? matches : intersect(candidates, matches);
+                if (candidates.length == 0) {
+                    return Collections.emptyList();
+                }
+            }
+        }
+        List<Map<String, Object>> results = new ArrayList<>();
+        if (candidates == null) {
+            for (Map<String, Object> cellLine : cellLines) {
+                if (QueryUtils.filterResultsByQueries.test(cellLine, queries)) {
+                    results.add(cellLine);
+                }
+            }
+        } else {
+            for (int i : candidates) {
+                Map<String, Object> cellLine = cellLines.get(i);
+                // check any other queries
+                if (QueryUtils.filterResultsByQueries.test(cellLine, queries)) {
+                    results.add(cellLine);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param q
+     *            term query
+     * @return sorted positions of cell lines with any of the query values
+     */
+    private int[] lookup(Query q) {
+        Map<String, int[]> index = indexes.computeIfAbsent(q.getFieldName(), this::buildIndex);
+        int[] matches = NONE;
+        for (String value : q.getValues()) {
+            matches = union(matches, index.getOrDefault(value, NONE));
+        }
+        return matches;
+    }
+
+    private Map<String, int[]> buildIndex(String field) {
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (int i = 0; i < cellLines.size(); i++) {
+            for (String value : DataUtils.getObjValsForKey(cellLines.get(i), field)) {
+                postings.computeIfAbsent(value, k -> new ArrayList<>()).add(i);
+            }
+        }
+        Map<String, int[]> index = new HashMap<>(postings.size() * 2);
+        postings.forEach((k, v) -> index.put(k, v.stream().mapToInt(Integer::intValue).toArray()));
+        return index;
+    }
+
+    private static int[] union(int[] positions) {
+        return Arrays.stream(positions).sorted().distinct().toArray();
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        } else if (b.length == 0) {
+            return a;
+        }
+        int[] merged = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, merged, a.length, b.length);
+        return union(merged);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] common = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                common[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, n);
+    }
+
+    /**
+     * @return number of cell lines stored
+     */
+    public int size() {
+        return cellLines.size();
+    }
+
+}
@@ -14,13 +14,14 @@
 
 package org.ensembl.genesearch.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
@@ -33,8 +34,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Delegating search which uses EG or e! REST depending on division for the
- * query. An instance of {@link Search} for genomes is used to determine if a
- * genome is from Ensembl or EG
+ * query. A {@link GenomeMetadataCache} is used to determine if a genome is
+ * from Ensembl or EG
  * 
  * @author dstaines
  *
@@ -48,14 +49,17 @@ public class DivisionAwareSequenceSearch implements Search {
     public static final String ENSEMBL = "Ensembl";
     public static final String GENOME = "genome";
     public static final String DIVISION = "division";
-    private final Search genomeSearch;
+    private final GenomeMetadataCache genomes;
     private final EnsemblRestSequenceSearch eSearch;
     private final EnsemblRestSequenceSearch egSearch;
-    protected Set<String> isEnsembl;
+    /**
+     * fixed set of Ensembl genomes, used in place of the genome cache if set
+     */
+    protected volatile Set<String> isEnsembl;
 
     /**
-     * @param genomeSearch
-     *            search for retrieving genome information
+     * @param genomes
+     *            cache of genome information
      * @param dataType
      *            data type for sequence searches
      * @param eSearchUri
@@ -63,27 +67,43 @@ public class DivisionAwareSequenceSearch implements Search {
      * @param egSearchUri
      *            URI of EG REST
      */
-    public DivisionAwareSequenceSearch(Search genomeSearch, DataTypeInfo dataType, String eSearchUri,
+    public DivisionAwareSequenceSearch(GenomeMetadataCache genomes, DataTypeInfo dataType, String eSearchUri,
             String egSearchUri) {
-        this(genomeSearch, new EnsemblRestSequenceSearch(eSearchUri, dataType),
+        this(genomes, new EnsemblRestSequenceSearch(eSearchUri, dataType),
                 new EnsemblRestSequenceSearch(egSearchUri, dataType));
     }
 
     /**
-     * @param genomeSearch
-     *            search for retrieving genome information
+     * @param genomes
+     *            cache of genome information
      * @param eSearch
      *            REST search pointing to Ensembl
      * @param egSearch
      *            REST search pointing to EG
      */
-    public DivisionAwareSequenceSearch(Search genomeSearch, EnsemblRestSequenceSearch eSearch,
+    public DivisionAwareSequenceSearch(GenomeMetadataCache genomes, EnsemblRestSequenceSearch eSearch,
             EnsemblRestSequenceSearch egSearch) {
-        this.genomeSearch = genomeSearch;
+        this.genomes = genomes;
         this.eSearch = eSearch;
         this.egSearch = egSearch;
     }
 
+    /**
+     * IDs from genomes in the same division requiring the same sequence
+     * options, which can be retrieved in shared batches
+     */
+    private static final class Group {
+        private final boolean ensembl;
+        private final List<Query> options;
+        private final Map<String, List<String>> idsByGenome = new LinkedHashMap<>();
+        private List<Query> subQueries;
+
+        private Group(boolean ensembl, List<Query> options) {
+            this.ensembl = ensembl;
+            this.options = options;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -93,20 +113,31 @@ public class DivisionAwareSequenceSearch implements Search {
     @Override
     public void fetch(Consumer<Map<String, Object>> consumer, List<Query> queries, QueryOutput fieldNames) {
 
-        // expected a list of nested queries
+        // expected a list of nested queries, which are grouped by division and
+        // options so IDs from many genomes are merged into the same batches
+        Map<String, Group> groups = new LinkedHashMap<>();
         for (Query q : queries) {
             if (q.getType() != FieldType.NESTED || (!ID.equals(q.getSubQueries()[0].getFieldName())
                     && !"query".equals(q.getSubQueries()[0].getFieldName()))) {
                 throw new IllegalArgumentException("Sequence search requires a nested query containing id/query query");
             }
             String genome = q.getFieldName();
-            if (isEnsembl(genome)) {
-                log.info("Dispatching " + genome + " to E");
-                eSearch.fetch(consumer, Arrays.asList(q.getSubQueries()), fieldNames);
-            } else {
-                log.info("Dispatching " + genome + " to EG");
-                egSearch.fetch(consumer, Arrays.asList(q.getSubQueries()), fieldNames);
-            }
+            boolean ensembl = isEnsembl(genome);
+            List<Query> subQueries = Arrays.asList(q.getSubQueries());
+            // species is specific to a genome so is dropped when merging
+            List<Query> options = subQueries.stream().filter(sq -> !SPECIES.equals(sq.getFieldName()))
+                    .collect(Collectors.toList());
+            Group group = groups.computeIfAbsent(ensembl + eSearch.getPostUrl(options),
+                    k -> new Group(ensembl, options));
+            group.idsByGenome.computeIfAbsent(genome, k -> new ArrayList<>()).addAll(eSearch.getIds(subQueries));
+            group.subQueries = subQueries;
+        }
+        for (Group group : groups.values()) {
+            EnsemblRestSequenceSearch search = group.ensembl ? eSearch : egSearch;
+            log.info("Dispatching " + group.idsByGenome.size() + " genomes to " + (group.ensembl ? "E" : "EG"));
+            // a single genome can keep its species option
+            search.fetch(group.idsByGenome, consumer, group.idsByGenome.size() == 1 ? group.subQueries : group.options,
+                    fieldNames);
         }
     }
 
@@ -118,15 +149,31 @@ public class DivisionAwareSequenceSearch implements Search {
      * @return true if genome is from Ensembl
      */
     protected boolean isEnsembl(String genome) {
-        if (isEnsembl == null) {
-            isEnsembl = new HashSet<>();
-            genomeSearch.fetch(g -> {
-                if (ENSEMBL.equals(g.get(DIVISION))) {
-                    isEnsembl.add((String) g.get(ID));
-                }
-            }, Collections.emptyList(), QueryOutput.build(Arrays.asList(ID, DIVISION)));
+        Set<String> fixed = isEnsembl;
+        if (fixed != null) {
+            return fixed.contains(genome);
         }
-        return isEnsembl.contains(genome);
+        return genomes != null && ENSEMBL.equals(genomes.getDivision(genome));
+    }
+
+    /**
+     * @param cache
+     *            persistent store for sequences from both Ensembl and EG, or
+     *            null to always use REST
+     */
+    public void setCache(SequenceStore cache) {
+        eSearch.setCache(cache);
+        egSearch.setCache(cache);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#getStats()
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        return eSearch.getStats();
     }
 
     /*
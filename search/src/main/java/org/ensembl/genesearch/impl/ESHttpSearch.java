@@ -0,0 +1,277 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.ensembl.genesearch.SearchContext;
+import org.ensembl.genesearch.info.DataTypeInfo;
+import org.ensembl.genesearch.output.QueryOutputProjection;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Extension of {@link ESSearch} that carries out scrolling fetches over the
+ * Elastic REST API rather than the transport client, requesting responses in
+ * a binary format (Smile or CBOR). Hits are decoded directly from the response
+ * stream using {@link QueryOutputProjection#read(JsonParser)} without building
+ * an intermediate {@link org.elasticsearch.action.search.SearchResponse}.
+ * Other operations are delegated to the transport client as before.
+ *
+ * @author dstaines
+ */
+public class ESHttpSearch extends ESSearch {
+
+    /**
+     * Formats that can be requested for search and scroll responses
+     */
+    public static enum Format {
+        JSON("application/json", new JsonFactory()), SMILE("application/smile", new SmileFactory()), CBOR(
+                "application/cbor", new CBORFactory());
+
+        private final String mediaType;
+        private final JsonFactory factory;
+
+        private Format(String mediaType, JsonFactory factory) {
+            this.mediaType = mediaType;
+            this.factory = factory;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public JsonFactory getFactory() {
+            return factory;
+        }
+    }
+
+    public static final Format DEFAULT_FORMAT = Format.SMILE;
+
+    /**
+     * restrict responses to the parts of the response we actually read
+     */
+    private static final String FILTER_PATH = "_scroll_id,hits.hits._id,hits.hits._source";
+    private static final String SCROLL_ENDPOINT = "/_search/scroll";
+    private static final ObjectMapper om = new ObjectMapper();
+
+    private final RestClient restClient;
+    private final Format format;
+
+    /**
+     * @param client     Elastic transport client, used for non-fetch operations
+     * @param restClient Elastic low-level REST client, used for fetch
+     * @param index      name of elastic index
+     * @param type       name of object type within the index
+     * @param dataType   metadata about data type being searched
+     */
+    public ESHttpSearch(Client client, RestClient restClient, String index, String type, DataTypeInfo dataType) {
+        this(client, restClient, index, type, dataType,
+                Format.valueOf(System.getProperty("es.http.format", DEFAULT_FORMAT.name()).toUpperCase()));
+    }
+
+    /**
+     * @param client     Elastic transport client, used for non-fetch operations
+     * @param restClient Elastic low-level REST client, used for fetch
+     * @param index      name of elastic index
+     * @param type       name of object type within the index
+     * @param dataType   metadata about data type being searched
+     * @param format     format to request responses in
+     */
+    public ESHttpSearch(Client client, RestClient restClient, String index, String type, DataTypeInfo dataType,
+                        Format format) {
+        super(client, index, type, dataType);
+        this.restClient = restClient;
+        this.format = format;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.ensembl.genesearch.impl.ESSearch#executeFetch(java.util.function.
+     * Consumer, org.elasticsearch.action.search.SearchRequestBuilder)
+     */
+    @Override
+    protected void executeFetch(Consumer<Map<String, Object>> consumer, SearchRequestBuilder builder) {
+        SearchRequest searchRequest = builder.request();
+        String keepAlive = searchRequest.scroll().keepAlive().getStringRep();
+        String endpoint = '/' + StringUtils.join(searchRequest.indices(), ',') + '/'
+                + StringUtils.join(searchRequest.types(), ',') + "/_search";
+        Request request = new Request("POST", endpoint);
+        request.addParameter("scroll", keepAlive);
+        if (!StringUtils.isEmpty(searchRequest.preference())) {
+            request.addParameter("preference", searchRequest.preference());
+        }
+        request.setJsonEntity(searchRequest.source().toString());
+        String scrollId = null;
+        SearchContext context = SearchContext.current();
+        try {
+            int n = 0;
+            while (true) {
+                context.checkCancelled();
+                Page page = executePage(consumer, request);
+                if (page.scrollId != null) {
+                    scrollId = page.scrollId;
+                }
+                log.debug("Processed " + page.hits + " hits from scroll #" + (++n));
+                if (page.hits == 0 || scrollId == null) {
+                    log.info("Scroll complete");
+                    break;
+                }
+                Map<String, Object> scroll = new LinkedHashMap<>();
+                scroll.put("scroll", keepAlive);
+                scroll.put("scroll_id", scrollId);
+                request = new Request("POST", SCROLL_ENDPOINT);
+                request.setJsonEntity(om.writeValueAsString(scroll));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not retrieve hits from " + endpoint, e);
+        } finally {
+            if (scrollId != null) {
+                clearScroll(scrollId);
+            }
+        }
+    }
+
+    /**
+     * Number of hits and scroll ID found in a response
+     */
+    static final class Page {
+        int hits = 0;
+        String scrollId;
+    }
+
+    /**
+     * Execute a single search or scroll request, passing the hits found to
+     * the consumer
+     *
+     * @param consumer
+     * @param request
+     * @return summary of the response
+     * @throws IOException
+     */
+    private Page executePage(Consumer<Map<String, Object>> consumer, Request request) throws IOException {
+        request.addParameter("filter_path", FILTER_PATH);
+        RequestOptions.Builder options = RequestOptions.DEFAULT.toBuilder();
+        options.addHeader("Accept", format.getMediaType());
+        request.setOptions(options);
+        Response response = restClient.performRequest(request);
+        try (InputStream in = response.getEntity().getContent();
+             JsonParser parser = format.getFactory().createParser(in)) {
+            return readPage(consumer, parser);
+        }
+    }
+
+    /**
+     * Read the hits from a search response
+     *
+     * @param consumer
+     * @param parser   parser at the start of the response
+     * @return summary of the response
+     * @throws IOException
+     */
+    static Page readPage(Consumer<Map<String, Object>> consumer, JsonParser parser) throws IOException {
+        Page page = new Page();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return page;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("_scroll_id".equals(name)) {
+                page.scrollId = parser.getText();
+            } else if ("hits".equals(name) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String hitsName = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && "hits".equals(hitsName)) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            consumer.accept(readHit(parser));
+                            page.hits++;
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Read a single hit, combining its ID and source in the same way as
+     * {@link ESSearch#hitToMap(org.elasticsearch.search.SearchHit)}
+     *
+     * @param parser parser positioned at the start of the hit
+     * @return hit as map
+     * @throws IOException
+     */
+    private static Map<String, Object> readHit(JsonParser parser) throws IOException {
+        String id = null;
+        Map<String, Object> source = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("_source".equals(name)) {
+                source = QueryOutputProjection.ALL.read(parser);
+            } else if ("_id".equals(name)) {
+                id = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (source == null) {
+            source = new LinkedHashMap<>();
+        }
+        source.putIfAbsent(ID, id);
+        return source;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.ensembl.genesearch.impl.ESSearch#clearScroll(java.lang.String)
+     */
+    @Override
+    protected void clearScroll(String scrollId) {
+        try {
+            Request request = new Request("DELETE", SCROLL_ENDPOINT);
+            request.setJsonEntity(om.writeValueAsString(Collections.singletonMap("scroll_id", scrollId)));
+            restClient.performRequest(request);
+        } catch (IOException e) {
+            log.warn("Could not clear scroll", e);
+        }
+    }
+
+}
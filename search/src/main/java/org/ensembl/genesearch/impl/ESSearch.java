@@ -13,11 +13,15 @@
  */
 package org.ensembl.genesearch.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -26,12 +30,17 @@ import java.util.stream.Collectors;
 import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.lucene.search.function.FieldValueFactorFunction.Modifier;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.cache.request.RequestCacheStats;
 import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -50,6 +59,7 @@ import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.SearchContext;
 import org.ensembl.genesearch.info.DataTypeInfo;
 import org.ensembl.genesearch.info.FieldInfo;
 import org.ensembl.genesearch.info.FieldType;
@@ -90,6 +100,28 @@ public class ESSearch implements Search {
     public static final int DEFAULT_SCROLL_TIMEOUT = 6000;
     private static final int DEFAULT_AGGREGATION_SIZE = 10;
 
+    /**
+     * Sources for the "preference" set on searches, which routes repeated
+     * requests to the same shard copies so their caches are reused
+     */
+    public static enum PreferenceSource {
+        /**
+         * do not set a preference
+         */
+        NONE,
+        /**
+         * use the session from {@link SearchContext} where available, falling
+         * back to {@link #QUERY}
+         */
+        SESSION,
+        /**
+         * use a hash of the query
+         */
+        QUERY;
+    }
+
+    public static final PreferenceSource DEFAULT_PREFERENCE_SOURCE = PreferenceSource.SESSION;
+
     /*
      * default values for searching different datatypes
      */
@@ -134,6 +166,8 @@ public class ESSearch implements Search {
 
     private final int scrollSize;
     private final int scrollTimeout;
+    private PreferenceSource preferenceSource = PreferenceSource.valueOf(
+            System.getProperty("es.preference", DEFAULT_PREFERENCE_SOURCE.name()).toUpperCase());
 
     /**
      * @param client        Elastic client
@@ -153,6 +187,49 @@ public class ESSearch implements Search {
         this.dataType = dataType;
     }
 
+    /**
+     * @param preferenceSource source to use for the preference set on searches
+     */
+    public void setPreferenceSource(PreferenceSource preferenceSource) {
+        this.preferenceSource = preferenceSource;
+    }
+
+    /**
+     * Derive a stable preference string for a query. Successive pages and
+     * repeated queries with the same preference are routed to the same shard
+     * copies, improving reuse of their request and page caches.
+     *
+     * @param query
+     * @return preference, if enabled
+     */
+    protected Optional<String> getPreference(QueryBuilder query) {
+        if (preferenceSource == PreferenceSource.SESSION) {
+            Optional<String> sessionId = SearchContext.current().getSessionId();
+            if (sessionId.isPresent()) {
+                // custom preferences must not start with "_"
+                return Optional.of("session-" + sessionId.get());
+            }
+        }
+        if (preferenceSource == PreferenceSource.NONE) {
+            return Optional.empty();
+        } else {
+            return Optional.of("query-" + Integer.toHexString(query.toString().hashCode()));
+        }
+    }
+
+    /**
+     * Create a new search request for the supplied query, setting the
+     * preference
+     *
+     * @param query
+     * @return request
+     */
+    protected SearchRequestBuilder prepareSearch(QueryBuilder query) {
+        SearchRequestBuilder request = client.prepareSearch(index).setQuery(query).setTypes(type);
+        getPreference(query).ifPresent(request::setPreference);
+        return request;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -196,7 +273,7 @@ public class ESSearch implements Search {
 
         log.info(query.toString());
 
-        SearchRequestBuilder request = client.prepareSearch(index).setQuery(query).setTypes(type);
+        SearchRequestBuilder request = prepareSearch(query);
 
         // force _doc order for more efficiency
         // FIXME check if still needed
@@ -212,15 +289,25 @@ public class ESSearch implements Search {
 
         log.info("Executing fetch request");
         log.debug(request.toString());
-        SearchResponse response = request.execute().actionGet();
-        log.info("Retrieved " + response.getHits().getTotalHits() + " in " + response.getTook().getMillis() + " ms");
         watch.start();
-        consumeAllHits(consumer, response);
+        executeFetch(consumer, request);
         watch.stop();
         log.info("Retrieved all hits in " + watch.getTime() + " ms");
 
     }
 
+    /**
+     * Execute a scrolling fetch request, passing all hits to the consumer
+     *
+     * @param consumer destination for hits
+     * @param request  request with query, source and scroll set
+     */
+    protected void executeFetch(Consumer<Map<String, Object>> consumer, SearchRequestBuilder request) {
+        SearchResponse response = request.execute().actionGet();
+        log.info("Retrieved " + response.getHits().getTotalHits() + " in " + response.getTook().getMillis() + " ms");
+        consumeAllHits(consumer, response);
+    }
+
     /**
      * calculate a scroll size based on what we're retrieving this is to try and
      * balance speed and memory usage. The more fields we retrieve, the smaller
@@ -260,26 +347,51 @@ public class ESSearch implements Search {
      */
     protected SearchResponse consumeAllHits(Consumer<Map<String, Object>> consumer, SearchResponse response) {
         // scroll until no hits are returned
+        SearchContext context = SearchContext.current();
         int n = 0;
         StopWatch watch = new StopWatch();
-        while (true) {
-            log.debug("Processing scroll #" + (++n));
-            consumeHits(consumer, response);
-            log.debug("Preparing new scroll");
-            watch.reset();
-            watch.start();
-            response = client.prepareSearchScroll(response.getScrollId())
-                    .setScroll(new TimeValue(DEFAULT_SCROLL_TIMEOUT)).execute().actionGet();
-            watch.stop();
-            log.debug("Prepared scroll #" + n + " in " + watch.getTime() + "ms");
-            if (response.getHits().getHits().length == 0) {
-                log.info("Scroll complete");
-                break;
+        try {
+            while (true) {
+                context.checkCancelled();
+                log.debug("Processing scroll #" + (++n));
+                consumeHits(consumer, response);
+                context.checkCancelled();
+                log.debug("Preparing new scroll");
+                watch.reset();
+                watch.start();
+                response = client.prepareSearchScroll(response.getScrollId())
+                        .setScroll(new TimeValue(DEFAULT_SCROLL_TIMEOUT)).execute().actionGet();
+                watch.stop();
+                log.debug("Prepared scroll #" + n + " in " + watch.getTime() + "ms");
+                if (response.getHits().getHits().length == 0) {
+                    log.info("Scroll complete");
+                    break;
+                }
             }
+        } finally {
+            // release the scroll context rather than leaving it to time out,
+            // particularly if the consumer failed or the search was cancelled
+            clearScroll(response.getScrollId());
         }
         return response;
     }
 
+    /**
+     * Release resources held for a scroll. Failures are logged as the scroll
+     * will expire in any case.
+     *
+     * @param scrollId
+     */
+    protected void clearScroll(String scrollId) {
+        if (!StringUtils.isEmpty(scrollId)) {
+            try {
+                client.prepareClearScroll().addScrollId(scrollId).get();
+            } catch (Exception e) {
+                log.warn("Could not clear scroll", e);
+            }
+        }
+    }
+
     /**
      * Process the current set of hits using the specified consumer
      *
@@ -317,18 +429,25 @@ public class ESSearch implements Search {
 
         log.info("QueryBuilder: ", query.toString());
 
-        // prepare a search request object using the query, fields, limits etc.
-        SearchRequestBuilder request = client.prepareSearch(index).setQuery(query)
-                .setFetchSource(fieldNames.toArray(new String[fieldNames.size()]), null)
-                .setSize(limit)
-                .setFrom(offset)
-                .setTypes(type);
+        SearchRequestBuilder request;
+        if (limit == 0) {
+            // aggregation-only request: keep the request deterministic, with
+            // no hits, sorts or offset, so it can be served from the shard
+            // request cache
+            request = prepareSearch(query).setSize(0).setFetchSource(false).setRequestCache(true);
+        } else {
+            // prepare a search request object using the query, fields, limits etc.
+            request = prepareSearch(query)
+                    .setFetchSource(fieldNames.toArray(new String[fieldNames.size()]), null)
+                    .setSize(limit)
+                    .setFrom(offset);
 
-        setFields(fieldNames, request);
+            setFields(fieldNames, request);
 
-        addSorts(sorts, request);
+            addSorts(sorts, request);
+        }
 
-        addFacets(facets, request, DEFAULT_AGGREGATION_SIZE);
+        addFacets(ESSearchBuilder.canonicalFacets(facets), request, DEFAULT_AGGREGATION_SIZE);
 
         log.info("Starting query (limit " + limit + ")");
         log.info("Query " + request.toString());
@@ -342,6 +461,41 @@ public class ESSearch implements Search {
 
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.ensembl.genesearch.Search#count(java.util.List)
+     */
+    @Override
+    public long count(List<Query> queries) {
+        SearchResponse response = prepareCount(queries).execute().actionGet();
+        log.info("Counted " + response.getHits().getTotalHits() + " in " + response.getTook().getMillis() + " ms");
+        return response.getHits().getTotalHits();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.ensembl.genesearch.Search#exists(java.util.List)
+     */
+    @Override
+    public boolean exists(List<Query> queries) {
+        // stop collecting on each shard as soon as a single hit is found
+        SearchResponse response = prepareCount(queries).setTerminateAfter(1).execute().actionGet();
+        return response.getHits().getTotalHits() > 0;
+    }
+
+    /**
+     * Build a request that only returns the number of hits
+     *
+     * @param queries
+     * @return request with no hits or source
+     */
+    private SearchRequestBuilder prepareCount(List<Query> queries) {
+        QueryBuilder query = ESSearchBuilder.buildQuery(type, queries.toArray(new Query[queries.size()]));
+        return prepareSearch(query).setSize(0).setFetchSource(false);
+    }
+
     /**
      * Set fields to retrieve based on the output specified. Note that if no
      * fields are added, only the ID will be retrieved. '*' can be used to
@@ -656,4 +810,52 @@ public class ESSearch implements Search {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.ensembl.genesearch.Search#getStats()
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        try {
+            IndicesStatsResponse response = client.admin().indices().prepareStats(index).clear().setRequestCache(true)
+                    .get();
+            RequestCacheStats cache = response.getTotal().getRequestCache();
+            stats.put("request_cache.hit_count", cache.getHitCount());
+            stats.put("request_cache.miss_count", cache.getMissCount());
+            stats.put("request_cache.evictions", cache.getEvictions());
+            stats.put("request_cache.memory_size_in_bytes", cache.getMemorySizeInBytes());
+        } catch (Exception e) {
+            log.warn("Could not retrieve stats for " + index, e);
+        }
+        return stats;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.ensembl.genesearch.Search#getDataVersion()
+     */
+    @Override
+    public String getDataVersion() {
+        try {
+            // concrete index names and UUIDs change when an alias is moved
+            // to a new release or an index is rebuilt
+            ImmutableOpenMap<String, Settings> settings = client.admin().indices().prepareGetSettings(index).get()
+                    .getIndexToSettings();
+            List<String> versions = new ArrayList<>();
+            Iterator<String> indices = settings.keysIt();
+            while (indices.hasNext()) {
+                String name = indices.next();
+                versions.add(name + ":" + settings.get(name).get(IndexMetaData.SETTING_INDEX_UUID));
+            }
+            Collections.sort(versions);
+            return String.join(",", versions);
+        } catch (Exception e) {
+            log.warn("Could not retrieve data version for " + index, e);
+            return null;
+        }
+    }
+
 }
@@ -33,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
+import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.*;
 import static org.ensembl.genesearch.Query.*;
@@ -368,6 +369,18 @@ public class ESSearchBuilder {
         return newParents;
     }
 
+    /**
+     * Put a list of facets into a canonical form, removing duplicates and
+     * sorting by name, so that equivalent requests are built identically and
+     * can share entries in the shard request cache
+     * 
+     * @param facets
+     * @return sorted list of distinct facets
+     */
+    public static List<String> canonicalFacets(List<String> facets) {
+        return facets.stream().filter(f -> !isEmpty(f)).distinct().sorted().collect(Collectors.toList());
+    }
+
     /**
      * Helper to generate an aggregration from a facet name size
      * 
@@ -13,31 +13,41 @@
  */
 package org.ensembl.genesearch.impl;
 
+import java.io.Closeable;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.Search;
 import org.ensembl.genesearch.SearchResult;
 import org.ensembl.genesearch.info.FieldType;
-import org.ensembl.genesearch.utils.DataUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * Utility class used by {@link EVAVariantRestSearch} to translate a standard
  * Ensembl genome name into the code used internally by EVA. Requires
  * {@link Search} for Ensembl genomes (e.g. {@link ESSearch}) and {@link Search}
- * for EVA genomes (e.g. {@link EVAGenomeRestSearch})
+ * for EVA genomes (e.g. {@link EVAGenomeRestSearch}). Ensembl genomes are
+ * looked up in a {@link GenomeMetadataCache}, which should be shared with
+ * other searches. A finder that creates its own cache stops the cache's
+ * periodic reloads when closed.
  * 
  * @author dstaines
  *
  */
-public class EVAGenomeFinder {
+public class EVAGenomeFinder implements Closeable {
 
     private final Search evaGenomeSearch;
-    private final Search ensemblGenomeSearch;
-    private final Map<String, String> genomeNames = new HashMap<>();
+    private final GenomeMetadataCache genomes;
+    private final boolean ownsGenomes;
+    private final Map<String, String> genomeNames = new ConcurrentHashMap<>();
+    // genomes which have no equivalent in EVA, expiring with the genome cache
+    private final Cache<String, Boolean> missing;
 
     /**
      * @param evaGenomeSearch
@@ -46,35 +56,72 @@ public class EVAGenomeFinder {
      *            search interface on EG genomes
      */
     public EVAGenomeFinder(Search evaGenomeSearch, Search ensemblGenomeSearch) {
+        this(evaGenomeSearch, new GenomeMetadataCache(ensemblGenomeSearch), true);
+    }
+
+    /**
+     * @param evaGenomeSearch
+     *            search interface on EVA genomes
+     * @param genomes
+     *            shared cache of Ensembl genome metadata
+     */
+    public EVAGenomeFinder(Search evaGenomeSearch, GenomeMetadataCache genomes) {
+        this(evaGenomeSearch, genomes, false);
+    }
+
+    private EVAGenomeFinder(Search evaGenomeSearch, GenomeMetadataCache genomes, boolean ownsGenomes) {
         this.evaGenomeSearch = evaGenomeSearch;
-        this.ensemblGenomeSearch = ensemblGenomeSearch;
+        this.genomes = genomes;
+        this.ownsGenomes = ownsGenomes;
+        this.missing = CacheBuilder.newBuilder().maximumSize(GenomeMetadataCache.MAX_MISSING)
+                .expireAfterWrite(genomes.getNegativeTtl(), TimeUnit.MILLISECONDS).build();
     }
 
     /**
      * Look up the name used by EVA for a given Ensembl Genome
      * 
      * @param genomeName
-     * @return
+     * @return EVA name, or null if the genome is not in EVA
      */
     public String getEVAGenomeName(String genomeName) {
         String evaName = genomeNames.get(genomeName);
         if (evaName == null) {
-            Map<String, Object> eGenome = ensemblGenomeSearch.fetchById(genomeName);
-            if (eGenome == null) {
+            if (missing.getIfPresent(genomeName) != null) {
+                return null;
+            }
+            if (genomes.getGenome(genomeName) == null) {
                 throw new IllegalArgumentException("Could not find details for genome " + genomeName);
             }
             // use the INSDC accession as the only universal linker
-            String accession = DataUtils.getObjValsForKey(eGenome, "assembly.accession").iterator().next();
-            SearchResult evaGenomeRes = evaGenomeSearch.fetch(
-                    Arrays.asList(new Query(FieldType.TERM, "assemblyAccession", accession)),
-                    new QueryOutput("taxonomyCode", "assemblyCode"));
-            if (!evaGenomeRes.getResults().isEmpty()) {
-                Map<String, Object> evaGenome = evaGenomeRes.getResults().get(0);
-                evaName = evaGenome.get("taxonomyCode") + "_" + evaGenome.get("assemblyCode");
+            String accession = genomes.getAccession(genomeName);
+            if (accession != null) {
+                SearchResult evaGenomeRes = evaGenomeSearch.fetch(
+                        Arrays.asList(new Query(FieldType.TERM, "assemblyAccession", accession)),
+                        new QueryOutput("taxonomyCode", "assemblyCode"));
+                if (!evaGenomeRes.getResults().isEmpty()) {
+                    Map<String, Object> evaGenome = evaGenomeRes.getResults().get(0);
+                    evaName = evaGenome.get("taxonomyCode") + "_" + evaGenome.get("assemblyCode");
+                }
+            }
+            if (evaName == null) {
+                missing.put(genomeName, Boolean.TRUE);
+            } else {
+                genomeNames.put(genomeName, evaName);
+                missing.invalidate(genomeName);
             }
-            genomeNames.put(genomeName, evaName);
         }
         return evaName;
     }
 
+    /**
+     * Stop periodic reloads of the genome cache if it was created by this
+     * finder. A shared cache is left running.
+     */
+    @Override
+    public void close() {
+        if (ownsGenomes) {
+            genomes.close();
+        }
+    }
+
 }
@@ -25,11 +25,12 @@ import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.clients.SharedHttpClient;
 import org.ensembl.genesearch.info.DataTypeInfo;
+import org.ensembl.genesearch.output.QueryOutputProjection;
 import org.ensembl.genesearch.utils.QueryUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -50,11 +51,17 @@ public class EVAGenomeRestSearch implements Search {
 
     private final DataTypeInfo info;
     private final String baseUri;
+    private final SharedHttpClient httpClient;
     private List<Map<String, Object>> genomes;
 
     public EVAGenomeRestSearch(String baseUri, DataTypeInfo info) {
+        this(baseUri, info, SharedHttpClient.getDefault());
+    }
+
+    public EVAGenomeRestSearch(String baseUri, DataTypeInfo info, SharedHttpClient httpClient) {
         this.baseUri = baseUri;
         this.info = info;
+        this.httpClient = httpClient;
     }
 
     /**
@@ -64,7 +71,7 @@ public class EVAGenomeRestSearch implements Search {
         if (genomes == null) {
             String uri = baseUri + "/" + SPECIES_PATH;
             try {
-                ResponseEntity<String> response = new RestTemplate().getForEntity(uri, String.class);
+                ResponseEntity<String> response = httpClient.getRestTemplate().getForEntity(uri, String.class);
                 if (response.getStatusCode() != HttpStatus.OK) {
                     throw new RestSearchException(uri, response.getBody(), response.getStatusCode());
                 }
@@ -81,10 +88,9 @@ public class EVAGenomeRestSearch implements Search {
 
     @Override
     public void fetch(Consumer<Map<String, Object>> consumer, List<Query> queries, QueryOutput fieldNames) {
-        getGenomes().stream().filter(o -> QueryUtils.filterResultsByQueries.test(o, queries)).map(o -> {
-            QueryUtils.filterFields(o, fieldNames);
-            return o;
-        }).forEach(consumer);
+        QueryOutputProjection projection = QueryOutputProjection.compile(fieldNames);
+        getGenomes().stream().filter(o -> QueryUtils.filterResultsByQueries.test(o, queries)).map(projection::filter)
+                .forEach(consumer);
     }
 
     @Override
@@ -96,12 +102,10 @@ public class EVAGenomeRestSearch implements Search {
         if (facets != null && !facets.isEmpty()) {
             throw new UnsupportedOperationException("Faceting not supported for " + getDataType().getName());
         }
+        QueryOutputProjection projection = QueryOutputProjection.compile(fieldNames);
         List<Map<String, Object>> results = getGenomes().stream()
                 .filter(o -> QueryUtils.filterResultsByQueries.test(o, queries)).skip(offset - 1).limit(limit)
-                .map(o -> {
-                    QueryUtils.filterFields(o, fieldNames);
-                    return o;
-                }).collect(Collectors.toList());
+                .map(projection::filter).collect(Collectors.toList());
         return new QueryResult(-1, offset, limit, getFieldInfo(fieldNames), results, null);
     }
 
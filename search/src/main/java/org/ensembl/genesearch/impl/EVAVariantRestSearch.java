@@ -26,9 +26,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
+import org.ensembl.genesearch.clients.SharedHttpClient;
 import org.ensembl.genesearch.info.DataTypeInfo;
 import org.ensembl.genesearch.info.FieldType;
 
+import com.fasterxml.jackson.core.JsonPointer;
 import com.fasterxml.jackson.databind.JsonNode;
 
 /**
@@ -64,6 +66,7 @@ public class EVAVariantRestSearch extends RestBasedSearch {
     protected final static String LOCATION_PATH = "%s/segments/%s/variants?species=%s&limit=%d&skip=%d";
     protected final static Set<String> RANGE_REQUEST_FILTERS = new HashSet<>(
             Arrays.asList("studies", "annot-ct", "maf", "polyphen", "sift"));
+    protected final static JsonPointer RESULTS_POINTER = JsonPointer.compile("/response/0/result");
 
     /**
      * Helper method that uses supplied queries and fields to generate a new URI
@@ -96,7 +99,23 @@ public class EVAVariantRestSearch extends RestBasedSearch {
      *            name
      */
     public EVAVariantRestSearch(String baseUri, DataTypeInfo info, EVAGenomeFinder finder) {
-        super(info);
+        this(baseUri, info, finder, SharedHttpClient.getDefault());
+    }
+
+    /**
+     * @param baseUri
+     *            Base URI of EVA REST API
+     * @param info
+     *            description of fields etc
+     * @param finder
+     *            helper to translate an Ensembl genome name into an EVA genome
+     *            name
+     * @param httpClient
+     *            pooled client used for all requests
+     */
+    public EVAVariantRestSearch(String baseUri, DataTypeInfo info, EVAGenomeFinder finder,
+            SharedHttpClient httpClient) {
+        super(info, httpClient);
         this.baseUri = baseUri;
         this.finder = finder;
     }
@@ -180,6 +199,16 @@ public class EVAVariantRestSearch extends RestBasedSearch {
         return response.at("/response").get(0).get("result");
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.impl.RestBasedSearch#getResultsPointer()
+     */
+    @Override
+    protected JsonPointer getResultsPointer() {
+        return RESULTS_POINTER;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -13,21 +13,41 @@
  */
 package org.ensembl.genesearch.impl;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 import org.ensembl.genesearch.info.DataTypeInfo;
 
 /**
  * hts-get based search that uses a secondary search for decoration of results
- * with cell line metadata
+ * with cell line metadata. Metadata is looked up once per sample for each
+ * request, and the same immutable document is shared by every genotype for
+ * that sample. The query term <code>sample_metadata</code> controls how it is
+ * written:
+ * <ul>
+ * <li>inline (default) - attached to each genotype as cell_line</li>
+ * <li>header - for fetch, emitted once per sample as a separate record ahead
+ * of the first variant with a genotype for that sample (query falls back to
+ * inline)</li>
+ * <li>none - not attached</li>
+ * </ul>
+ * Header records have different fields to variants, so header mode is only
+ * suitable for document formats such as JSON and XML.
  * 
  * @author dstaines
  * 
  */
 public class EbiscVariantSearch extends HtsGetSingleFileVariantSearch {
 
+	public static final String SAMPLE_METADATA = HtsGetArgs.SAMPLE_METADATA;
+	public static final String INLINE = "inline";
+	public static final String HEADER = "header";
+	public static final String NONE = "none";
+	public static final String SAMPLE = "sample";
 	private static final String GENOTYPE_ID = "id";
 	private static final String GENOTYPES = "genotypes";
 	private static final String CELL_LINE = "cell_line";
@@ -38,20 +58,95 @@ public class EbiscVariantSearch extends HtsGetSingleFileVariantSearch {
 		this.cellLineSearch = cellLineSearch;
 	}
 
-	@SuppressWarnings("unchecked")
-	@Override
-	protected Map<String, Object> decorateVariant(Map<String, Object> v) {
-		Object genotypes = v.get(GENOTYPES);
-		if (genotypes != null) {
-			for (Map<String, Object> genotype : (List<Map<String, Object>>) genotypes) {
-				Optional<Map<String, Object>> metadata = cellLineSearch
-						.getCellLine(String.valueOf(genotype.get(GENOTYPE_ID)));
-				if (metadata.isPresent()) {
-					genotype.put(CELL_LINE, metadata.get());
+	public EbiscVariantSearch(DataTypeInfo type, HtsGetClient client, String fileAccession,
+			CellLineSearch cellLineSearch) {
+		super(type, client, fileAccession);
+		this.cellLineSearch = cellLineSearch;
+	}
+
+	/**
+	 * Decorator holding the metadata for each sample seen during a single
+	 * request
+	 */
+	private final class SampleDecorator implements UnaryOperator<Map<String, Object>> {
+
+		private final Map<String, Map<String, Object>> samples = new HashMap<>();
+		private final Consumer<Map<String, Object>> sink;
+
+		/**
+		 * @param sink
+		 *            destination for sample records, or null to attach
+		 *            metadata inline
+		 */
+		private SampleDecorator(Consumer<Map<String, Object>> sink) {
+			this.sink = sink;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Map<String, Object> apply(Map<String, Object> v) {
+			Object genotypes = v.get(GENOTYPES);
+			if (genotypes != null) {
+				for (Map<String, Object> genotype : (List<Map<String, Object>>) genotypes) {
+					Map<String, Object> metadata = getMetadata(String.valueOf(genotype.get(GENOTYPE_ID)));
+					if (metadata != null && sink == null) {
+						genotype.put(CELL_LINE, metadata);
+					}
 				}
 			}
+			return v;
+		}
+
+		private Map<String, Object> getMetadata(String id) {
+			if (samples.containsKey(id)) {
+				return samples.get(id);
+			}
+			Map<String, Object> metadata = cellLineSearch.getCellLine(id).orElse(null);
+			samples.put(id, metadata);
+			if (metadata != null && sink != null) {
+				Map<String, Object> sample = new LinkedHashMap<>();
+				sample.put(SAMPLE, id);
+				sample.put(CELL_LINE, metadata);
+				sink.accept(sample);
+			}
+			return metadata;
 		}
-		return v;
+
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.ensembl.genesearch.impl.HtsGetVariantSearch#newDecorator(org.ensembl.
+	 * genesearch.impl.HtsGetVariantSearch.HtsGetArgs,
+	 * java.util.function.Consumer)
+	 */
+	@Override
+	protected UnaryOperator<Map<String, Object>> newDecorator(HtsGetArgs args, Consumer<Map<String, Object>> sink) {
+		String mode = args.sampleMetadata == null ? INLINE : args.sampleMetadata;
+		switch (mode) {
+		case INLINE:
+			return new SampleDecorator(null);
+		case HEADER:
+			return new SampleDecorator(sink);
+		case NONE:
+			return v -> v;
+		default:
+			throw new IllegalArgumentException("Unknown sample_metadata option " + mode);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.ensembl.genesearch.impl.HtsGetVariantSearch#decorateVariant(java.util
+	 * .Map)
+	 */
+	@Override
+	protected Map<String, Object> decorateVariant(Map<String, Object> v) {
+		return new SampleDecorator(null).apply(v);
 	}
 
 }
@@ -14,12 +14,25 @@
 
 package org.ensembl.genesearch.impl;
 
-import java.net.InetSocketAddress;
-import java.net.Proxy;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -29,16 +42,28 @@ import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.SearchCancelledException;
+import org.ensembl.genesearch.SearchContext;
+import org.ensembl.genesearch.clients.SharedHttpClient;
 import org.ensembl.genesearch.info.DataTypeInfo;
 import org.ensembl.genesearch.info.FieldInfo;
+import org.ensembl.genesearch.utils.OrderedPrefetcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * {@link Search} using an Ensembl-style REST API to retrieve sequences
  * 
@@ -48,6 +73,12 @@ import org.springframework.web.client.RestTemplate;
 public class EnsemblRestSequenceSearch implements Search {
 
     private static final String MULTIPLE_SEQUENCES = "multiple_sequences=1";
+    private static final String TYPE = "type";
+    private static final String SPECIES = "species";
+    /**
+     * sequence type used by the REST server if none is given
+     */
+    private static final String DEFAULT_TYPE = "genomic";
 
     /**
      * Magic field which contains the query ID to which the sequences belong.
@@ -55,8 +86,6 @@ public class EnsemblRestSequenceSearch implements Search {
      */
     public static final String QUERY = "query";
 
-    private static final int CONNECT_TIMEOUT = 5000;
-
     /**
      * valid arguments to pass as fields. Used by {@link #getPostUrl(List)}
      */
@@ -67,12 +96,107 @@ public class EnsemblRestSequenceSearch implements Search {
 
     public final static String SEQUENCE_ID = "/sequence/id";
 
+    public final static int DEFAULT_WORKERS = 4;
+
+    public final static int DEFAULT_MAX_RETRIES = 3;
+
+    private static final ParameterizedTypeReference<List<Map<String, Object>>> SEQUENCE_LIST
+            = new ParameterizedTypeReference<List<Map<String, Object>>>() {
+            };
+
+    /**
+     * base delay (ms) for exponential backoff between retries
+     */
+    private final static long RETRY_BASE = 250;
+
+    private final static ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("sequence-%d").setDaemon(true).build());
+
+    /**
+     * Tracks the rate limit reported by the Ensembl REST server for a single
+     * fetch. The number of batches in flight grows by one for each response
+     * with plenty of allowance remaining, and halves when the allowance runs
+     * low or the server responds with 429. Dispatch is paused until the time
+     * given by <code>Retry-After</code> or <code>X-RateLimit-Reset</code>.
+     */
+    protected static class Throttle {
+
+        private final int maxConcurrency;
+        private int concurrency;
+        private long resumeAt = 0;
+
+        public Throttle(int maxConcurrency) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.concurrency = this.maxConcurrency;
+        }
+
+        public synchronized int getConcurrency() {
+            return concurrency;
+        }
+
+        /**
+         * Sleep until any pause requested by the server has passed
+         * 
+         * @throws InterruptedException
+         */
+        public void awaitResume() throws InterruptedException {
+            long delay;
+            while ((delay = getDelay()) > 0) {
+                Thread.sleep(delay);
+            }
+        }
+
+        private synchronized long getDelay() {
+            return resumeAt - System.currentTimeMillis();
+        }
+
+        public synchronized void onResponse(HttpHeaders headers) {
+            double remaining = header(headers, "X-RateLimit-Remaining");
+            if (remaining < 0 || remaining > maxConcurrency * 2) {
+                concurrency = Math.min(maxConcurrency, concurrency + 1);
+            } else {
+                concurrency = Math.max(1, concurrency / 2);
+                if (remaining < 1) {
+                    pause(header(headers, "X-RateLimit-Reset"));
+                }
+            }
+        }
+
+        public synchronized void onRateLimited(HttpHeaders headers) {
+            concurrency = Math.max(1, concurrency / 2);
+            double retryAfter = header(headers, "Retry-After");
+            pause(retryAfter < 0 ? 1 : retryAfter);
+        }
+
+        private void pause(double seconds) {
+            if (seconds > 0) {
+                resumeAt = Math.max(resumeAt, System.currentTimeMillis() + (long) (seconds * 1000));
+            }
+        }
+
+        private static double header(HttpHeaders headers, String name) {
+            String value = headers == null ? null : headers.getFirst(name);
+            if (!StringUtils.isEmpty(value)) {
+                try {
+                    return Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    // e.g. an HTTP date, treated as missing
+                }
+            }
+            return -1;
+        }
+
+    }
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     private final String baseUrl;
     private final int batchSize;
-    private final RestTemplate template = new RestTemplate();
+    private final RestTemplate template;
     private final DataTypeInfo dataType;
+    private int workers = DEFAULT_WORKERS;
+    private SequenceStore cache;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
 
     /**
      * @param baseUrl
@@ -83,24 +207,25 @@ public class EnsemblRestSequenceSearch implements Search {
      *            number of sequences to retrieve at one time
      */
     public EnsemblRestSequenceSearch(String baseUrl, DataTypeInfo dataType, int batchSize) {
+        this(baseUrl, dataType, batchSize, SharedHttpClient.getDefault());
+    }
+
+    /**
+     * @param baseUrl
+     *            base URL of REST API
+     * @param dataType
+     *            type to use as label for search
+     * @param batchSize
+     *            number of sequences to retrieve at one time
+     * @param httpClient
+     *            pooled client used for all requests
+     */
+    public EnsemblRestSequenceSearch(String baseUrl, DataTypeInfo dataType, int batchSize,
+            SharedHttpClient httpClient) {
         this.baseUrl = baseUrl;
         this.batchSize = batchSize;
         this.dataType = dataType;
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        String proxyHost = System.getProperty("http.proxyHost");
-        String proxyPort = System.getProperty("http.proxyPort");
-        if (!StringUtils.isEmpty(proxyHost)) {
-            int port = 80;
-            if (!StringUtils.isEmpty(proxyPort)) {
-                port = Integer.valueOf(proxyPort);
-            }
-            log.info("Using proxy " + proxyHost + ":" + proxyPort);
-            factory.setProxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, port)));
-        } else {
-            log.info("No proxy used");
-        }
-        factory.setConnectTimeout(CONNECT_TIMEOUT);
-        template.setRequestFactory(factory);
+        this.template = httpClient.getRestTemplate();
     }
 
     /**
@@ -121,30 +246,234 @@ public class EnsemblRestSequenceSearch implements Search {
      */
     @Override
     public void fetch(Consumer<Map<String, Object>> consumer, List<Query> queries, QueryOutput fieldNames) {
+        fetch(null, consumer, queries, fieldNames);
+    }
+
+    /**
+     * Retrieve sequences for the IDs in the supplied queries, using the
+     * sequence cache where set
+     * 
+     * @param genome
+     *            genome the IDs belong to, used to scope cached sequences
+     *            (may be null)
+     * @param consumer
+     * @param queries
+     * @param fieldNames
+     */
+    public void fetch(String genome, Consumer<Map<String, Object>> consumer, List<Query> queries,
+            QueryOutput fieldNames) {
+        fetch(Collections.singletonMap(genome, getIds(queries)), consumer, queries, fieldNames);
+    }
+
+    /**
+     * Retrieve sequences for IDs from several genomes, merging them into
+     * shared batches
+     * 
+     * @param idsByGenome
+     *            IDs to retrieve for each genome, used to scope cached
+     *            sequences (genome may be null)
+     * @param consumer
+     * @param queries
+     *            sequence options e.g. type. Any ID queries are ignored.
+     * @param fieldNames
+     */
+    public void fetch(Map<String, List<String>> idsByGenome, Consumer<Map<String, Object>> consumer,
+            List<Query> queries, QueryOutput fieldNames) {
 
         // transform the query string into a base URI
         String url = getPostUrl(queries);
         log.info("Using base URL " + url);
-        // extract IDs from supplied queries
-        List<String> ids = getIds(queries);
-        log.info("Searching for " + ids.size() + " ids");
+        // sequences are cached per genome, ID and sequence options
+        String options = getCacheOptions(queries);
+        // an ID requested for several genomes is only retrieved and passed to
+        // the consumer once, but is cached for each of them
+        Map<String, Set<String>> genomesById = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e : idsByGenome.entrySet()) {
+            List<String> genomeIds = new ArrayList<>();
+            for (String id : e.getValue()) {
+                if (!genomesById.containsKey(id)) {
+                    genomeIds.add(id);
+                }
+                genomesById.computeIfAbsent(id, k -> new LinkedHashSet<>()).add(e.getKey());
+            }
+            if (cache != null) {
+                genomeIds = fetchCached(scope(e.getKey(), options), genomeIds, consumer);
+            }
+            ids.addAll(genomeIds);
+        }
+        log.info("Searching for " + ids.size() + " ids from " + idsByGenome.size() + " genomes");
         // work through IDs in batches (REST server currently only allows 50 IDs
-        // at a time)
-        Map<String, Object> idParams = new HashMap<>();
-        int n = 0;
-        for (List<String> idList : CollectionUtils.eagerPartition(ids, batchSize)) {
-            idParams.put("ids", idList);
-            n += idList.size();
-            // pass sequences to consumer
-            log.debug("Posting " + idList.size() + " IDs to " + url);
+        // at a time), posting several at once within the server's rate limit
+        // and passing sequences to the consumer as each batch completes
+        SearchContext context = SearchContext.current();
+        Throttle throttle = new Throttle(workers);
+        CompletionService<List<Map<String, Object>>> completion = new ExecutorCompletionService<>(EXECUTOR);
+        Set<Future<List<Map<String, Object>>>> inFlight = new HashSet<>();
+        Iterator<List<String>> batches = CollectionUtils.eagerPartition(ids, batchSize).iterator();
+        try {
+            while (batches.hasNext() || !inFlight.isEmpty()) {
+                while (batches.hasNext() && inFlight.size() < throttle.getConcurrency()) {
+                    List<String> idList = batches.next();
+                    log.debug("Posting " + idList.size() + " IDs to " + url);
+                    inFlight.add(completion.submit(() -> postBatch(url, idList, throttle)));
+                }
+                Future<List<Map<String, Object>>> done = completion.take();
+                inFlight.remove(done);
+                context.checkCancelled();
+                List<Map<String, Object>> sequences = OrderedPrefetcher.await(done);
+                if (cache != null) {
+                    store(options, genomesById, sequences);
+                }
+                sequences.forEach(consumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchCancelledException("Interrupted while retrieving sequences");
+        } finally {
+            for (Future<List<Map<String, Object>>> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+        log.info("Completed querying " + ids.size() + " IDs");
+
+    }
+
+    /**
+     * Pass any cached sequences to the consumer
+     * 
+     * @param scope
+     * @param ids
+     * @param consumer
+     * @return IDs not found in the cache
+     */
+    protected List<String> fetchCached(String scope, List<String> ids, Consumer<Map<String, Object>> consumer) {
+        List<String> misses = new ArrayList<>();
+        for (String id : ids) {
+            List<Map<String, Object>> sequences = null;
             try {
-                template.postForObject(url, idParams, List.class).stream().forEach(consumer);
+                sequences = cache.get(SequenceStore.key(scope, id));
+            } catch (IOException e) {
+                log.warn("Could not read cached sequences for " + id, e);
+            }
+            if (sequences == null) {
+                misses.add(id);
+            } else {
+                sequences.forEach(consumer);
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Add sequences to the cache, grouped by the ID they were found for
+     * 
+     * @param options
+     *            sequence options used to retrieve the sequences
+     * @param genomesById
+     *            genomes each ID was requested for
+     * @param sequences
+     */
+    protected void store(String options, Map<String, Set<String>> genomesById,
+            List<Map<String, Object>> sequences) {
+        Map<String, List<Map<String, Object>>> byId = new LinkedHashMap<>();
+        for (Map<String, Object> sequence : sequences) {
+            Object id = sequence.containsKey(QUERY) ? sequence.get(QUERY) : sequence.get(ID);
+            if (id != null) {
+                byId.computeIfAbsent(String.valueOf(id), k -> new ArrayList<>()).add(sequence);
+            }
+        }
+        for (Map.Entry<String, List<Map<String, Object>>> e : byId.entrySet()) {
+            for (String genome : genomesById.getOrDefault(e.getKey(), Collections.singleton(null))) {
+                try {
+                    cache.put(SequenceStore.key(scope(genome, options), e.getKey()), e.getValue());
+                } catch (IOException ex) {
+                    log.warn("Could not cache sequences for " + e.getKey(), ex);
+                }
+            }
+        }
+    }
+
+    private static String scope(String genome, String options) {
+        return SequenceStore.key(String.valueOf(genome), options);
+    }
+
+    /**
+     * @param cache
+     *            persistent store for sequences, or null to always use REST
+     */
+    public void setCache(SequenceStore cache) {
+        this.cache = cache;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#getStats()
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        return cache == null ? Search.super.getStats() : cache.getStats();
+    }
+
+    /**
+     * POST a single batch of IDs, retrying with jittered backoff if the server
+     * is unavailable or rate limits the request
+     * 
+     * @param url
+     * @param ids
+     * @param throttle
+     *            shared record of the server's rate limit
+     * @return sequences found
+     * @throws InterruptedException
+     */
+    protected List<Map<String, Object>> postBatch(String url, List<String> ids, Throttle throttle)
+            throws InterruptedException {
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(Collections.singletonMap("ids", ids));
+        for (int attempt = 0;; attempt++) {
+            throttle.awaitResume();
+            RestClientException failure;
+            try {
+                ResponseEntity<List<Map<String, Object>>> response = template.exchange(url, HttpMethod.POST,
+                        request, SEQUENCE_LIST);
+                throttle.onResponse(response.getHeaders());
+                return response.getBody() == null ? Collections.emptyList() : response.getBody();
             } catch (HttpMessageNotReadableException e) {
-                log.warn("Could not find sequences for " + idList);
+                log.warn("Could not find sequences for " + ids);
+                return Collections.emptyList();
+            } catch (HttpStatusCodeException e) {
+                if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                    throttle.onRateLimited(e.getResponseHeaders());
+                } else if (!e.getStatusCode().is5xxServerError()) {
+                    throw e;
+                }
+                failure = e;
+            } catch (ResourceAccessException e) {
+                failure = e;
             }
+            if (attempt >= maxRetries) {
+                throw failure;
+            }
+            long delay = ThreadLocalRandom.current().nextLong(RETRY_BASE << Math.min(attempt, 6)) + 1;
+            log.warn("Retrying batch of " + ids.size() + " IDs in " + delay + " ms: " + failure.getMessage());
+            Thread.sleep(delay);
         }
-        log.info("Completed querying " + n + " IDs");
+    }
 
+    /**
+     * @param workers
+     *            maximum number of batches to post concurrently
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * @param maxRetries
+     *            number of times to retry a batch after a transient failure
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
     }
 
     /*
@@ -178,6 +507,25 @@ public class EnsemblRestSequenceSearch implements Search {
 
     }
 
+    /**
+     * Sequence options in a canonical form for scoping cached sequences, so
+     * that equivalent requests share cache entries regardless of the order
+     * options were supplied in or whether server defaults were given
+     * explicitly. Species is omitted as cached sequences are already scoped
+     * by genome.
+     * 
+     * @param queries
+     * @return sorted options, including the default type if not set
+     */
+    protected String getCacheOptions(List<Query> queries) {
+        Map<String, String> options = new TreeMap<>();
+        options.put(TYPE, DEFAULT_TYPE);
+        queries.stream().filter(q -> VALID_ARGS.contains(q.getFieldName()) && !SPECIES.equals(q.getFieldName())
+                && q.getValues().length == 1).forEach(q -> options.put(q.getFieldName(), q.getValues()[0]));
+        return options.entrySet().stream().map(e -> e.getKey() + "=" + e.getValue())
+                .collect(Collectors.joining("&"));
+    }
+
     /**
      * extract IDs from the queries
      * 
@@ -15,9 +15,11 @@ package org.ensembl.genesearch.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
@@ -26,9 +28,14 @@ import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.SearchContext;
+import org.ensembl.genesearch.clients.SharedHttpClient;
 import org.ensembl.genesearch.info.DataTypeInfo;
+import org.ensembl.genesearch.output.QueryOutputProjection;
+import org.ensembl.genesearch.utils.OrderedPrefetcher;
 import org.ensembl.genesearch.utils.QueryUtils;
 
+import com.fasterxml.jackson.core.JsonPointer;
 import com.fasterxml.jackson.databind.JsonNode;
 
 /**
@@ -47,11 +54,22 @@ public class EnsemblVariantSearch extends RestBasedSearch {
             + "feature=somatic_variation;feature=structural_variation;feature=somatic_structural_variation;"
             + "content-type=application/json";
     protected final static String ID_FIELD = "id";
+    protected final static String START_FIELD = "start";
     protected final static String ID_PATH = "%s/variation/%s/%s?content-type=application/json";
+    private final static JsonPointer RESULTS_POINTER = JsonPointer.compile("");
+    private final static long MIN_WINDOW = 1000;
+    // largest region accepted by the overlap endpoint
+    private final static long MAX_WINDOW = 5000000;
+    public final static int DEFAULT_WINDOW_FEATURES = 5000;
     private final String baseUri;
+    private int windowFeatures = DEFAULT_WINDOW_FEATURES;
 
     public EnsemblVariantSearch(String baseUri, DataTypeInfo info) {
-        super(info);
+        this(baseUri, info, SharedHttpClient.getDefault());
+    }
+
+    public EnsemblVariantSearch(String baseUri, DataTypeInfo info, SharedHttpClient httpClient) {
+        super(info, httpClient);
         this.baseUri = baseUri;
     }
 
@@ -116,9 +134,10 @@ public class EnsemblVariantSearch extends RestBasedSearch {
             List<Query> postQueries = getPostQueries(queries);
 
             // filter stream, convert, offset
+            QueryOutputProjection projection = QueryOutputProjection.compile(output);
             resultsToStream(getResults(response)).map(v -> (Map<String, Object>) mapper.convertValue(v, Map.class))
                     .filter(v -> QueryUtils.filterResultsByQueries.test(v, postQueries)).skip(offset).limit(limit)
-                    .map(v -> QueryUtils.filterFields(v, output)).forEach(v -> results.add(v));
+                    .map(projection::filter).forEach(v -> results.add(v));
 
             log.info(results.size() + " results retrieved");
         }
@@ -141,24 +160,27 @@ public class EnsemblVariantSearch extends RestBasedSearch {
         }
         Optional<Query> genome = queries.stream().filter(q -> q.getFieldName().equals(GENOME_FIELD)).findFirst();
         List<Query> postQueries = getPostQueries(queries);
+        QueryOutputProjection projection = QueryOutputProjection.compile(fieldNames);
+        // start is needed to drop features already returned by the previous
+        // window, and post-queries may need any field
+        QueryOutputProjection reader = projection;
+        if (!postQueries.isEmpty() || !fieldNames.getSubFields().isEmpty()) {
+            reader = QueryOutputProjection.ALL;
+        } else if (!projection.isAll() && !fieldNames.getFields().contains(START_FIELD)) {
+            List<String> fields = new ArrayList<>(fieldNames.getFields());
+            fields.add(START_FIELD);
+            reader = QueryOutputProjection.compile(QueryOutput.build(fields));
+        }
         for (String locStr : location.get().getValues()) {
             log.info("Executing fetch for location " + locStr);
             Matcher m = Query.LOCATION.matcher(locStr);
             if (m.matches()) {
-                String name = m.group(1);
-                long start = Long.valueOf(m.group(2));
-                long end = Long.valueOf(m.group(3));
-                long i = start;
-                while (i < end) {
-                    long j = Math.min(end, i + getBatchSize());
-                    String subLoc = name + ":" + i + "-" + j;
-                    log.info("Executing fetch for sub-location " + subLoc);
-                    String url = String.format(LOCATION_PATH, baseUri, genome.get().getValues()[0], subLoc);
-                    log.info("Executing fetch");
-                    JsonNode response = getResponse(url);
-                    processResponse(consumer, fieldNames, postQueries, response);
-                    i = j + 1;
-                }
+                Windows windows = new Windows(genome.get().getValues()[0], m.group(1), Long.valueOf(m.group(2)),
+                        Long.valueOf(m.group(3)), postQueries, reader, projection);
+                OrderedPrefetcher.forEachOrdered(windows, getFetchParallelism(), results -> {
+                    windows.context.checkCancelled();
+                    results.forEach(consumer);
+                });
             } else {
                 throw new IllegalArgumentException("Location " + locStr
                         + " does not match the expected location format: " + Query.LOCATION.pattern());
@@ -166,6 +188,110 @@ public class EnsemblVariantSearch extends RestBasedSearch {
         }
     }
 
+    /**
+     * Sequence of windows covering a location, fetched concurrently. Each
+     * window is sized when it is submitted from the density of features in the
+     * windows completed so far, aiming for {@link #getWindowFeatures()}
+     * features per request.
+     */
+    private final class Windows implements Iterator<Callable<List<Map<String, Object>>>> {
+        private final String genome;
+        private final String name;
+        private final long start;
+        private final long end;
+        private final List<Query> postQueries;
+        private final QueryOutputProjection reader;
+        private final QueryOutputProjection projection;
+        /**
+         * context of the request, which is not current on the prefetch threads
+         */
+        private final SearchContext context = SearchContext.current();
+        private long next;
+        private long size = getBatchSize();
+        /**
+         * features per bp, or negative if no window has completed yet
+         */
+        private volatile double density = -1;
+
+        private Windows(String genome, String name, long start, long end, List<Query> postQueries,
+                QueryOutputProjection reader, QueryOutputProjection projection) {
+            this.genome = genome;
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.postQueries = postQueries;
+            this.reader = reader;
+            this.projection = projection;
+            this.next = start;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next <= end;
+        }
+
+        @Override
+        public Callable<List<Map<String, Object>>> next() {
+            double d = density;
+            if (d > 0) {
+                size = (long) (getWindowFeatures() / d);
+            } else if (d == 0) {
+                // nothing found so far so widen quickly
+                size *= 4;
+            }
+            size = Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, size));
+            long from = next;
+            long to = Math.min(end, from + size - 1);
+            next = to + 1;
+            return () -> fetchWindow(from, to);
+        }
+
+        private List<Map<String, Object>> fetchWindow(long from, long to) {
+            String subLoc = name + ":" + from + "-" + to;
+            log.info("Executing fetch for sub-location " + subLoc);
+            List<Map<String, Object>> results = new ArrayList<>();
+            int[] found = { 0 };
+            streamResponse(String.format(LOCATION_PATH, baseUri, genome, subLoc), Collections.emptyList(), reader,
+                    v -> {
+                        found[0]++;
+                        // features spanning the window edge were returned
+                        // with the previous window
+                        if (from > start && startsBefore(v, from)) {
+                            return;
+                        }
+                        if (QueryUtils.filterResultsByQueries.test(v, postQueries)) {
+                            results.add(reader == projection ? v : projection.filter(v));
+                        }
+                    }, context);
+            // blend with the previous estimate so that a single unusual
+            // window does not swing the size too far
+            double d = (double) found[0] / (to - from + 1);
+            double previous = density;
+            density = previous < 0 ? d : (previous + d) / 2;
+            return results;
+        }
+    }
+
+    private static boolean startsBefore(Map<String, Object> feature, long pos) {
+        Object start = feature.get(START_FIELD);
+        return start instanceof Number && ((Number) start).longValue() < pos;
+    }
+
+    /**
+     * @return target number of features to retrieve per location window
+     */
+    public int getWindowFeatures() {
+        return windowFeatures;
+    }
+
+    /**
+     * @param windowFeatures
+     *            target number of features to retrieve per location window
+     */
+    public void setWindowFeatures(int windowFeatures) {
+        this.windowFeatures = windowFeatures;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -190,6 +316,16 @@ public class EnsemblVariantSearch extends RestBasedSearch {
         return response;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.impl.RestBasedSearch#getResultsPointer()
+     */
+    @Override
+    protected JsonPointer getResultsPointer() {
+        return RESULTS_POINTER;
+    }
+
     /* (non-Javadoc)
      * @see org.ensembl.genesearch.impl.RestBasedSearch#getUrl(java.util.List, org.ensembl.genesearch.QueryOutput, int, int)
      */
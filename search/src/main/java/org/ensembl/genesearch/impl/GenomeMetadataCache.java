@@ -0,0 +1,256 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.ensembl.genesearch.QueryOutput;
+import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.utils.DataUtils;
+import org.ensembl.genesearch.utils.PeriodicLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Shared cache of genome metadata, used to look up genomes by ID, assembly
+ * accession or division without querying the genomes {@link Search} for each
+ * request. All genomes are loaded in bulk in the background on construction
+ * and reloaded periodically, with each load replacing an immutable snapshot
+ * so lookups never see a partial set.
+ * <p>
+ * Genomes missing from the snapshot (e.g. added since the last load) are
+ * looked up individually, and IDs which cannot be found are remembered for a
+ * limited time so that repeated requests for them do not reach the backend.
+ * At most {@link #MAX_MISSING} unknown IDs are remembered.
+ * <p>
+ * Periodic reloads continue until the cache is closed.
+ * 
+ * @author dstaines
+ *
+ */
+public class GenomeMetadataCache implements Closeable {
+
+    public static final String ID = "id";
+    public static final String DIVISION = "division";
+    public static final String ACCESSION = "assembly.accession";
+    private static final QueryOutput FIELDS = QueryOutput
+            .build("[\"id\",\"division\",{\"assembly\":[\"accession\",\"name\"]}]");
+    public static final long MAX_MISSING = 10000;
+    public static final long DEFAULT_REFRESH = 3600;
+    public static final long DEFAULT_NEGATIVE_TTL = 300;
+
+    /**
+     * Immutable view of all genomes from a single load
+     */
+    private static final class Snapshot {
+        private final Map<String, Map<String, Object>> byId;
+        private final Map<String, List<String>> byAccession;
+        private final Map<String, Set<String>> byDivision;
+
+        private Snapshot(List<Map<String, Object>> genomes) {
+            Map<String, Map<String, Object>> ids = new HashMap<>();
+            Map<String, List<String>> accessions = new HashMap<>();
+            Map<String, Set<String>> divisions = new HashMap<>();
+            for (Map<String, Object> genome : genomes) {
+                String id = String.valueOf(genome.get(ID));
+                ids.put(id, Collections.unmodifiableMap(genome));
+                for (String accession : DataUtils.getObjValsForKey(genome, ACCESSION)) {
+                    accessions.computeIfAbsent(accession, k -> new ArrayList<>()).add(id);
+                }
+                Object division = genome.get(DIVISION);
+                if (division != null) {
+                    divisions.computeIfAbsent(String.valueOf(division), k -> new HashSet<>()).add(id);
+                }
+            }
+            accessions.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            divisions.replaceAll((k, v) -> Collections.unmodifiableSet(v));
+            this.byId = ids;
+            this.byAccession = accessions;
+            this.byDivision = divisions;
+        }
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final Search genomeSearch;
+    private final long negativeTtl;
+    // genomes found individually since the last load
+    private final Map<String, Map<String, Object>> extra = new ConcurrentHashMap<>();
+    // genomes which could not be found, expiring after the negative TTL
+    private final Cache<String, Boolean> missing;
+    private final PeriodicLoader<Snapshot> snapshots;
+
+    /**
+     * Create a cache refreshed every {@link #DEFAULT_REFRESH} seconds,
+     * remembering unknown genomes for {@link #DEFAULT_NEGATIVE_TTL} seconds
+     * 
+     * @param genomeSearch
+     *            search for retrieving genome information
+     */
+    public GenomeMetadataCache(Search genomeSearch) {
+        this(genomeSearch, DEFAULT_REFRESH, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /**
+     * @param genomeSearch
+     *            search for retrieving genome information
+     * @param refresh
+     *            interval between loads in seconds
+     * @param negativeTtl
+     *            time in seconds to remember that a genome could not be found
+     */
+    public GenomeMetadataCache(Search genomeSearch, long refresh, long negativeTtl) {
+        this.genomeSearch = genomeSearch;
+        this.negativeTtl = TimeUnit.SECONDS.toMillis(negativeTtl);
+        this.missing = CacheBuilder.newBuilder().maximumSize(MAX_MISSING)
+                .expireAfterWrite(this.negativeTtl, TimeUnit.MILLISECONDS).build();
+        this.snapshots = new PeriodicLoader<>("genome metadata", this::load, refresh);
+    }
+
+    /**
+     * Reload all genomes from the genome search, replacing the current
+     * snapshot
+     */
+    public void refresh() {
+        snapshots.refresh();
+    }
+
+    private Snapshot load() {
+        List<Map<String, Object>> genomes = new ArrayList<>();
+        genomeSearch.fetch(genomes::add, Collections.emptyList(), FIELDS);
+        Snapshot snapshot = new Snapshot(genomes);
+        extra.clear();
+        log.info("Loaded metadata for " + genomes.size() + " genomes");
+        return snapshot;
+    }
+
+    /**
+     * @return the current snapshot, waiting for the initial load if needed
+     */
+    private Snapshot getSnapshot() {
+        return snapshots.get();
+    }
+
+    /**
+     * @param id
+     *            genome ID
+     * @return metadata for the genome (ID, division and assembly), or null if
+     *         not found
+     */
+    public Map<String, Object> getGenome(String id) {
+        Map<String, Object> genome = getSnapshot().byId.get(id);
+        if (genome == null) {
+            genome = extra.get(id);
+        }
+        if (genome == null && missing.getIfPresent(id) == null) {
+            genome = genomeSearch.fetchById(FIELDS, id);
+            if (genome == null || genome.isEmpty()) {
+                genome = null;
+                missing.put(id, Boolean.TRUE);
+            } else {
+                genome = Collections.unmodifiableMap(genome);
+                extra.put(id, genome);
+            }
+        }
+        return genome;
+    }
+
+    /**
+     * @param id
+     *            genome ID
+     * @return division of the genome, or null if not found
+     */
+    public String getDivision(String id) {
+        Map<String, Object> genome = getGenome(id);
+        return genome == null || genome.get(DIVISION) == null ? null : String.valueOf(genome.get(DIVISION));
+    }
+
+    /**
+     * @param id
+     *            genome ID
+     * @return INSDC assembly accession of the genome, or null if not found
+     */
+    public String getAccession(String id) {
+        Map<String, Object> genome = getGenome(id);
+        if (genome == null) {
+            return null;
+        }
+        Set<String> accessions = DataUtils.getObjValsForKey(genome, ACCESSION);
+        return accessions.isEmpty() ? null : accessions.iterator().next();
+    }
+
+    /**
+     * @param accession
+     *            INSDC assembly accession
+     * @return IDs of genomes with the supplied assembly
+     */
+    public List<String> getGenomesByAccession(String accession) {
+        return getSnapshot().byAccession.getOrDefault(accession, Collections.emptyList());
+    }
+
+    /**
+     * @param division
+     *            name of division e.g. Ensembl
+     * @return IDs of genomes in the supplied division
+     */
+    public Set<String> getGenomesByDivision(String division) {
+        return getSnapshot().byDivision.getOrDefault(division, Collections.emptySet());
+    }
+
+    /**
+     * @return time in milliseconds to remember that a genome could not be
+     *         found, for use by consumers caching their own lookups
+     */
+    public long getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    /**
+     * @return statistics on the contents of the cache
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Snapshot s = snapshots.peek();
+        stats.put("genomes", s == null ? 0 : s.byId.size());
+        stats.put("extra", extra.size());
+        stats.put("missing", missing.size());
+        stats.put("loaded_at", snapshots.getLoadedAt());
+        RuntimeException error = snapshots.getLastError();
+        if (error != null) {
+            stats.put("error", String.valueOf(error.getMessage()));
+        }
+        return stats;
+    }
+
+    /**
+     * Stop periodic reloads. Lookups continue to use the last snapshot.
+     */
+    @Override
+    public void close() {
+        snapshots.close();
+    }
+
+}
@@ -14,6 +14,7 @@
 package org.ensembl.genesearch.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +23,8 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.ensembl.genesearch.SearchContext;
+import org.ensembl.genesearch.clients.SharedHttpClient;
 import org.ensembl.genesearch.utils.VcfUtils;
 import org.ensembl.genesearch.utils.VcfUtils.VcfFormat;
 import org.slf4j.Logger;
@@ -32,7 +35,6 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.ClientHttpResponse;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.DefaultResponseErrorHandler;
 import org.springframework.web.client.HttpClientErrorException;
@@ -83,12 +85,22 @@ public class HtsGetClient {
      *            dataset
      */
     public HtsGetClient(String baseUrl, String egaBaseUrl) {
+        this(baseUrl, egaBaseUrl, SharedHttpClient.getDefault());
+    }
+
+    /**
+     * @param baseUrl
+     *            htsget API URL
+     * @param egaBaseUrl
+     *            optional EGA REST API URL for retrieving lists of files for a
+     *            dataset
+     * @param httpClient
+     *            pooled client used for all requests
+     */
+    public HtsGetClient(String baseUrl, String egaBaseUrl, SharedHttpClient httpClient) {
         this.baseUrl = baseUrl;
         this.egaBaseUrl = egaBaseUrl;
-        restTemplate = new RestTemplate();
-        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setBufferRequestBody(false);
-        restTemplate.setRequestFactory(requestFactory);
+        restTemplate = new RestTemplate(httpClient.getRequestFactory());
         restTemplate.getMessageConverters().add(new MappingJackson2HttpMessageConverter());
         restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
             private final ObjectMapper mapper = new ObjectMapper();
@@ -249,14 +261,32 @@ public class HtsGetClient {
         log.info(String.format("Retrieving variants from %s %s:%d-:%d", accession, seqRegionName, start, end));
         log.debug("Finding URLs");
         List<String> urls = getUrls(accession, seqRegionName, start, end, token);
+        SearchContext context = SearchContext.current();
         for (String url : urls) {
+            context.checkCancelled();
             log.info("Retrieving data from " + url);
-            RequestCallback requestCallback = request -> request.getHeaders().add("Authorization", "Bearer " + token);
+            RequestCallback requestCallback = request -> {
+                request.getHeaders().add("Authorization", "Bearer " + token);
+                // plain content can be aborted without decompressing the rest
+                request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "identity");
+            };
             ResponseExtractor<Void> responseExtractor = response -> {
-                BufferedLineReader reader = new BufferedLineReader(response.getBody());
-                VcfFormat format = VcfFormat.readFormat(reader);
-                reader.lines().map(l -> VcfUtils.vcfLineToMap(l, format)).forEach(consumer);
-                reader.close();
+                // aborting the connection on cancellation or failure avoids
+                // the pooled response draining the rest of the file when closed
+                InputStream body = response.getBody();
+                try (SearchContext.Registration r = context.onCancel(() -> SharedHttpClient.abort(body))) {
+                    BufferedLineReader reader = new BufferedLineReader(body);
+                    VcfFormat format = VcfFormat.readFormat(reader);
+                    reader.lines().forEach(l -> {
+                        context.checkCancelled();
+                        consumer.accept(VcfUtils.vcfLineToMap(l, format));
+                    });
+                } catch (RuntimeException | IOException e) {
+                    SharedHttpClient.abort(body);
+                    // reading fails if the body was aborted by cancellation
+                    context.checkCancelled();
+                    throw e;
+                }
                 return null;
             };
             restTemplate.execute(url, HttpMethod.GET, requestCallback, responseExtractor);
@@ -24,7 +24,11 @@ public class HtsGetSingleFileVariantSearch extends HtsGetVariantSearch {
 	private final String[] fileAccessions;
 	
 	public HtsGetSingleFileVariantSearch(DataTypeInfo type, String baseUrl, String fileAccession) {
-		super(type, baseUrl, StringUtils.EMPTY);
+		this(type, new HtsGetClient(baseUrl, StringUtils.EMPTY), fileAccession);
+	}
+
+	public HtsGetSingleFileVariantSearch(DataTypeInfo type, HtsGetClient client, String fileAccession) {
+		super(type, client);
 		this.fileAccessions = new String[] {fileAccession};
 	}
 
@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,6 +30,7 @@ import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.genesearch.Search;
 import org.ensembl.genesearch.info.DataTypeInfo;
+import org.ensembl.genesearch.output.QueryOutputProjection;
 import org.ensembl.genesearch.utils.QueryUtils;
 
 /**
@@ -48,6 +50,8 @@ import org.ensembl.genesearch.utils.QueryUtils;
  * <li>end</li>
  * <li>files - EGA file accessions</li>
  * <li>datasets - EGA dataset accessions</li>
+ * <li>sample_metadata - how subclasses attach sample metadata, where
+ * supported</li>
  * </ul>
  * 
  * Authentication is delegated to the user, who must authenticate against the
@@ -82,6 +86,7 @@ public class HtsGetVariantSearch implements Search {
         public static final String FILES = "files";
         public static final String DATASETS = "datasets";
         public static final String LOCATION = "location";
+        public static final String SAMPLE_METADATA = "sample_metadata";
 
         public static HtsGetArgs build(List<Query> qs) {
             HtsGetArgs args = new HtsGetArgs();
@@ -111,6 +116,9 @@ public class HtsGetVariantSearch implements Search {
                 case SESSION:
                     args.session = q.getValues()[0];
                     break;
+                case SAMPLE_METADATA:
+                    args.sampleMetadata = q.getValues()[0];
+                    break;
                 default:
                     args.queries.add(q);
                     break;
@@ -126,6 +134,7 @@ public class HtsGetVariantSearch implements Search {
         long end;
         String token;
         String session;
+        String sampleMetadata;
 
         List<Query> queries = new ArrayList<>();
 
@@ -153,7 +162,11 @@ public class HtsGetVariantSearch implements Search {
     protected final DataTypeInfo dataType;
 
     public HtsGetVariantSearch(DataTypeInfo type, String baseUrl, String egaBaseUrl) {
-        this.client = new HtsGetClient(baseUrl, egaBaseUrl);
+        this(type, new HtsGetClient(baseUrl, egaBaseUrl));
+    }
+
+    public HtsGetVariantSearch(DataTypeInfo type, HtsGetClient client) {
+        this.client = client;
         this.dataType = type;
     }
 
@@ -161,10 +174,12 @@ public class HtsGetVariantSearch implements Search {
     public void fetch(Consumer<Map<String, Object>> consumer, List<Query> queries, QueryOutput fieldNames) {
         // extract URI arguments
         HtsGetArgs args = queryToArgs(queries);
+        QueryOutputProjection projection = QueryOutputProjection.compile(fieldNames);
+        UnaryOperator<Map<String, Object>> decorator = newDecorator(args, consumer);
         Consumer<Map<String, Object>> fetchConsumer = v -> {
             Optional<Map<String, Object>> v2 = queryAndFilter(args, v);
             if (v2.isPresent()) {
-                consumer.accept(QueryUtils.filterFields(decorateVariant(v2.get()), fieldNames));
+                consumer.accept(projection.copy(decorator.apply(v2.get())));
             }
         };
         if (args.files != null && args.files.length > 0) {
@@ -239,12 +254,14 @@ public class HtsGetVariantSearch implements Search {
         AtomicInteger n = new AtomicInteger();
         // extract URI arguments
         HtsGetArgs args = queryToArgs(queries);
+        QueryOutputProjection projection = QueryOutputProjection.compile(output);
+        UnaryOperator<Map<String, Object>> decorator = newDecorator(args, null);
         Consumer<Map<String, Object>> consumer = v -> {
             Optional<Map<String, Object>> v2 = queryAndFilter(args, v);
             if (v2.isPresent()) {
                 int i = n.incrementAndGet();
                 if (i > offset && i < offset + limit) {
-                    results.add(QueryUtils.filterFields(decorateVariant(v), output));
+                    results.add(projection.copy(decorator.apply(v)));
                 }
             }
         };
@@ -279,6 +296,25 @@ public class HtsGetVariantSearch implements Search {
         return true;
     }
 
+    /**
+     * Create the decorator used for all variants retrieved by a single
+     * request, allowing decorations to be resolved once per request rather
+     * than once per variant. Decorations may be shared between variants, so
+     * results are projected by copying rather than in place. Uses
+     * {@link #decorateVariant(Map)} by default.
+     * 
+     * @param args
+     *            parsed htsget arguments
+     * @param sink
+     *            destination for any additional records the decorator emits
+     *            ahead of the variants referring to them, or null if the
+     *            request cannot accept additional records
+     * @return decorator
+     */
+    protected UnaryOperator<Map<String, Object>> newDecorator(HtsGetArgs args, Consumer<Map<String, Object>> sink) {
+        return this::decorateVariant;
+    }
+
     /**
      * Add additional content to each variant document. This is a no-op stub.
      * 
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
@@ -34,6 +35,7 @@ import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.SearchContext;
 import org.ensembl.genesearch.SearchType;
 import org.ensembl.genesearch.info.DataTypeInfo;
 import org.ensembl.genesearch.info.FieldInfo;
@@ -343,16 +345,20 @@ public abstract class JoinMergeSearch implements Search {
 
         // process in batches
         Search toSearch = provider.getSearch(to.name.get());
+        SearchContext context = SearchContext.current();
         Map<String, List<Map<String, Object>>> resultsById = new HashMap<>();
         Map<String, Set<String>> ids = new HashMap<>();
         provider.getSearch(from.name.get()).fetch(r -> {
             readFrom(r, to, from, resultsById, ids);
             if (resultsById.size() == getBatchSize()) {
+                // stop before starting the next join lookup
+                context.checkCancelled();
                 mapTo(toSearch, to, from, resultsById, ids);
                 resultsById.values().stream().forEach(l -> l.stream().forEach(consumer));
                 resultsById.clear();
             }
         }, from.queries, from.fields);
+        context.checkCancelled();
         mapTo(toSearch, to, from, resultsById, ids);
         resultsById.values().stream().forEach(l -> l.stream().forEach(consumer));
     }
@@ -369,25 +375,41 @@ public abstract class JoinMergeSearch implements Search {
             boolean inner) {
         // process in batches
         Search toSearch = provider.getSearch(to.name.get());
+        SearchContext context = SearchContext.current();
         provider.getSearch(from.name.get()).fetch(fromRow -> {
+            context.checkCancelled();
             // build a new query
             List<Query> toQueries = buildToRangeQuery(from, to, fromRow);
             // execute and merge "to" results onto existing "from"
-            toSearch.fetch(toRow -> {
-                addRangeJoinData(from, to, fromRow, toRow);
-            }, toQueries, to.fields);
+            addRangeJoinData(toSearch, from, to, fromRow, toQueries);
             if (!inner || fromRow.containsKey(to.name.get().toString())) {
                 consumer.accept(fromRow);
             }
         }, from.queries, from.fields);
     }
 
-    protected void addRangeJoinData(SubSearchParams from, SubSearchParams to, Map<String, Object> fromRow,
-            Map<String, Object> toRow) {
+    /**
+     * Retrieve "to" rows overlapping a "from" row and merge them onto it. Where
+     * only a count is needed, a single count request is used rather than
+     * retrieving the rows.
+     * 
+     * @param toSearch
+     * @param from
+     * @param to
+     * @param fromRow
+     * @param toQueries
+     *            queries built by
+     *            {@link #buildToRangeQuery(SubSearchParams, SubSearchParams, Map)}
+     */
+    protected void addRangeJoinData(Search toSearch, SubSearchParams from, SubSearchParams to,
+            Map<String, Object> fromRow, List<Query> toQueries) {
         if (to.fields.getFields().contains(COUNT)) {
-            incrementCount(fromRow, to.name.get().toString());
+            long n = toSearch.count(toQueries);
+            if (n > 0) {
+                setCount(fromRow, to.name.get().toString(), n);
+            }
         } else {
-            mergeResults(to, from, toRow).accept(fromRow);
+            toSearch.fetch(toRow -> mergeResults(to, from, toRow).accept(fromRow), toQueries, to.fields);
         }
     }
 
@@ -521,6 +543,22 @@ public abstract class JoinMergeSearch implements Search {
         }
     }
 
+    /**
+     * @param result
+     * @param toName
+     * @param n
+     *            count to set
+     */
+    @SuppressWarnings("unchecked")
+    protected void setCount(Map<String, Object> result, String toName, long n) {
+        Object tgt = result.get(toName);
+        if (tgt == null) {
+            tgt = new HashMap<String, Object>();
+            result.put(toName, tgt);
+        }
+        ((Map<String, Object>) tgt).put(COUNT, (int) n);
+    }
+
     protected Consumer<Map<String, Object>> mergeResults(SubSearchParams to, SubSearchParams from,
             Map<String, Object> r) {
         return fromR -> {
@@ -665,9 +703,7 @@ public abstract class JoinMergeSearch implements Search {
             List<Query> toQueries = buildToRangeQuery(from, to, r);
             log.debug("To queries: " + toQueries);
             // execute and merge "to" results onto existing "from"
-            toSearch.fetch(t -> {
-                addRangeJoinData(from, to, r, t);
-            }, toQueries, to.fields);
+            addRangeJoinData(toSearch, from, to, r, toQueries);
             if (inner && !r.containsKey(to.name.get().toString())) {
                 resultsI.remove();
             }
@@ -767,6 +803,94 @@ public abstract class JoinMergeSearch implements Search {
         return fromResults;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#count(java.util.List)
+     */
+    @Override
+    public long count(List<Query> queries) {
+        return count(queries, QueryOutput.build(Arrays.asList(getIdField())));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#count(java.util.List,
+     * org.ensembl.genesearch.QueryOutput)
+     */
+    @Override
+    public long count(List<Query> queries, QueryOutput output) {
+        Optional<List<Query>> primaryQueries = getCountQueries(queries, output);
+        if (primaryQueries.isPresent()) {
+            return provider.getSearch(getPrimarySearchType()).count(primaryQueries.get());
+        } else {
+            Pair<SubSearchParams, SubSearchParams> qf = decomposeQueryFields(queries, output);
+            // removes the inner term from the "to" queries
+            boolean inner = isInner(qf.getLeft(), qf.getRight());
+            AtomicLong n = new AtomicLong();
+            fetchWithRangeJoin(r -> n.incrementAndGet(), qf.getLeft(), qf.getRight(), inner);
+            return n.get();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#exists(java.util.List)
+     */
+    @Override
+    public boolean exists(List<Query> queries) {
+        return exists(queries, QueryOutput.build(Arrays.asList(getIdField())));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#exists(java.util.List,
+     * org.ensembl.genesearch.QueryOutput)
+     */
+    @Override
+    public boolean exists(List<Query> queries, QueryOutput output) {
+        Optional<List<Query>> primaryQueries = getCountQueries(queries, output);
+        if (primaryQueries.isPresent()) {
+            return provider.getSearch(getPrimarySearchType()).exists(primaryQueries.get());
+        } else {
+            return count(queries, output) > 0;
+        }
+    }
+
+    /**
+     * Find the queries to count against the primary search, joining in the
+     * same way as {@link #query(List, QueryOutput, List, int, int, List)}.
+     * Joins are only used where the output names a join target, so nested
+     * queries on fields of the primary search are passed straight through.
+     * 
+     * @param queries
+     * @param output
+     * @return queries for the primary search, or empty if the count can only
+     *         be found by fetching through an inner range join
+     */
+    protected Optional<List<Query>> getCountQueries(List<Query> queries, QueryOutput output) {
+        Pair<SubSearchParams, SubSearchParams> qf = decomposeQueryFields(queries, output);
+        SubSearchParams from = qf.getLeft();
+        SubSearchParams to = qf.getRight();
+        if (!to.name.isPresent()) {
+            log.debug("Passing count through to primary search");
+            return Optional.of(queries);
+        } else if (!isInner(from, to)) {
+            // outer joins do not change the number of "from" rows
+            log.debug("Counting outer join to " + to.name);
+            return Optional.of(from.queries);
+        } else if (to.joinStrategy.type == JoinType.TERM) {
+            log.debug("Counting inner term join to " + to.name);
+            return Optional.of(innerTermJoinQuery(from, to).queries);
+        } else {
+            log.debug("Counting inner range join to " + to.name);
+            return Optional.empty();
+        }
+    }
+
     @Override
     public QueryResult select(String name, int offset, int limit) {
         return provider.getSearch(getPrimarySearchType()).select(name, offset, limit);
@@ -815,4 +939,14 @@ public abstract class JoinMergeSearch implements Search {
         return provider.getSearch(getPrimarySearchType()).up();
     }
 
+    @Override
+    public Map<String, Object> getStats() {
+        return provider.getSearch(getPrimarySearchType()).getStats();
+    }
+
+    @Override
+    public String getDataVersion() {
+        return provider.getSearch(getPrimarySearchType()).getDataVersion();
+    }
+
 }
\ No newline at end of file
@@ -132,6 +132,29 @@ public class MongoSearch implements Search {
         return new QueryResult(-1L, offset, limit, getFieldInfo(output), results, Collections.emptyMap());
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#count(java.util.List)
+     */
+    @Override
+    public long count(List<Query> queries) {
+        Document filter = MongoSearchBuilder.buildQuery(queries);
+        log.info("Counting with filter " + filter.toJson());
+        return mongoC.countDocuments(filter);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#exists(java.util.List)
+     */
+    @Override
+    public boolean exists(List<Query> queries) {
+        Document filter = MongoSearchBuilder.buildQuery(queries);
+        return mongoC.find(filter).projection(Projections.include(MONGO_ID)).limit(1).first() != null;
+    }
+
     /**
      * Utility to transform a Mongo {@link Document} of results into a nested
      * map.
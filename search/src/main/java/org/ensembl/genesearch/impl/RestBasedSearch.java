@@ -14,26 +14,39 @@
 package org.ensembl.genesearch.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import org.apache.commons.io.IOUtils;
 import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.SearchContext;
+import org.ensembl.genesearch.clients.SharedHttpClient;
 import org.ensembl.genesearch.info.DataTypeInfo;
+import org.ensembl.genesearch.output.QueryOutputProjection;
+import org.ensembl.genesearch.utils.OrderedPrefetcher;
 import org.ensembl.genesearch.utils.QueryUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -41,6 +54,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * Abstract class that can be extended to use a generic REST backend. Assumes that
  * fields can be classified as either URI or post-retrieval. Provides template
  * methods for transforming a URI response into a JsonNode document.
+ * <p>
+ * Responses are decoded one result at a time (see
+ * {@link #streamResponse(String, List, QueryOutputProjection, Consumer)}), so
+ * a page is never held in memory as a whole when pages are fetched one after
+ * another (a fetch parallelism of 1). With a higher fetch parallelism, pages
+ * are fetched concurrently and each is buffered as a list of projected
+ * results until it can be passed on in order, so up to
+ * {@link #getFetchParallelism()} + 1 pages of results may be held at once.
  * 
  * @author dstaines
  *
@@ -48,11 +69,30 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public abstract class RestBasedSearch implements Search {
 
     protected final DataTypeInfo info;
+    /**
+     * Field holding the total number of results available for a query
+     */
+    protected static final String TOTAL_FIELD = "numTotalResults";
+    protected static final JsonPointer TOTAL_POINTER = JsonPointer.compile("/response/0/" + TOTAL_FIELD);
+
     protected final Logger log = LoggerFactory.getLogger(this.getClass());
     protected final ObjectMapper mapper = new ObjectMapper();
+    protected final SharedHttpClient httpClient;
+    public static final int DEFAULT_FETCH_PARALLELISM = 4;
+    protected int fetchParallelism = DEFAULT_FETCH_PARALLELISM;
 
     public RestBasedSearch(DataTypeInfo info) {
+        this(info, SharedHttpClient.getDefault());
+    }
+
+    /**
+     * @param info
+     * @param httpClient
+     *            pooled client used for all requests
+     */
+    public RestBasedSearch(DataTypeInfo info, SharedHttpClient httpClient) {
         this.info = info;
+        this.httpClient = httpClient;
     }
 
     /*
@@ -63,23 +103,69 @@ public abstract class RestBasedSearch implements Search {
      */
     @Override
     public void fetch(Consumer<Map<String, Object>> consumer, List<Query> queries, QueryOutput fieldNames) {
-        int offset = 0;
-        int resultCnt = 0;
         List<Query> postQueries = getPostQueries(queries);
-        do {
-            String url = getUrl(queries, fieldNames, offset, getBatchSize());
-            if (url.isEmpty()) {
+        QueryOutputProjection projection = QueryOutputProjection.compile(fieldNames);
+        SearchContext context = SearchContext.current();
+        context.checkCancelled();
+        int batchSize = getBatchSize();
+        String url = getUrl(queries, fieldNames, 0, batchSize);
+        if (url.isEmpty()) {
+            return;
+        }
+        log.info("Executing fetch");
+        int resultCnt = streamResponse(url, postQueries, projection, consumer, context);
+        // once the total is known, request the remaining pages
+        List<String> pageUrls = new ArrayList<>();
+        for (int offset = batchSize; offset < resultCnt; offset += batchSize) {
+            String pageUrl = getUrl(queries, fieldNames, offset, batchSize);
+            if (pageUrl.isEmpty()) {
                 break;
             }
-            log.info("Executing fetch");
-            JsonNode response = getResponse(url);
-            if (resultCnt == 0) {
-                resultCnt = Integer.parseUnsignedInt(response.get("response").get(0).get("numTotalResults").asText());
+            pageUrls.add(pageUrl);
+        }
+        if (getFetchParallelism() > 1) {
+            // pages are decoded by the prefetch threads and buffered whole
+            // until their turn, trading up to fetchParallelism + 1 pages of
+            // memory for overlapping requests. The request's context is passed
+            // explicitly as it is not current on those threads
+            List<Callable<List<Map<String, Object>>>> pages = new ArrayList<>(pageUrls.size());
+            for (String pageUrl : pageUrls) {
+                pages.add(() -> {
+                    List<Map<String, Object>> page = new ArrayList<>(batchSize);
+                    streamResponse(pageUrl, postQueries, projection, page::add, context);
+                    return page;
+                });
             }
-            processResponse(consumer, fieldNames, postQueries, response);
-            log.info("Fetch executed");
-            offset += getBatchSize();
-        } while (resultCnt > 0 && offset < resultCnt);
+            OrderedPrefetcher.forEachOrdered(pages.iterator(), getFetchParallelism(), page -> {
+                context.checkCancelled();
+                page.forEach(consumer);
+            });
+        } else {
+            for (String pageUrl : pageUrls) {
+                context.checkCancelled();
+                streamResponse(pageUrl, postQueries, projection, consumer, context);
+            }
+        }
+        log.info("Fetch executed");
+    }
+
+    /**
+     * @return maximum number of pages requested concurrently by
+     *         {@link #fetch(Consumer, List, QueryOutput)}. Each concurrent
+     *         page is buffered whole, so this also bounds the number of pages
+     *         held in memory.
+     */
+    public int getFetchParallelism() {
+        return fetchParallelism;
+    }
+
+    /**
+     * @param fetchParallelism
+     *            maximum number of pages to request concurrently; 1 streams
+     *            each page straight to the consumer without buffering
+     */
+    public void setFetchParallelism(int fetchParallelism) {
+        this.fetchParallelism = fetchParallelism;
     }
 
     /**
@@ -113,7 +199,7 @@ public abstract class RestBasedSearch implements Search {
     protected JsonNode getResponse(String uri) {
         try {
             log.info("Querying " + uri);
-            ResponseEntity<String> response = new RestTemplate().getForEntity(uri, String.class);
+            ResponseEntity<String> response = httpClient.getRestTemplate().getForEntity(uri, String.class);
             if (response.getStatusCode() != HttpStatus.OK) {
                 throw new RestSearchException(uri, response.getBody(), response.getStatusCode());
             }
@@ -124,6 +210,145 @@ public abstract class RestBasedSearch implements Search {
         }
     }
 
+    /**
+     * Invoke URI and decode each result in the body as it is read, passing
+     * those matching the post-retrieval queries to the consumer. Responses are
+     * never materialised as a whole unless {@link #getResultsPointer()} is
+     * null, in which case {@link #getResponse(String)} and
+     * {@link #getResults(JsonNode)} are used instead.
+     * 
+     * @param uri
+     * @param postQueries
+     *            queries to apply to each result
+     * @param projection
+     *            fields to retain
+     * @param consumer
+     *            destination for results
+     * @return total number of results reported by the response at
+     *         {@link #TOTAL_POINTER}, or -1 if not present
+     */
+    protected int streamResponse(String uri, List<Query> postQueries, QueryOutputProjection projection,
+            Consumer<Map<String, Object>> consumer) {
+        return streamResponse(uri, postQueries, projection, consumer, SearchContext.current());
+    }
+
+    /**
+     * As {@link #streamResponse(String, List, QueryOutputProjection, Consumer)}
+     * but in the supplied context, for use on threads other than the one
+     * serving the request. Cancelling the context aborts the response body.
+     * 
+     * @param uri
+     * @param postQueries
+     *            queries to apply to each result
+     * @param projection
+     *            fields to retain
+     * @param consumer
+     *            destination for results
+     * @param context
+     *            context of the request being served
+     * @return total number of results reported by the response at
+     *         {@link #TOTAL_POINTER}, or -1 if not present
+     */
+    protected int streamResponse(String uri, List<Query> postQueries, QueryOutputProjection projection,
+            Consumer<Map<String, Object>> consumer, SearchContext context) {
+        context.checkCancelled();
+        JsonPointer resultsPointer = getResultsPointer();
+        if (resultsPointer == null) {
+            JsonNode response = getResponse(uri);
+            context.checkCancelled();
+            consumeStream(consumer, projection, postQueries, resultsToStream(getResults(response)));
+            JsonNode total = response.at(TOTAL_POINTER);
+            return total.isMissingNode() ? -1 : Integer.parseUnsignedInt(total.asText());
+        }
+        log.info("Querying " + uri);
+        return httpClient.getRestTemplate().execute(uri, HttpMethod.GET, null, response -> {
+            if (response.getStatusCode() != HttpStatus.OK) {
+                throw new RestSearchException(uri, IOUtils.toString(response.getBody(), StandardCharsets.UTF_8),
+                        response.getStatusCode());
+            }
+            // aborting the connection on cancellation or failure avoids the
+            // pooled response draining the rest of the body when closed
+            InputStream body = response.getBody();
+            try (SearchContext.Registration r = context.onCancel(() -> SharedHttpClient.abort(body))) {
+                JsonParser parser = mapper.getFactory().createParser(body);
+                int total = parseResults(parser, resultsPointer, postQueries, projection, consumer, context);
+                parser.close();
+                return total;
+            } catch (JsonProcessingException e) {
+                SharedHttpClient.abort(body);
+                // reading fails if the body was aborted by cancellation
+                context.checkCancelled();
+                throw new RestSearchException("Could not handle response", uri, e);
+            } catch (RuntimeException | IOException e) {
+                SharedHttpClient.abort(body);
+                context.checkCancelled();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Read a response from the supplied parser, decoding each object in the
+     * results array straight into a map
+     * 
+     * @param parser
+     * @param resultsPointer
+     *            location of the results array
+     * @param postQueries
+     *            queries to apply to each result
+     * @param projection
+     *            fields to retain
+     * @param consumer
+     *            destination for results
+     * @param context
+     *            context of the request being served, checked for
+     *            cancellation before each result
+     * @return total number of results found at {@link #TOTAL_POINTER}, or -1
+     *         if not present
+     * @throws IOException
+     */
+    protected int parseResults(JsonParser parser, JsonPointer resultsPointer, List<Query> postQueries,
+            QueryOutputProjection projection, Consumer<Map<String, Object>> consumer, SearchContext context)
+            throws IOException {
+        String resultsPath = resultsPointer.toString();
+        // post-retrieval queries may need fields outside the projection
+        QueryOutputProjection reader = postQueries.isEmpty() ? projection : QueryOutputProjection.ALL;
+        int total = -1;
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.START_ARRAY
+                    && resultsPath.equals(parser.getParsingContext().pathAsPointer().toString())) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token == JsonToken.START_OBJECT) {
+                        context.checkCancelled();
+                        Map<String, Object> result = reader.read(parser);
+                        if (QueryUtils.filterResultsByQueries.test(result, postQueries)) {
+                            consumer.accept(reader == projection ? result : projection.filter(result));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (token.isScalarValue() && TOTAL_FIELD.equals(parser.getCurrentName())
+                    && TOTAL_POINTER.toString().equals(parser.getParsingContext().pathAsPointer().toString())) {
+                total = Integer.parseUnsignedInt(parser.getText());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Location of the array of results in a response, used to stream results
+     * from the response body. Should be consistent with
+     * {@link #getResults(JsonNode)}.
+     * 
+     * @return pointer to results array, or null if responses must be read
+     *         whole
+     */
+    protected JsonPointer getResultsPointer() {
+        return null;
+    }
+
     /**
      * Transform a response into a JSON document
      * 
@@ -181,9 +406,22 @@ public abstract class RestBasedSearch implements Search {
      * @param postQueries
      * @param stream
      */
-    @SuppressWarnings("unchecked")
     protected void consumeStream(Consumer<Map<String, Object>> consumer, QueryOutput fieldNames,
             List<Query> postQueries, Stream<JsonNode> stream) {
+        consumeStream(consumer, QueryOutputProjection.compile(fieldNames), postQueries, stream);
+    }
+
+    /**
+     * Filter and process a stream before passing to a consumer
+     * 
+     * @param consumer
+     * @param projection
+     * @param postQueries
+     * @param stream
+     */
+    @SuppressWarnings("unchecked")
+    protected void consumeStream(Consumer<Map<String, Object>> consumer, QueryOutputProjection projection,
+            List<Query> postQueries, Stream<JsonNode> stream) {
 
         // do the following:
         /// turn nodes into maps
@@ -192,7 +430,19 @@ public abstract class RestBasedSearch implements Search {
         /// pass each object to the consumer
         stream.map(v -> (Map<String, Object>) mapper.convertValue(v, Map.class))
                 .filter(v -> QueryUtils.filterResultsByQueries.test(v, postQueries))
-                .map(v -> QueryUtils.filterFields(v, fieldNames)).forEach(consumer);
+                .map(projection::filter).forEach(consumer);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.ensembl.genesearch.Search#getStats()
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(Search.super.getStats());
+        stats.put("http", httpClient.getStats());
+        return stats;
     }
 
     /* (non-Javadoc)
@@ -204,12 +454,7 @@ public abstract class RestBasedSearch implements Search {
         List<Map<String, Object>> results = new ArrayList<>();
         if (!url.isEmpty()) {
             log.info("Executing query");
-            JsonNode response = getResponse(url);
-            log.info("Processing query");
-            List<Query> postQueries = getPostQueries(queries);
-            processResponse(v -> {
-                results.add(v);
-            }, output, postQueries, response);
+            streamResponse(url, getPostQueries(queries), QueryOutputProjection.compile(output), results::add);
             log.info(results.size() + " results retrieved");
         }
         return new QueryResult(-1, offset, limit, getFieldInfo(output), results, Collections.emptyMap());
@@ -0,0 +1,396 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+/**
+ * Persistent cache of sequences retrieved from REST. Sequences do not change
+ * within a release, so the store lives in a directory named for the release
+ * and is reused across restarts.
+ * <p>
+ * Entries are appended to a single memory-mapped file as records of the form
+ * <code>length, key, metadata (JSON), sequences (raw bytes)</code>, so that
+ * sequences are decoded straight from a slice of the mapping rather than
+ * parsed as JSON. The index of keys to record offsets is rebuilt by scanning
+ * the file when the store is opened. When the file is nearly full, the most
+ * recently used entries are copied into a new file and the old one discarded.
+ * <p>
+ * A store is used by a single process at a time: an exclusive lock on the
+ * release directory is taken when it is opened and released on close, so a
+ * store cannot be warmed while a server has it open.
+ *
+ * @author dstaines
+ */
+public class SequenceStore implements Closeable {
+
+    public static final long DEFAULT_CAPACITY = 1L << 30;
+
+    private static final String SEQ = "seq";
+    private static final String FILE_PREFIX = "sequences.";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final String LOCK_FILE = "lock";
+    private static final char KEY_SEPARATOR = '\t';
+    /**
+     * fraction of the file which may be used before compacting
+     */
+    private static final double COMPACT_THRESHOLD = 0.9;
+    /**
+     * fraction of the file retained by compaction
+     */
+    private static final double COMPACT_TARGET = 0.5;
+
+    private static final Logger log = LoggerFactory.getLogger(SequenceStore.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final TypeReference<List<Map<String, Object>>> META_TYPE = new TypeReference<List<Map<String, Object>>>() {
+    };
+
+    /**
+     * @param parts
+     * @return key joining the supplied parts e.g. genome, stable ID and
+     *         sequence options
+     */
+    public static String key(String... parts) {
+        StringBuilder key = new StringBuilder();
+        for (String part : parts) {
+            if (key.length() > 0) {
+                key.append(KEY_SEPARATOR);
+            }
+            key.append(part);
+        }
+        return key.toString();
+    }
+
+    private static final class Entry {
+        private final int offset;
+        private final int length;
+        private volatile long lastAccess;
+
+        private Entry(int offset, int length, long lastAccess) {
+            this.offset = offset;
+            this.length = length;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * A single generation of the data file with its index
+     */
+    private static final class Segment {
+        private final int generation;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final Map<String, Entry> index = new ConcurrentHashMap<>();
+        private int position = 0;
+
+        private Segment(Path dir, int generation, int capacity) throws IOException {
+            this.generation = generation;
+            this.path = dir.resolve(FILE_PREFIX + generation + FILE_SUFFIX);
+            // the mapping remains valid once the file is closed
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+                    FileChannel channel = file.getChannel()) {
+                this.buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+
+        private ByteBuffer slice(int offset, int length) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset);
+            slice.limit(offset + length);
+            return slice.slice();
+        }
+    }
+
+    private final Path dir;
+    private final int capacity;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final AtomicLong clock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private volatile Segment segment;
+
+    /**
+     * @param baseDir
+     *            directory holding stores for all releases
+     * @param release
+     *            release the sequences belong to
+     * @param capacity
+     *            maximum size of the store in bytes (at most 2GB)
+     * @throws IOException
+     *             if the store could not be opened, including if it is open
+     *             in another process
+     */
+    public SequenceStore(Path baseDir, String release, long capacity) throws IOException {
+        this.dir = baseDir.resolve(release);
+        this.capacity = (int) Math.min(capacity, Integer.MAX_VALUE - 8);
+        Files.createDirectories(dir);
+        this.lockChannel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock l;
+        try {
+            l = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            l = null;
+        }
+        if (l == null) {
+            lockChannel.close();
+            throw new IOException("Sequence store " + dir + " is in use");
+        }
+        this.lock = l;
+        try {
+            int generation = 0;
+            List<Path> old = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    try {
+                        int g = Integer.parseInt(
+                                name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                        if (g > generation) {
+                            generation = g;
+                        }
+                        old.add(file);
+                    } catch (NumberFormatException e) {
+                        log.warn("Ignoring unexpected file " + file);
+                    }
+                }
+            }
+            this.segment = new Segment(dir, generation, this.capacity);
+            // remove files left by an interrupted compaction
+            for (Path file : old) {
+                if (!file.equals(segment.path)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            scan(segment);
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+        log.info("Opened sequence store " + segment.path + " with " + segment.index.size() + " entries");
+    }
+
+    /**
+     * Rebuild the index for a segment, stopping at the first incomplete record
+     */
+    private void scan(Segment s) {
+        ByteBuffer buffer = s.buffer.duplicate();
+        int pos = 0;
+        while (pos + 4 <= capacity) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + 4 + length > capacity) {
+                break;
+            }
+            int keyLength = buffer.getInt(pos + 4);
+            String key = StandardCharsets.UTF_8.decode(s.slice(pos + 8, keyLength)).toString();
+            s.index.put(key, new Entry(pos, length, clock.incrementAndGet()));
+            pos += 4 + length;
+        }
+        s.position = pos;
+    }
+
+    /**
+     * @param key
+     * @return sequences stored for key, or null if not found. New maps are
+     *         returned from each call.
+     * @throws IOException
+     */
+    public List<Map<String, Object>> get(String key) throws IOException {
+        Segment s = segment;
+        Entry entry = s.index.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastAccess = clock.incrementAndGet();
+        ByteBuffer record = s.slice(entry.offset + 4, entry.length);
+        record.position(4 + record.getInt(0));
+        int metaLength = record.getInt();
+        List<Map<String, Object>> sequences;
+        try (InputStream meta = new ByteBufferBackedInputStream(slice(record, metaLength))) {
+            sequences = mapper.readValue(meta, META_TYPE);
+        }
+        for (Map<String, Object> sequence : sequences) {
+            int seqLength = record.getInt();
+            if (seqLength >= 0) {
+                sequence.put(SEQ, readString(slice(record, seqLength)));
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * @param key
+     * @return true if sequences are stored for key
+     */
+    public boolean contains(String key) {
+        return segment.index.containsKey(key);
+    }
+
+    /**
+     * Store sequences for a key. Entries too large to fit in the store are
+     * ignored.
+     * 
+     * @param key
+     * @param sequences
+     * @throws IOException
+     */
+    public synchronized void put(String key, List<Map<String, Object>> sequences) throws IOException {
+        if (segment.index.containsKey(key)) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        List<Map<String, Object>> meta = new ArrayList<>(sequences.size());
+        List<byte[]> seqs = new ArrayList<>(sequences.size());
+        int length = 4 + keyBytes.length + 4;
+        for (Map<String, Object> sequence : sequences) {
+            Map<String, Object> m = new LinkedHashMap<>(sequence);
+            Object seq = m.remove(SEQ);
+            byte[] seqBytes = seq == null ? null : String.valueOf(seq).getBytes(StandardCharsets.ISO_8859_1);
+            length += 4 + (seqBytes == null ? 0 : seqBytes.length);
+            meta.add(m);
+            seqs.add(seqBytes);
+        }
+        byte[] metaBytes = mapper.writeValueAsBytes(meta);
+        length += metaBytes.length;
+        if (4L + length > capacity * COMPACT_TARGET) {
+            log.debug("Sequences for " + key + " too large to store");
+            return;
+        }
+        if (segment.position + 4L + length > capacity * COMPACT_THRESHOLD) {
+            compact();
+        }
+        Segment s = segment;
+        ByteBuffer record = s.slice(s.position + 4, length);
+        record.putInt(keyBytes.length).put(keyBytes).putInt(metaBytes.length).put(metaBytes);
+        for (byte[] seqBytes : seqs) {
+            if (seqBytes == null) {
+                record.putInt(-1);
+            } else {
+                record.putInt(seqBytes.length).put(seqBytes);
+            }
+        }
+        // write the length last so a partial record is ignored when scanned
+        s.buffer.putInt(s.position, length);
+        s.index.put(key, new Entry(s.position, length, clock.incrementAndGet()));
+        s.position += 4 + length;
+    }
+
+    /**
+     * Copy the most recently used entries into a new file, up to
+     * {@link #COMPACT_TARGET} of the capacity, and discard the old file
+     * 
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        Segment old = segment;
+        Segment s = new Segment(dir, old.generation + 1, capacity);
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(old.index.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, Entry> e) -> e.getValue().lastAccess).reversed());
+        long target = (long) (capacity * COMPACT_TARGET);
+        for (Map.Entry<String, Entry> e : entries) {
+            Entry entry = e.getValue();
+            if (s.position + 4L + entry.length > target) {
+                break;
+            }
+            ByteBuffer dest = s.buffer.duplicate();
+            dest.position(s.position);
+            dest.put(old.slice(entry.offset, 4 + entry.length));
+            s.index.put(e.getKey(), new Entry(s.position, entry.length, entry.lastAccess));
+            s.position += 4 + entry.length;
+        }
+        segment = s;
+        compactions.increment();
+        log.info("Compacted sequence store from " + old.index.size() + " to " + s.index.size() + " entries");
+        // readers may still hold the old mapping, which remains valid
+        Files.deleteIfExists(old.path);
+    }
+
+    /**
+     * @return number of entries, bytes used and hit/miss counts
+     */
+    public Map<String, Object> getStats() {
+        Segment s = segment;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", s.index.size());
+        stats.put("bytes", s.position);
+        stats.put("capacity", capacity);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("compactions", compactions.sum());
+        return stats;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            segment.buffer.force();
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+
+}
@@ -28,6 +28,8 @@ import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrQuery.SortClause;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.LukeRequest;
+import org.apache.solr.client.solrj.response.LukeResponse;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.params.CursorMarkParams;
@@ -207,6 +209,22 @@ public class SolrSearch implements Search {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.ensembl.genesearch.Search#count(java.util.List)
+	 */
+	@Override
+	public long count(List<Query> queries) {
+		SolrQuery q = SolrQueryBuilder.build(queries);
+		q.set(SolrQueryBuilder.ROWS_PARAM, 0);
+		try {
+			return solr.query(q).getResults().getNumFound();
+		} catch (SolrServerException | IOException e) {
+			throw new UnsupportedOperationException("Could not execute query", e);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -240,4 +258,24 @@ public class SolrSearch implements Search {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.ensembl.genesearch.Search#getDataVersion()
+	 */
+	@Override
+	public String getDataVersion() {
+		try {
+			// index version is incremented on every commit
+			LukeRequest request = new LukeRequest();
+			request.setNumTerms(0);
+			LukeResponse response = request.process(solr);
+			Object version = response.getIndexInfo().get("version");
+			return version == null ? null : String.valueOf(version);
+		} catch (SolrServerException | IOException | RuntimeException e) {
+			log.warn("Could not retrieve Solr index version", e);
+			return null;
+		}
+	}
+
 }
@@ -0,0 +1,371 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.output;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.ensembl.genesearch.QueryOutput;
+import org.ensembl.genesearch.utils.QueryUtils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Immutable compiled form of a {@link QueryOutput}, used to strip fields from
+ * results that were not requested. The output is compiled once into a trie
+ * keyed on path segments, so each row can be projected in a single traversal
+ * with one hash lookup per key and no path strings built along the way.
+ *
+ * Projection follows the rules previously applied by
+ * {@link QueryUtils#filterFields(Map, QueryOutput)}:
+ * <ul>
+ * <li>keys not present in the output are removed</li>
+ * <li>empty lists are removed</li>
+ * <li>maps (and lists of maps) are only filtered further if the output
+ * specifies children for them, otherwise they are kept whole</li>
+ * <li>maps (and lists of maps) left empty by filtering are removed</li>
+ * <li>a top level wildcard disables filtering altogether</li>
+ * </ul>
+ *
+ * Paths are matched on whole segments so "transcripts" does not match a
+ * requested "transcripts_count".
+ *
+ * @author dstaines
+ *
+ */
+public class QueryOutputProjection {
+
+    /**
+     * Projection that retains everything
+     */
+    public static final QueryOutputProjection ALL = new QueryOutputProjection(null);
+
+    private static final char PATH_SEPARATOR = '.';
+
+    /**
+     * Node in the projection trie, corresponding to a single path segment
+     */
+    private static final class Node {
+        private final Map<String, Node> children;
+        /**
+         * true if values found at this node should be filtered further, false
+         * if they should be retained whole
+         */
+        private final boolean descend;
+
+        private Node(Map<String, Node> children, boolean descend) {
+            this.children = children;
+            this.descend = descend;
+        }
+
+        private Node getChild(String key) {
+            return children.get(key);
+        }
+    }
+
+    /**
+     * Mutable node used whilst compiling a {@link QueryOutput}
+     */
+    private static final class NodeBuilder {
+        private final Map<String, NodeBuilder> children = new HashMap<>();
+        private boolean subField = false;
+
+        private NodeBuilder getOrAdd(String key) {
+            return children.computeIfAbsent(key, k -> new NodeBuilder());
+        }
+
+        private NodeBuilder addPath(String path) {
+            NodeBuilder node = this;
+            int start = 0;
+            int loc;
+            while ((loc = path.indexOf(PATH_SEPARATOR, start)) != -1) {
+                node = node.getOrAdd(path.substring(start, loc));
+                start = loc + 1;
+            }
+            return node.getOrAdd(path.substring(start));
+        }
+
+        private void addOutput(QueryOutput output) {
+            for (String field : output.getFields()) {
+                addPath(field);
+            }
+            for (Entry<String, QueryOutput> e : output.getSubFields().entrySet()) {
+                NodeBuilder node = addPath(e.getKey());
+                node.subField = true;
+                node.addOutput(e.getValue());
+            }
+        }
+
+        private Node build() {
+            Map<String, Node> nodes = new HashMap<>(children.size() * 2);
+            for (Entry<String, NodeBuilder> e : children.entrySet()) {
+                nodes.put(e.getKey(), e.getValue().build());
+            }
+            return new Node(Collections.unmodifiableMap(nodes), subField || !children.isEmpty());
+        }
+    }
+
+    /**
+     * Compile the supplied output into a projection
+     *
+     * @param output
+     *            output to compile - null or a top level wildcard results in
+     *            a projection that retains everything
+     * @return compiled projection
+     */
+    public static QueryOutputProjection compile(QueryOutput output) {
+        if (output == null || output.isWild()) {
+            return ALL;
+        }
+        NodeBuilder root = new NodeBuilder();
+        root.addOutput(output);
+        return new QueryOutputProjection(root.build());
+    }
+
+    private final Node root;
+
+    private QueryOutputProjection(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @return true if this projection retains all fields
+     */
+    public boolean isAll() {
+        return root == null;
+    }
+
+    /**
+     * Strip all fields from the supplied object that are not included in this
+     * projection. The object is modified in place.
+     *
+     * @param obj
+     * @return the supplied object
+     */
+    public Map<String, Object> filter(Map<String, Object> obj) {
+        if (root != null) {
+            filter(obj, root);
+        }
+        return obj;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void filter(Map<String, Object> obj, Node node) {
+        Iterator<Entry<String, Object>> i = obj.entrySet().iterator();
+        while (i.hasNext()) {
+            Entry<String, Object> e = i.next();
+            Node child = node.getChild(e.getKey());
+            Object value = e.getValue();
+            if (child == null || (value instanceof List && ((List<?>) value).isEmpty())) {
+                i.remove();
+            } else if (child.descend) {
+                if (value instanceof Map) {
+                    Map<String, Object> mo = (Map<String, Object>) value;
+                    filter(mo, child);
+                    if (mo.isEmpty()) {
+                        i.remove();
+                    }
+                } else if (value instanceof List && ((List<?>) value).get(0) instanceof Map) {
+                    Iterator<?> li = ((List<?>) value).iterator();
+                    while (li.hasNext()) {
+                        Object lo = li.next();
+                        if (lo instanceof Map) {
+                            Map<String, Object> mo = (Map<String, Object>) lo;
+                            filter(mo, child);
+                            if (mo.isEmpty()) {
+                                li.remove();
+                            }
+                        }
+                    }
+                    if (((List<?>) value).isEmpty()) {
+                        i.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the fields of the supplied object that are included in this
+     * projection into a new object, leaving the original untouched. Maps and
+     * lists are only copied where they are filtered further, and values
+     * retained whole are shared with the original, so this is suitable for
+     * projecting cached objects that are never modified.
+     *
+     * @param obj
+     * @return new projected object
+     */
+    public Map<String, Object> copy(Map<String, Object> obj) {
+        return root == null ? new LinkedHashMap<>(obj) : copy(obj, root);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> copy(Map<String, Object> obj, Node node) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        for (Entry<String, Object> e : obj.entrySet()) {
+            Node child = node.getChild(e.getKey());
+            Object value = e.getValue();
+            if (child == null || (value instanceof List && ((List<?>) value).isEmpty())) {
+                continue;
+            }
+            if (child.descend) {
+                if (value instanceof Map) {
+                    value = copy((Map<String, Object>) value, child);
+                    if (((Map<?, ?>) value).isEmpty()) {
+                        continue;
+                    }
+                } else if (value instanceof List && ((List<?>) value).get(0) instanceof Map) {
+                    List<Object> list = new ArrayList<>(((List<?>) value).size());
+                    for (Object lo : (List<?>) value) {
+                        if (lo instanceof Map) {
+                            Map<String, Object> mo = copy((Map<String, Object>) lo, child);
+                            if (!mo.isEmpty()) {
+                                list.add(mo);
+                            }
+                        } else {
+                            list.add(lo);
+                        }
+                    }
+                    if (list.isEmpty()) {
+                        continue;
+                    }
+                    value = list;
+                }
+            }
+            copy.put(e.getKey(), value);
+        }
+        return copy;
+    }
+
+    /**
+     * Read a single JSON object from the supplied parser, retaining only the
+     * fields included in this projection. Values that are not required are
+     * skipped in the token stream without being materialised.
+     *
+     * @param parser
+     *            parser positioned on the start of an object. If the parser
+     *            has no current token it is advanced first.
+     * @return projected object, or null if the parser is not positioned on an
+     *         object. After reading, the parser is positioned on the end of
+     *         the object.
+     * @throws IOException
+     */
+    public Map<String, Object> read(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            return null;
+        }
+        return readObject(parser, root);
+    }
+
+    /**
+     * @param parser
+     * @param node
+     *            node to project with, or null to retain everything
+     * @return projected object
+     * @throws IOException
+     */
+    private static Map<String, Object> readObject(JsonParser parser, Node node) throws IOException {
+        Map<String, Object> obj = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (node == null) {
+                obj.put(key, readValue(parser, token));
+                continue;
+            }
+            Node child = node.getChild(key);
+            if (child == null) {
+                parser.skipChildren();
+                continue;
+            }
+            Object value;
+            if (child.descend && token == JsonToken.START_OBJECT) {
+                value = readObject(parser, child);
+                if (((Map<?, ?>) value).isEmpty()) {
+                    continue;
+                }
+            } else if (child.descend && token == JsonToken.START_ARRAY) {
+                value = readArray(parser, child);
+            } else {
+                value = readValue(parser, token);
+            }
+            if (value instanceof List && ((List<?>) value).isEmpty()) {
+                continue;
+            }
+            obj.put(key, value);
+        }
+        return obj;
+    }
+
+    /**
+     * @param parser
+     * @param node
+     *            node to project objects in the array with, or null to retain
+     *            everything
+     * @return list of values, omitting objects left empty by projection
+     * @throws IOException
+     */
+    private static List<Object> readArray(JsonParser parser, Node node) throws IOException {
+        List<Object> list = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (node != null && token == JsonToken.START_OBJECT) {
+                Map<String, Object> obj = readObject(parser, node);
+                if (!obj.isEmpty()) {
+                    list.add(obj);
+                }
+            } else {
+                list.add(readValue(parser, token));
+            }
+        }
+        return list;
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+        case START_OBJECT:
+            return readObject(parser, null);
+        case START_ARRAY:
+            return readArray(parser, null);
+        case VALUE_STRING:
+            return parser.getText();
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+            return parser.getNumberValue();
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_EMBEDDED_OBJECT:
+            return parser.getEmbeddedObject();
+        case VALUE_NULL:
+            return null;
+        default:
+            throw new IllegalArgumentException("Unexpected token " + token + " at " + parser.getCurrentLocation());
+        }
+    }
+
+}
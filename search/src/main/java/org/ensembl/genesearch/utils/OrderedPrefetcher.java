@@ -0,0 +1,115 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import org.ensembl.genesearch.SearchCancelledException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Utility for running a sequence of tasks (such as page requests)
+ * concurrently while passing their results to a consumer in the original
+ * order. Besides the result being consumed, at most
+ * <code>parallelism</code> tasks are in flight or awaiting consumption at any
+ * time, so the reorder buffer is bounded and a slow consumer holds back
+ * further requests.
+ *
+ * @author dstaines
+ */
+public class OrderedPrefetcher {
+
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("prefetch-%d").setDaemon(true).build());
+
+    private OrderedPrefetcher() {
+    }
+
+    /**
+     * Run tasks using a shared daemon executor
+     *
+     * @see #forEachOrdered(Iterator, int, ExecutorService, Consumer)
+     */
+    public static <T> void forEachOrdered(Iterator<Callable<T>> tasks, int parallelism, Consumer<T> consumer) {
+        forEachOrdered(tasks, parallelism, DEFAULT_EXECUTOR, consumer);
+    }
+
+    /**
+     * Run tasks with up to <code>parallelism</code> at a time, passing results
+     * to the consumer in task order on the calling thread. If a task or the
+     * consumer fails, outstanding tasks are cancelled and the exception is
+     * rethrown.
+     *
+     * @param tasks       tasks in the order their results are required
+     * @param parallelism maximum number of tasks running or buffered
+     * @param executor    executor to run tasks
+     * @param consumer    destination for results
+     */
+    public static <T> void forEachOrdered(Iterator<Callable<T>> tasks, int parallelism, ExecutorService executor,
+            Consumer<T> consumer) {
+        Deque<Future<T>> window = new ArrayDeque<>(Math.max(1, parallelism));
+        try {
+            while (tasks.hasNext() && window.size() < Math.max(1, parallelism)) {
+                window.add(executor.submit(tasks.next()));
+            }
+            while (!window.isEmpty()) {
+                T result = await(window.poll());
+                // refill before consuming so the next task overlaps with it
+                if (tasks.hasNext()) {
+                    window.add(executor.submit(tasks.next()));
+                }
+                consumer.accept(result);
+            }
+        } finally {
+            for (Future<T> future : window) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Wait for a task to complete, rethrowing any unchecked exception it threw
+     * and translating interruption into cancellation
+     *
+     * @param future
+     * @return result of the task
+     */
+    public static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchCancelledException("Interrupted while waiting for results");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+}
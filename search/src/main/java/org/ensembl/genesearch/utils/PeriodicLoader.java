@@ -0,0 +1,162 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.utils;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.ensembl.genesearch.SearchCancelledException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Holder for a value that is loaded in the background on construction and
+ * reloaded periodically, such as an in-memory snapshot of a remote resource.
+ * Callers asking for the value before the first load has finished wait for
+ * it, and are released as soon as that load succeeds or fails. If no value
+ * has been loaded yet (because the load failed or is taking too long), the
+ * caller retries the load itself so a failed startup does not leave requests
+ * waiting for the next scheduled refresh. A failed reload keeps the previous
+ * value.
+ *
+ * @author dstaines
+ */
+public class PeriodicLoader<T> implements Closeable {
+
+    private static final long LOAD_TIMEOUT = 60;
+    private static final ScheduledExecutorService REFRESHER = Executors.newScheduledThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("loader-%d").setDaemon(true).build());
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final String name;
+    private final Supplier<T> loader;
+    private final CountDownLatch attempted = new CountDownLatch(1);
+    private final ScheduledFuture<?> task;
+    private volatile T value;
+    private volatile long loadedAt = 0;
+    private volatile RuntimeException lastError;
+
+    /**
+     * Create a loader and start the initial load in the background
+     *
+     * @param name    description of the value for logging
+     * @param loader  source of new values
+     * @param refresh interval between loads in seconds
+     */
+    public PeriodicLoader(String name, Supplier<T> loader, long refresh) {
+        this.name = name;
+        this.loader = loader;
+        this.task = REFRESHER.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                log.warn("Could not load " + name, e);
+            }
+        }, 0, refresh, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Load a new value, replacing the current one if successful
+     *
+     * @return new value
+     */
+    public T refresh() {
+        try {
+            T loaded = loader.get();
+            value = loaded;
+            loadedAt = System.currentTimeMillis();
+            lastError = null;
+            return loaded;
+        } catch (RuntimeException e) {
+            lastError = e;
+            throw e;
+        } finally {
+            attempted.countDown();
+        }
+    }
+
+    /**
+     * @return current value, waiting for the initial load or loading it here
+     *         if needed
+     */
+    public T get() {
+        T v = value;
+        if (v == null) {
+            try {
+                if (!attempted.await(LOAD_TIMEOUT, TimeUnit.SECONDS)) {
+                    log.warn("Timed out waiting for " + name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SearchCancelledException("Interrupted while waiting for " + name);
+            }
+            v = value;
+            if (v == null) {
+                v = retry();
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Load the value on the calling thread, unless another caller already
+     * has while this one was waiting
+     */
+    private synchronized T retry() {
+        T v = value;
+        if (v == null) {
+            RuntimeException e = lastError;
+            log.info("Retrying load of " + name + (e == null ? "" : " after failure: " + e.getMessage()));
+            v = refresh();
+        }
+        return v;
+    }
+
+    /**
+     * @return current value without waiting, or null if not yet loaded
+     */
+    public T peek() {
+        return value;
+    }
+
+    /**
+     * @return time in milliseconds of the last successful load, or 0 if none
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return failure from the most recent load, or null if it succeeded
+     */
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stop any further periodic loads. The current value remains available.
+     */
+    @Override
+    public void close() {
+        task.cancel(false);
+    }
+
+}
@@ -25,7 +25,6 @@ import static org.ensembl.genesearch.Query.SINGLE_NUMBER;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -39,6 +38,7 @@ import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.Search;
 import org.ensembl.genesearch.info.FieldType;
+import org.ensembl.genesearch.output.QueryOutputProjection;
 
 /**
  * Utilities for performing server side query operations on {@link Query}
@@ -53,68 +53,26 @@ public class QueryUtils {
      * Utility to strip out all fields from a nested map that are not present in
      * the supplied output object. Typically used to run post-retrival filtering
      * in {@link Search} implementations where the backing datastore does not
-     * support field selection
+     * support field selection. Where the same output is applied to many
+     * objects, compile it once with {@link QueryOutput#compile()} and use
+     * {@link #filterFields(Map, QueryOutputProjection)} instead.
      * 
      * @param obj
      * @param output
      */
     public static Map<String, Object> filterFields(Map<String, Object> obj, QueryOutput output) {
-        return filterFields(obj, output, null);
+        return QueryOutputProjection.compile(output).filter(obj);
     }
 
-    @SuppressWarnings("unchecked")
-    protected static Map<String, Object> filterFields(Map<String, Object> obj, QueryOutput output, String path) {
-    	    // if no output, or output is wild, don't filter.
-    	    // wild filtering only applies to top level
-        if (output == null || (StringUtils.isEmpty(path) && output.isWild())) {
-            return obj;
-        }
-        Iterator<String> i = obj.keySet().iterator();
-        while (i.hasNext()) {
-            String key = i.next();
-            String keyPath = key;
-            if (!StringUtils.isEmpty(path)) {
-                keyPath = path + '.' + key;
-            }
-            Object so = obj.get(key);
-            if (so != null && Map.class.isAssignableFrom(so.getClass()) && output.containsPathChildren(keyPath)) {
-                Map<String, Object> mo = (Map<String, Object>) so;
-                filterFields(mo, output, keyPath);
-                if (mo.isEmpty()) {
-                    i.remove();
-                }
-            } else if (so != null && List.class.isAssignableFrom(so.getClass())) {
-
-                List<?> lo = (List<?>) so;
-                if (lo.isEmpty()) {
-                    i.remove();
-                } else if (Map.class.isAssignableFrom(lo.get(0).getClass())) {
-                    if (output.containsPathChildren(keyPath)) {
-                        Iterator<Map<String, Object>> li = ((List<Map<String, Object>>) lo).iterator();
-                        while (li.hasNext()) {
-                            Map<String, Object> mo = li.next();
-                            filterFields(mo, output, keyPath);
-                            if (mo.isEmpty()) {
-                                li.remove();
-                            }
-                        }
-                        if (lo.isEmpty()) {
-                            i.remove();
-                        }
-                    } else if (!output.containsPath(keyPath)) {
-                        i.remove();
-                    }
-                } else {
-                    if (!output.containsPath(keyPath)) {
-                        i.remove();
-                    }
-                }
-
-            } else if (!output.containsPath(keyPath)) {
-                i.remove();
-            }
-        }
-        return obj;
+    /**
+     * Utility to strip out all fields from a nested map that are not present in
+     * the supplied compiled output
+     * 
+     * @param obj
+     * @param projection
+     */
+    public static Map<String, Object> filterFields(Map<String, Object> obj, QueryOutputProjection projection) {
+        return projection.filter(obj);
     }
 
     /**
@@ -0,0 +1,94 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SearchContext}
+ *
+ * @author dstaines
+ *
+ */
+public class SearchContextTest {
+
+    @Test
+    public void testEmpty() {
+        assertFalse("No session outside context", SearchContext.current().getSessionId().isPresent());
+        try (SearchContext context = SearchContext.open("")) {
+            assertFalse("Blank session ignored", SearchContext.current().getSessionId().isPresent());
+        }
+    }
+
+    @Test
+    public void testNested() {
+        try (SearchContext outer = SearchContext.open("outer")) {
+            assertEquals("Outer session", "outer", SearchContext.current().getSessionId().get());
+            try (SearchContext inner = SearchContext.open("inner")) {
+                assertEquals("Inner session", "inner", SearchContext.current().getSessionId().get());
+            }
+            assertEquals("Outer session restored", "outer", SearchContext.current().getSessionId().get());
+        }
+        assertFalse("Context cleared", SearchContext.current().getSessionId().isPresent());
+    }
+
+    @Test
+    public void testCancel() {
+        AtomicInteger released = new AtomicInteger();
+        try (SearchContext context = SearchContext.open(null)) {
+            SearchContext.current().checkCancelled();
+            try (SearchContext.Registration r = context.onCancel(released::incrementAndGet)) {
+                context.cancel("test");
+                context.cancel("again");
+            }
+            assertEquals("Action run once", 1, released.get());
+            assertTrue("Cancelled", SearchContext.current().isCancelled());
+            try {
+                SearchContext.current().checkCancelled();
+                fail("Cancelled context should throw");
+            } catch (SearchCancelledException e) {
+                assertTrue("Reason given", e.getMessage().contains("test"));
+            }
+            context.onCancel(released::incrementAndGet);
+            assertEquals("Action run immediately once cancelled", 2, released.get());
+        }
+        SearchContext.current().cancel("ignored");
+        assertFalse("Empty context not cancelled", SearchContext.current().isCancelled());
+    }
+
+    @Test
+    public void testCancelAfter() throws InterruptedException {
+        try (SearchContext context = SearchContext.open(null).cancelAfter(50, TimeUnit.MILLISECONDS)) {
+            long end = System.currentTimeMillis() + 5000;
+            while (!context.isCancelled() && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertTrue("Cancelled after timeout", context.isCancelled());
+        }
+        try (SearchContext context = SearchContext.open(null).cancelAfter(50, TimeUnit.MILLISECONDS)) {
+            context.close();
+            Thread.sleep(200);
+            assertFalse("Timeout cancelled on close", context.isCancelled());
+        }
+    }
+
+}
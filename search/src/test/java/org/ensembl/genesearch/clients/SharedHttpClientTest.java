@@ -0,0 +1,64 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.clients;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.junit.WireMockClassRule;
+
+public class SharedHttpClientTest {
+
+    @ClassRule
+    public static WireMockClassRule wireMockRule = new WireMockClassRule(WireMockConfiguration.options().dynamicPort());
+
+    private static SharedHttpClient client;
+
+    @BeforeClass
+    public static void setUp() {
+        client = new SharedHttpClient(10, 2, 1000, 5000, 1000, 30000);
+        wireMockRule.stubFor(get(urlEqualTo("/ping")).willReturn(aResponse().withStatus(200).withBody("pong")));
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        client.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testReuse() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Body returned", "pong",
+                    client.getRestTemplate().getForObject(wireMockRule.url("/ping"), String.class));
+        }
+        Map<String, Object> stats = client.getStats();
+        assertEquals("No connections leased", 0, stats.get("leased"));
+        assertEquals("Single connection kept alive", 1, stats.get("available"));
+        assertEquals("Per host limit", 2, ((Map<String, Map<String, Object>>) stats.get("routes")).values()
+                .iterator().next().get("max"));
+    }
+
+}
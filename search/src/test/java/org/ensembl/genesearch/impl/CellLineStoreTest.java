@@ -0,0 +1,93 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.ensembl.genesearch.Query;
+import org.ensembl.genesearch.info.FieldType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CellLineStore}
+ * 
+ * @author dstaines
+ *
+ */
+public class CellLineStoreTest {
+
+    private static CellLineStore store;
+
+    @BeforeClass
+    public static void setUp() {
+        List<Map<String, Object>> cellLines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> donor = new HashMap<>();
+            donor.put("gender", i % 2 == 0 ? "female" : "male");
+            Map<String, Object> cellLine = new HashMap<>();
+            cellLine.put("name", "CL" + i);
+            cellLine.put("donor", donor);
+            cellLine.put("primary_cell_type", i < 5 ? "fibroblast" : "blood");
+            cellLines.add(cellLine);
+        }
+        store = new CellLineStore(cellLines, "name");
+    }
+
+    private static List<Object> names(List<Map<String, Object>> cellLines) {
+        return cellLines.stream().map(c -> c.get("name")).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testGetCellLine() {
+        assertEquals("Cell line found by name", "CL3", store.getCellLine("CL3").get("name"));
+        assertNull("Unknown cell line", store.getCellLine("CL99"));
+    }
+
+    @Test
+    public void testFindTerms() {
+        assertEquals("Single term", Arrays.asList("CL0", "CL2", "CL4", "CL6", "CL8"),
+                names(store.find(Arrays.asList(new Query(FieldType.TERM, "donor.gender", "female")))));
+        assertEquals("Multiple values", Arrays.asList("CL1", "CL3", "CL7"),
+                names(store.find(Arrays.asList(new Query(FieldType.TERM, "name", "CL7", "CL3", "CL1", "CL99")))));
+        assertEquals("Intersection", Arrays.asList("CL5", "CL7", "CL9"),
+                names(store.find(Arrays.asList(new Query(FieldType.TERM, "donor.gender", "male"),
+                        new Query(FieldType.TERM, "primary_cell_type", "blood")))));
+        assertTrue("No match", store.find(Arrays.asList(new Query(FieldType.TERM, "donor.gender", "female"),
+                new Query(FieldType.TERM, "name", "CL1"))).isEmpty());
+    }
+
+    @Test
+    public void testFindAll() {
+        assertEquals("All cell lines", 10, store.find(Collections.emptyList()).size());
+        assertEquals("Text query scanned", 10,
+                store.find(Arrays.asList(new Query(FieldType.TEXT, "name", "CL"))).size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        store.getCellLine("CL0").put("name", "changed");
+    }
+
+}
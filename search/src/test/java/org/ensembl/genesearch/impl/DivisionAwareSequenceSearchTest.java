@@ -25,7 +25,9 @@ import org.ensembl.genesearch.info.DataTypeInfo;
 import org.ensembl.genesearch.info.FieldType;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -46,6 +48,41 @@ public class DivisionAwareSequenceSearchTest {
     
 	static DataTypeInfo sequenceInfo = DataTypeInfo.fromResource("/datatypes/sequences_datatype_info.json");
 	private static DivisionAwareSequenceSearch search;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Stub recording the IDs posted in each batch and returning a dummy
+	 * sequence for each
+	 */
+	private static class RecordingSequenceSearch extends EnsemblRestSequenceSearch {
+
+		private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+		private RecordingSequenceSearch() {
+			super("http://localhost", sequenceInfo);
+		}
+
+		@Override
+		protected List<Map<String, Object>> postBatch(String url, List<String> ids, Throttle throttle) {
+			batches.add(ids);
+			List<Map<String, Object>> sequences = new ArrayList<>();
+			for (String id : ids) {
+				Map<String, Object> sequence = new HashMap<>();
+				sequence.put("id", id);
+				sequence.put("seq", "ACGT");
+				sequences.add(sequence);
+			}
+			return sequences;
+		}
+
+	}
+
+	private static Query genomeQuery(String genome, String... ids) {
+		return new Query(FieldType.NESTED, genome, false, new Query(FieldType.TERM, "id", false, ids),
+				new Query(FieldType.TERM, "species", false, genome));
+	}
     
     @BeforeClass
     public static void setUp() {
@@ -137,6 +174,45 @@ public class DivisionAwareSequenceSearchTest {
 		assertTrue("Checking sequence present", !StringUtils.isEmpty((String) seqs.get(0).get("seq")));
 	}
 
+	@Test
+	public void testMixedDivisionBatches() {
+		RecordingSequenceSearch eSearch = new RecordingSequenceSearch();
+		RecordingSequenceSearch egSearch = new RecordingSequenceSearch();
+		DivisionAwareSequenceSearch mixed = new DivisionAwareSequenceSearch(null, eSearch, egSearch);
+		mixed.isEnsembl = Collections.singleton("homo_sapiens");
+		List<Query> queries = Arrays.asList(genomeQuery("homo_sapiens", "ENSG00000139618"),
+				genomeQuery("arabidopsis_thaliana", "AT3G52430"), genomeQuery("oryza_sativa", "Os01g0100100"));
+		SearchResult result = mixed.fetch(queries, QueryOutput.build(Collections.emptyList()));
+		assertEquals("All sequences found", 3, result.getResults().size());
+		assertEquals("Ensembl genome sent to Ensembl", Arrays.asList(Arrays.asList("ENSG00000139618")),
+				eSearch.batches);
+		assertEquals("EG genomes merged into one batch", Arrays.asList(Arrays.asList("AT3G52430", "Os01g0100100")),
+				egSearch.batches);
+	}
+
+	@Test
+	public void testSameIdInTwoGenomes() throws IOException {
+		RecordingSequenceSearch egSearch = new RecordingSequenceSearch();
+		DivisionAwareSequenceSearch shared = new DivisionAwareSequenceSearch(null, new RecordingSequenceSearch(),
+				egSearch);
+		shared.isEnsembl = Collections.emptySet();
+		try (SequenceStore store = new SequenceStore(folder.getRoot().toPath(), "1", 1 << 20)) {
+			shared.setCache(store);
+			SearchResult result = shared.fetch(
+					Arrays.asList(genomeQuery("brassica_rapa", "GENE1"), genomeQuery("brassica_oleracea", "GENE1")),
+					QueryOutput.build(Collections.emptyList()));
+			assertEquals("Shared ID returned once", 1, result.getResults().size());
+			assertEquals("Shared ID posted once", Arrays.asList(Arrays.asList("GENE1")), egSearch.batches);
+			// the sequence is now cached for both genomes
+			result = shared.fetch(
+					Arrays.asList(genomeQuery("brassica_oleracea", "GENE1"), genomeQuery("brassica_napus", "GENE2")),
+					QueryOutput.build(Collections.emptyList()));
+			assertEquals("Cached and new sequences returned", 2, result.getResults().size());
+			assertEquals("Only uncached ID posted", Arrays.asList(Arrays.asList("GENE1"), Arrays.asList("GENE2")),
+					egSearch.batches);
+		}
+	}
+
 	private List<String> getIds(String name) throws IOException {
 		return IOUtils.readLines(this.getClass().getResourceAsStream(name), Charset.forName("UTF-8"));
 	}
@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -405,6 +406,12 @@ public class ESGeneSearchBuilderTest {
         }
     }
 
+    @Test
+    public void testCanonicalFacets() {
+        List<String> facets = ESSearchBuilder.canonicalFacets(Arrays.asList("genome", "biotype", "", "genome"));
+        assertEquals("Facets deduplicated and sorted", Arrays.asList("biotype", "genome"), facets);
+    }
+
     private static void assertObjCorrect(String message, String expected, Object obj) {
         String actual = obj.toString().replaceAll("\\s+", "");
         expected = expected.replaceAll("\\s+", "");
@@ -67,6 +67,18 @@ public class ESGeneSearchTest extends AbstractESTestCase {
         assertEquals("Number of genes", 598, ids.size());
     }
 
+    @Test
+    public void countGenome() {
+        log.info("Counting all genes from genome");
+        List<Query> queries = Collections
+                .singletonList(new Query(FieldType.TERM, "genome", "nanoarchaeum_equitans_kin4_m"));
+        assertEquals("Number of genes", 598, search.count(queries));
+        assertTrue("Genes exist", search.exists(queries));
+        List<Query> noQueries = Collections.singletonList(new Query(FieldType.TERM, "genome", "no_such_genome"));
+        assertEquals("No genes", 0, search.count(noQueries));
+        assertFalse("Genes do not exist", search.exists(noQueries));
+    }
+
     @Test
     public void fetchHomologues() {
         String genomeName = "escherichia_coli_str_k_12_substr_mg1655";
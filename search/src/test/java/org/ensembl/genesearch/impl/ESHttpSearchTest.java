@@ -0,0 +1,71 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.ensembl.genesearch.impl.ESHttpSearch.Format;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for decoding responses in {@link ESHttpSearch}
+ *
+ * @author dstaines
+ *
+ */
+public class ESHttpSearchTest {
+
+    private static final String PAGE = "{\"_scroll_id\":\"abc\",\"hits\":{\"total\":2,\"hits\":["
+            + "{\"_id\":\"G1\",\"_score\":1.0,\"_source\":{\"name\":\"xyz\",\"transcripts\":[{\"id\":\"T1\"}]}},"
+            + "{\"_id\":\"G2\",\"_source\":{\"id\":\"G2\",\"name\":\"abc\"}}]}}";
+
+    @Test
+    public void testReadPage() throws IOException {
+        Map<?, ?> page = new ObjectMapper().readValue(PAGE, Map.class);
+        for (Format format : Format.values()) {
+            byte[] bytes = new ObjectMapper(format.getFactory()).writeValueAsBytes(page);
+            List<Map<String, Object>> hits = new ArrayList<>();
+            try (JsonParser parser = format.getFactory().createParser(bytes)) {
+                ESHttpSearch.Page p = ESHttpSearch.readPage(hits::add, parser);
+                assertEquals(format + " scroll ID", "abc", p.scrollId);
+                assertEquals(format + " hit count", 2, p.hits);
+            }
+            assertEquals(format + " hits", 2, hits.size());
+            assertEquals(format + " ID added", "G1", hits.get(0).get("id"));
+            assertEquals(format + " name", "xyz", hits.get(0).get("name"));
+            assertEquals(format + " transcripts", 1, ((List<?>) hits.get(0).get("transcripts")).size());
+            assertNull(format + " score not included", hits.get(0).get("_score"));
+            assertEquals(format + " second hit", "abc", hits.get(1).get("name"));
+        }
+    }
+
+    @Test
+    public void testReadEmptyPage() throws IOException {
+        try (JsonParser parser = Format.JSON.getFactory().createParser("{\"_scroll_id\":\"abc\"}")) {
+            ESHttpSearch.Page p = ESHttpSearch.readPage(h -> {
+            }, parser);
+            assertEquals("No hits", 0, p.hits);
+        }
+    }
+
+}
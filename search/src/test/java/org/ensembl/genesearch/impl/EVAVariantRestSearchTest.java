@@ -20,6 +20,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
+import org.ensembl.genesearch.SearchCancelledException;
+import org.ensembl.genesearch.SearchContext;
 import org.ensembl.genesearch.SearchResult;
 import org.ensembl.genesearch.info.DataTypeInfo;
 import org.ensembl.genesearch.info.FieldType;
@@ -34,6 +36,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(com.carrotsearch.randomizedtesting.RandomizedRunner.class)
 @ThreadLeakScope(ThreadLeakScope.Scope.NONE)
@@ -122,6 +125,25 @@ public class EVAVariantRestSearchTest extends AbstractESTestCase {
         }
     }
 
+    @Test
+    public void testFetchCancelled() {
+        search.setBatchSize(10);
+        AtomicInteger found = new AtomicInteger();
+        try (SearchContext context = SearchContext.open(null)) {
+            search.fetch(v -> {
+                found.incrementAndGet();
+                context.cancel("test");
+            }, Arrays.asList(new Query(FieldType.TERM, EVAVariantRestSearch.LOCATION_FIELD, "11:128446-129000"),
+                    new Query(FieldType.TERM, EVAVariantRestSearch.GENOME_FIELD, "homo_sapiens")),
+                    QueryOutput.build("[\"ids\"]"));
+            Assert.fail("Cancelled fetch should throw");
+        } catch (SearchCancelledException e) {
+            Assert.assertTrue("Fetch stopped early", found.get() < 34);
+        } finally {
+            search.setBatchSize(1000);
+        }
+    }
+
     @Test
     public void testQueryByIdWithOutput() {
         QueryResult res = search.query(
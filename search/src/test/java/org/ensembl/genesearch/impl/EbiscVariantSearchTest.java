@@ -0,0 +1,212 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.ensembl.genesearch.Query;
+import org.ensembl.genesearch.QueryOutput;
+import org.ensembl.genesearch.QueryResult;
+import org.ensembl.genesearch.info.DataTypeInfo;
+import org.ensembl.genesearch.info.FieldType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link EbiscVariantSearch} using a stub htsget client and an
+ * in-memory set of cell lines
+ * 
+ * @author dstaines
+ *
+ */
+public class EbiscVariantSearchTest {
+
+    private static final QueryOutput CELL_LINE_GENDER = QueryOutput
+            .build("[\"id\",{\"genotypes\":[\"id\",{\"cell_line\":[{\"donor\":[\"gender\"]}]}]}]");
+
+    private static CellLineSearch cellLineSearch;
+    private static EbiscVariantSearch search;
+
+    /**
+     * Stub client returning two variants, each with genotypes for two samples
+     */
+    private static class StubHtsGetClient extends HtsGetClient {
+
+        StubHtsGetClient() {
+            super("http://localhost", "http://localhost");
+        }
+
+        @Override
+        public void getVariantsForFiles(String[] accessions, String seqRegionName, long start, long end,
+                String token, Consumer<Map<String, Object>> consumer) {
+            for (int i = 1; i <= 2; i++) {
+                Map<String, Object> variant = new HashMap<>();
+                variant.put("id", "rs" + i);
+                List<Map<String, Object>> genotypes = new ArrayList<>();
+                for (String sample : Arrays.asList("CL1", "CL2")) {
+                    Map<String, Object> genotype = new HashMap<>();
+                    genotype.put("id", sample);
+                    genotype.put("genotype", "0|1");
+                    genotypes.add(genotype);
+                }
+                variant.put("genotypes", genotypes);
+                consumer.accept(variant);
+            }
+        }
+
+    }
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        cellLineSearch = new CellLineSearch(DataTypeInfo.fromResource("/datatypes/celllines_datatype_info.json"),
+                "http://localhost", "user", "key") {
+            @Override
+            protected List<Map<String, Object>> loadCellLines() {
+                List<Map<String, Object>> cellLines = new ArrayList<>();
+                for (String name : Arrays.asList("CL1", "CL2")) {
+                    Map<String, Object> donor = new HashMap<>();
+                    donor.put("gender", "female");
+                    donor.put("age", "40-44");
+                    Map<String, Object> cellLine = new HashMap<>();
+                    cellLine.put("name", name);
+                    cellLine.put("donor", donor);
+                    cellLine.put("primary_cell_type", "fibroblast");
+                    cellLines.add(cellLine);
+                }
+                return cellLines;
+            }
+        };
+        search = new EbiscVariantSearch(DataTypeInfo.fromResource("/datatypes/ebisc_datatype_info.json"),
+                new StubHtsGetClient(), "EGAF00000000001", cellLineSearch);
+    }
+
+    private static List<Query> queries(String... extra) {
+        List<Query> queries = new ArrayList<>();
+        queries.add(new Query(FieldType.TERM, "token", "xyz"));
+        queries.add(new Query(FieldType.TERM, "location", "1:1-1000"));
+        for (int i = 0; i < extra.length; i += 2) {
+            queries.add(new Query(FieldType.TERM, extra[i], extra[i + 1]));
+        }
+        return queries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertCellLineProjected(Map<String, Object> variant) {
+        for (Map<String, Object> genotype : (List<Map<String, Object>>) variant.get("genotypes")) {
+            assertFalse("Genotype call removed", genotype.containsKey("genotype"));
+            Map<String, Object> cellLine = (Map<String, Object>) genotype.get("cell_line");
+            assertEquals("Only donor retained", Collections.singleton("donor"), cellLine.keySet());
+            assertEquals("Only gender retained", Collections.singletonMap("gender", "female"),
+                    cellLine.get("donor"));
+        }
+    }
+
+    private static void assertCellLinesUnchanged() {
+        Map<String, Object> cellLine = cellLineSearch.getCellLine("CL1").get();
+        assertTrue("Stored cell line unchanged", cellLine.containsKey("primary_cell_type"));
+        assertEquals("Stored donor unchanged", 2, ((Map<?, ?>) cellLine.get("donor")).size());
+    }
+
+    @Test
+    public void testFetchCellLineSubfield() {
+        List<Map<String, Object>> results = new ArrayList<>();
+        search.fetch(results::add, queries(), CELL_LINE_GENDER);
+        assertEquals("Both variants found", 2, results.size());
+        results.forEach(EbiscVariantSearchTest::assertCellLineProjected);
+        assertCellLinesUnchanged();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> getGenotypes(Map<String, Object> variant) {
+        return (List<Map<String, Object>>) variant.get("genotypes");
+    }
+
+    @Test
+    public void testFetchInline() {
+        List<Map<String, Object>> results = new ArrayList<>();
+        search.fetch(results::add, queries(EbiscVariantSearch.SAMPLE_METADATA, EbiscVariantSearch.INLINE),
+                CELL_LINE_GENDER);
+        assertEquals("Both variants found", 2, results.size());
+        results.forEach(EbiscVariantSearchTest::assertCellLineProjected);
+    }
+
+    @Test
+    public void testFetchHeader() {
+        List<Map<String, Object>> results = new ArrayList<>();
+        search.fetch(results::add, queries(EbiscVariantSearch.SAMPLE_METADATA, EbiscVariantSearch.HEADER),
+                CELL_LINE_GENDER);
+        assertEquals("Two samples and two variants found", 4, results.size());
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> sample = results.get(i);
+            assertEquals("Sample emitted before variants", "CL" + (i + 1), sample.get(EbiscVariantSearch.SAMPLE));
+            Map<?, ?> cellLine = (Map<?, ?>) sample.get("cell_line");
+            assertEquals("Sample has cell line", "CL" + (i + 1), cellLine.get("name"));
+        }
+        for (Map<String, Object> variant : results.subList(2, 4)) {
+            assertTrue("Variant found after samples", variant.containsKey("id"));
+            for (Map<String, Object> genotype : getGenotypes(variant)) {
+                assertFalse("No cell line on genotype", genotype.containsKey("cell_line"));
+            }
+        }
+        assertCellLinesUnchanged();
+    }
+
+    @Test
+    public void testFetchNone() {
+        List<Map<String, Object>> results = new ArrayList<>();
+        search.fetch(results::add, queries(EbiscVariantSearch.SAMPLE_METADATA, EbiscVariantSearch.NONE),
+                CELL_LINE_GENDER);
+        assertEquals("Only variants found", 2, results.size());
+        for (Map<String, Object> variant : results) {
+            for (Map<String, Object> genotype : getGenotypes(variant)) {
+                assertFalse("No cell line on genotype", genotype.containsKey("cell_line"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFetchUnknownMode() {
+        search.fetch(v -> {
+        }, queries(EbiscVariantSearch.SAMPLE_METADATA, "footer"), CELL_LINE_GENDER);
+    }
+
+    @Test
+    public void testQueryHeaderInline() {
+        QueryResult result = search.query(queries(EbiscVariantSearch.SAMPLE_METADATA, EbiscVariantSearch.HEADER),
+                CELL_LINE_GENDER, Collections.emptyList(), 0, 10, Collections.emptyList());
+        assertEquals("Only variants found", 2, result.getResults().size());
+        result.getResults().forEach(EbiscVariantSearchTest::assertCellLineProjected);
+    }
+
+    @Test
+    public void testQueryCellLineSubfield() {
+        QueryResult result = search.query(queries(), CELL_LINE_GENDER, Collections.emptyList(), 0, 10,
+                Collections.emptyList());
+        assertEquals("Both variants found", 2, result.getResults().size());
+        result.getResults().forEach(EbiscVariantSearchTest::assertCellLineProjected);
+        assertCellLinesUnchanged();
+    }
+
+}
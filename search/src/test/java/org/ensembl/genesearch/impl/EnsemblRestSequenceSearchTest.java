@@ -25,12 +25,17 @@ import org.ensembl.genesearch.info.DataTypeInfo;
 import org.ensembl.genesearch.info.FieldType;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.HttpHeaders;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -49,6 +54,9 @@ public class EnsemblRestSequenceSearchTest {
     
     static DataTypeInfo sequenceInfo = DataTypeInfo.fromResource("/datatypes/sequences_datatype_info.json");
     private static EnsemblRestSequenceSearch search;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
     
     @BeforeClass
     public static void setUp() {
@@ -127,6 +135,25 @@ public class EnsemblRestSequenceSearchTest {
         assertTrue("Checking sequence present", !StringUtils.isEmpty((String) seqs.get(0).get("seq")));
     }
 
+    @Test
+    public void testThrottle() {
+        EnsemblRestSequenceSearch.Throttle throttle = new EnsemblRestSequenceSearch.Throttle(8);
+        HttpHeaders plenty = new HttpHeaders();
+        plenty.set("X-RateLimit-Remaining", "1000");
+        throttle.onResponse(plenty);
+        assertEquals("Concurrency capped", 8, throttle.getConcurrency());
+        HttpHeaders low = new HttpHeaders();
+        low.set("X-RateLimit-Remaining", "10");
+        throttle.onResponse(low);
+        assertEquals("Concurrency halved when allowance low", 4, throttle.getConcurrency());
+        HttpHeaders limited = new HttpHeaders();
+        limited.set("Retry-After", "0.5");
+        throttle.onRateLimited(limited);
+        assertEquals("Concurrency halved when rate limited", 2, throttle.getConcurrency());
+        throttle.onResponse(plenty);
+        assertEquals("Concurrency recovers", 3, throttle.getConcurrency());
+    }
+
     private List<String> getIds(String name) throws IOException {
         return IOUtils.readLines(this.getClass().getResourceAsStream(name), Charset.forName("UTF-8"));
     }
@@ -173,4 +200,47 @@ public class EnsemblRestSequenceSearchTest {
         assertEquals("Checking for position of original sequence", 100, newSeq.lastIndexOf(origSeq));
     }
 
+    @Test
+    public void testWarmedCacheServed() throws IOException {
+        List<String> posted = Collections.synchronizedList(new ArrayList<>());
+        EnsemblRestSequenceSearch cached = new EnsemblRestSequenceSearch("http://localhost", sequenceInfo) {
+            @Override
+            protected List<Map<String, Object>> postBatch(String url, List<String> ids, Throttle throttle) {
+                posted.addAll(ids);
+                List<Map<String, Object>> sequences = new ArrayList<>();
+                for (String id : ids) {
+                    Map<String, Object> sequence = new HashMap<>();
+                    sequence.put("id", id);
+                    sequence.put("seq", "ACGT");
+                    sequences.add(sequence);
+                }
+                return sequences;
+            }
+        };
+        try (SequenceStore store = new SequenceStore(folder.getRoot().toPath(), "1", 1 << 20)) {
+            cached.setCache(store);
+            // warm as SequenceCacheWarmer does, with an explicit default type
+            cached.fetch("homo_sapiens", s -> {
+            }, Arrays.asList(new Query(FieldType.TERM, "id", "ENSG00000139618"),
+                    new Query(FieldType.TERM, "type", "genomic")), QueryOutput.build(Collections.emptyList()));
+            assertEquals("Warming posted ID", Arrays.asList("ENSG00000139618"), posted);
+            // request using the server default type and a species option
+            List<Map<String, Object>> seqs = new ArrayList<>();
+            cached.fetch("homo_sapiens", seqs::add, Arrays.asList(new Query(FieldType.TERM, "species", "homo_sapiens"),
+                    new Query(FieldType.TERM, "id", "ENSG00000139618")), QueryOutput.build(Collections.emptyList()));
+            assertEquals("Warmed sequence served", 1, seqs.size());
+            assertEquals("Warmed sequence not posted again", 1, posted.size());
+            // options in a different order share the same entry
+            cached.fetch("homo_sapiens", s -> {
+            }, Arrays.asList(new Query(FieldType.TERM, "id", "ENSG00000139618"),
+                    new Query(FieldType.TERM, "expand_5prime", "100"), new Query(FieldType.TERM, "type", "cdna")),
+                    QueryOutput.build(Collections.emptyList()));
+            cached.fetch("homo_sapiens", s -> {
+            }, Arrays.asList(new Query(FieldType.TERM, "type", "cdna"),
+                    new Query(FieldType.TERM, "expand_5prime", "100"),
+                    new Query(FieldType.TERM, "id", "ENSG00000139618")), QueryOutput.build(Collections.emptyList()));
+            assertEquals("Reordered options served from cache", 2, posted.size());
+        }
+    }
+
 }
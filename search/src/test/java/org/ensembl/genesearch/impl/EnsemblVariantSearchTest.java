@@ -13,6 +13,10 @@
  */
 package org.ensembl.genesearch.impl;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import com.github.tomakehurst.wiremock.junit.WireMockClassRule;
 import org.apache.commons.lang3.StringUtils;
@@ -32,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.stream.Collectors;
 
 public class EnsemblVariantSearchTest {
 
@@ -111,4 +116,22 @@ public class EnsemblVariantSearchTest {
         Assert.assertTrue(res.getResults().stream().anyMatch(v -> {return String.valueOf(v.get("consequence_type")).matches("missense_variant");}));
         Assert.assertFalse(res.getResults().stream().anyMatch(v -> {return String.valueOf(v.get("consequence_type")).matches("intron_variant");}));
     }
+
+    @Test
+    public void testFetchByRangeWindows() {
+        // a variant spanning the window edge is returned by both windows
+        wireMockRule.stubFor(get(urlPathEqualTo("/overlap/region/test_genome/1:1-100000"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withBody("[{\"id\":\"a\",\"start\":50},{\"id\":\"b\",\"start\":99990}]")));
+        wireMockRule.stubFor(get(urlPathEqualTo("/overlap/region/test_genome/1:100001-200000"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withBody("[{\"id\":\"b\",\"start\":99990},{\"id\":\"c\",\"start\":150000}]")));
+        SearchResult res = search.fetch(
+                Arrays.asList(new Query(FieldType.TERM, EnsemblVariantSearch.LOCATION_FIELD, "1:1-200000"),
+                        new Query(FieldType.TERM, EnsemblVariantSearch.GENOME_FIELD, "test_genome")),
+                QueryOutput.build("[\"id\"]"));
+        Assert.assertEquals("Variants deduplicated and in order", Arrays.asList("a", "b", "c"),
+                res.getResults().stream().map(v -> v.get("id")).collect(Collectors.toList()));
+        Assert.assertFalse("Start not added to output", res.getResults().get(0).containsKey("start"));
+    }
 }
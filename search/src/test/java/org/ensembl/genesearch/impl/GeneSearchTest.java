@@ -304,4 +304,28 @@ public class GeneSearchTest extends AbstractESTestCase{
         SearchResult result = geneSearch.fetch(q, o);
         assertEquals("Fetched hits", 0, result.getResults().size());
     }
+
+    @Test
+    public void countNestedJoinTarget() {
+        log.info("Counting genes with a nested homologue query");
+        List<Query> q = QueryHandlerTest.build("{\"homologues\":{\"genome\":\"nanoarchaeum_equitans_kin4_m\"}}");
+        QueryOutput o = QueryOutput.build(Collections.singletonList("id"));
+        long n = geneSearch.query(q, o, Collections.emptyList(), 0, 1, Collections.emptyList()).getResultCount();
+        assertTrue("Homologue query filters genes", n < 2646);
+        assertEquals("Count matches query", n, geneSearch.count(q));
+        assertEquals("Count with output matches query", n, geneSearch.count(q, o));
+        assertEquals("Exists matches query", n > 0, geneSearch.exists(q));
+    }
+
+    @Test
+    public void countInnerJoinGenomes() {
+        log.info("Counting genes with an inner join to genomes");
+        QueryOutput o = QueryOutput.build("[\"name\",{\"genomes\":[\"division\"]}]");
+        List<Query> q = QueryHandlerTest.build("{\"biotype\":\"protein_coding\", \"genomes\":{\"inner\":\"1\"}}");
+        assertEquals("Count matches inner join fetch", 536, geneSearch.count(q, o));
+        assertTrue("Inner join exists", geneSearch.exists(q, o));
+        List<Query> q2 = QueryHandlerTest
+                .build("{\"biotype\":\"protein_coding\", \"genomes\":{\"inner\":\"1\", \"division\":\"banana\"}}");
+        assertFalse("Empty inner join does not exist", geneSearch.exists(q2, o));
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.ensembl.genesearch.Query;
+import org.ensembl.genesearch.QueryOutput;
+import org.ensembl.genesearch.QueryResult;
+import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.info.DataTypeInfo;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests for {@link GenomeMetadataCache} using a stub genome search
+ * 
+ * @author dstaines
+ *
+ */
+public class GenomeMetadataCacheTest {
+
+    /**
+     * Stub returning two genomes in bulk, failing the first few bulk loads
+     * if required. Only "new_genome" can be found individually.
+     */
+    private static class StubGenomeSearch implements Search {
+
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final int failures;
+
+        private StubGenomeSearch(int failures) {
+            this.failures = failures;
+        }
+
+        private static Map<String, Object> genome(String id, String division, String accession) {
+            Map<String, Object> genome = new HashMap<>();
+            genome.put("id", id);
+            genome.put("division", division);
+            genome.put("assembly", Collections.singletonMap("accession", accession));
+            return genome;
+        }
+
+        @Override
+        public void fetch(Consumer<Map<String, Object>> consumer, List<Query> queries, QueryOutput fieldNames) {
+            if (queries.isEmpty()) {
+                if (loads.incrementAndGet() <= failures) {
+                    throw new IllegalStateException("Genome search unavailable");
+                }
+                consumer.accept(genome("homo_sapiens", "Ensembl", "GCA_000001405.27"));
+                consumer.accept(genome("arabidopsis_thaliana", "EnsemblPlants", "GCA_000001735.1"));
+            } else {
+                lookups.incrementAndGet();
+                for (String id : queries.get(0).getValues()) {
+                    if ("new_genome".equals(id)) {
+                        consumer.accept(genome(id, "EnsemblFungi", "GCA_000000001.1"));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public QueryResult select(String name, int offset, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DataTypeInfo getDataType() {
+            return null;
+        }
+
+        @Override
+        public boolean up() {
+            return true;
+        }
+
+    }
+
+    private GenomeMetadataCache cache;
+
+    @After
+    public void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testLookup() {
+        StubGenomeSearch search = new StubGenomeSearch(0);
+        cache = new GenomeMetadataCache(search, 3600, 300);
+        assertEquals("Division found", "Ensembl", cache.getDivision("homo_sapiens"));
+        assertEquals("Accession found", "GCA_000001735.1", cache.getAccession("arabidopsis_thaliana"));
+        assertEquals("Genome found by division", Collections.singleton("arabidopsis_thaliana"),
+                cache.getGenomesByDivision("EnsemblPlants"));
+        assertEquals("New genome found individually", "EnsemblFungi", cache.getDivision("new_genome"));
+        assertEquals("New genome remembered", "EnsemblFungi", cache.getDivision("new_genome"));
+        assertEquals("Single individual lookup", 1, search.lookups.get());
+    }
+
+    @Test
+    public void testRefreshAfterFailure() {
+        StubGenomeSearch search = new StubGenomeSearch(1);
+        cache = new GenomeMetadataCache(search, 3600, 300);
+        long start = System.nanoTime();
+        assertEquals("Division found after failed load", "Ensembl", cache.getDivision("homo_sapiens"));
+        assertTrue("Retried without waiting for the load timeout",
+                System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals("Failed load retried once", 2, search.loads.get());
+        assertFalse("Error cleared after reload", cache.getStats().containsKey("error"));
+        assertEquals("Both genomes loaded", 2, cache.getStats().get("genomes"));
+    }
+
+    @Test
+    public void testNegativeTtl() throws InterruptedException {
+        StubGenomeSearch search = new StubGenomeSearch(0);
+        cache = new GenomeMetadataCache(search, 3600, 1);
+        assertNull("Unknown genome not found", cache.getGenome("unknown_genome"));
+        assertNull("Unknown genome still not found", cache.getGenome("unknown_genome"));
+        assertEquals("Unknown genome remembered", 1, search.lookups.get());
+        assertEquals("Unknown genome counted", 1L, cache.getStats().get("missing"));
+        Thread.sleep(1100);
+        assertNull("Unknown genome not found after expiry", cache.getGenome("unknown_genome"));
+        assertEquals("Unknown genome looked up again after expiry", 2, search.lookups.get());
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link SequenceStore}
+ * 
+ * @author dstaines
+ *
+ */
+public class SequenceStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPersist() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        String key = SequenceStore.key("homo_sapiens", "type=genomic", "ENSG00000139618");
+        String seq = StringUtils.repeat("ACGT", 100000);
+        try (SequenceStore store = new SequenceStore(dir, "100", 1 << 20)) {
+            assertNull("Missing key", store.get(key));
+            store.put(key, Arrays.asList(sequence("ENSG00000139618", seq), sequence("ENSG00000139618.1", null)));
+            assertEquals("Sequence read back", seq, store.get(key).get(0).get("seq"));
+        }
+        try (SequenceStore store = new SequenceStore(dir, "100", 1 << 20)) {
+            List<Map<String, Object>> sequences = store.get(key);
+            assertEquals("Both sequences found after reopening", 2, sequences.size());
+            assertEquals("Sequence found after reopening", seq, sequences.get(0).get("seq"));
+            assertEquals("Metadata found after reopening", "BRCA2", sequences.get(0).get("desc"));
+            assertFalse("Missing sequence not added", sequences.get(1).containsKey("seq"));
+        }
+        try (SequenceStore store = new SequenceStore(dir, "101", 1 << 20)) {
+            assertNull("Stores scoped by release", store.get(key));
+        }
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        String seq = StringUtils.repeat("ACGT", 2500);
+        try (SequenceStore store = new SequenceStore(folder.getRoot().toPath(), "100", 1 << 20)) {
+            for (int i = 0; i < 200; i++) {
+                store.put("gene" + i, Arrays.asList(sequence("gene" + i, seq)));
+                // keep the first gene in use
+                assertTrue("Recently used entry retained", store.contains("gene0"));
+                store.get("gene0");
+            }
+            assertTrue("Store compacted", ((Number) store.getStats().get("compactions")).longValue() > 0);
+            assertTrue("Latest entry retained", store.contains("gene199"));
+            assertFalse("Least recently used entry dropped", store.contains("gene1"));
+            assertEquals("Sequence readable after compaction", seq, store.get("gene0").get(0).get("seq"));
+        }
+    }
+
+    @Test
+    public void testLocked() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (SequenceStore store = new SequenceStore(dir, "100", 1 << 20)) {
+            try {
+                new SequenceStore(dir, "100", 1 << 20).close();
+                fail("Store in use should not be opened");
+            } catch (IOException e) {
+                assertTrue("Store reported in use", e.getMessage().contains("in use"));
+            }
+            new SequenceStore(dir, "101", 1 << 20).close();
+        }
+        new SequenceStore(dir, "100", 1 << 20).close();
+    }
+
+    private static Map<String, Object> sequence(String id, String seq) {
+        Map<String, Object> sequence = new LinkedHashMap<>();
+        sequence.put("id", id);
+        sequence.put("desc", "BRCA2");
+        if (seq != null) {
+            sequence.put("seq", seq);
+        }
+        return sequence;
+    }
+
+}
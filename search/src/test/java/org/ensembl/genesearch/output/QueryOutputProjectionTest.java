@@ -0,0 +1,145 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.ensembl.genesearch.QueryOutput;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for {@link QueryOutputProjection}
+ *
+ * @author dstaines
+ *
+ */
+public class QueryOutputProjectionTest {
+
+    private static final ObjectMapper om = new ObjectMapper();
+
+    private static final String GENE = "{\"id\":\"G1\",\"name\":\"xyz\",\"biotype\":\"protein_coding\","
+            + "\"synonyms\":[],\"location\":{\"seq_region_name\":\"1\",\"start\":100,\"end\":200},"
+            + "\"transcripts\":[{\"id\":\"T1\",\"biotype\":\"protein_coding\",\"xrefs\":[{\"primary_id\":\"X1\",\"dbname\":\"A\"}]},"
+            + "{\"id\":\"T2\",\"biotype\":\"nonsense\",\"xrefs\":[]}]}";
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> gene() throws IOException {
+        return om.readValue(GENE, Map.class);
+    }
+
+    private static Map<String, Object> read(QueryOutputProjection projection) throws IOException {
+        try (JsonParser parser = om.getFactory().createParser(GENE)) {
+            Map<String, Object> obj = projection.read(parser);
+            assertEquals("Parser left at end of object", JsonToken.END_OBJECT, parser.currentToken());
+            return obj;
+        }
+    }
+
+    @Test
+    public void testAll() throws IOException {
+        QueryOutputProjection projection = QueryOutput.build("[\"*\"]").compile();
+        assertTrue("Wild output retains everything", projection.isAll());
+        assertEquals("Filtered gene unchanged", gene(), projection.filter(gene()));
+        assertEquals("Read gene unchanged", gene(), read(projection));
+        assertTrue("Null output retains everything", QueryOutputProjection.compile(null).isAll());
+    }
+
+    @Test
+    public void testTopLevel() throws IOException {
+        QueryOutputProjection projection = QueryOutput.build("[\"id\",\"location\",\"synonyms\"]").compile();
+        for (Map<String, Object> gene : new Map[] { projection.filter(gene()), read(projection) }) {
+            assertEquals("2 keys retained", 2, gene.size());
+            assertEquals("ID found", "G1", gene.get("id"));
+            assertEquals("Location kept whole", 3, ((Map<?, ?>) gene.get("location")).size());
+            assertFalse("Empty synonyms removed", gene.containsKey("synonyms"));
+        }
+    }
+
+    @Test
+    public void testSegments() throws IOException {
+        QueryOutputProjection projection = QueryOutput.build("[\"ids\",\"location.start\"]").compile();
+        for (Map<String, Object> gene : new Map[] { projection.filter(gene()), read(projection) }) {
+            assertFalse("Partial segment does not match", gene.containsKey("id"));
+            assertEquals("Only start retained", 1, ((Map<?, ?>) gene.get("location")).size());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testNestedList() throws IOException {
+        QueryOutputProjection projection = QueryOutput.build("[\"id\",{\"transcripts\":[\"id\",\"xrefs.dbname\"]}]")
+                .compile();
+        for (Map<String, Object> gene : new Map[] { projection.filter(gene()), read(projection) }) {
+            assertEquals("2 keys retained", 2, gene.size());
+            List<Map<String, Object>> transcripts = (List<Map<String, Object>>) gene.get("transcripts");
+            assertEquals("2 transcripts", 2, transcripts.size());
+            assertEquals("T1 has id and xrefs", 2, transcripts.get(0).size());
+            assertFalse("T1 biotype removed", transcripts.get(0).containsKey("biotype"));
+            Map<String, Object> xref = ((List<Map<String, Object>>) transcripts.get(0).get("xrefs")).get(0);
+            assertEquals("xref dbname only", 1, xref.size());
+            assertEquals("xref dbname", "A", xref.get("dbname"));
+            assertEquals("T2 has id only", 1, transcripts.get(1).size());
+        }
+    }
+
+    @Test
+    public void testEmptyRemoved() throws IOException {
+        QueryOutputProjection projection = QueryOutput.build("[\"transcripts.exons\",\"location.strand\"]")
+                .compile();
+        for (Map<String, Object> gene : new Map[] { projection.filter(gene()), read(projection) }) {
+            assertTrue("All keys removed", gene.isEmpty());
+        }
+    }
+
+    @Test
+    public void testEquivalence() throws IOException {
+        String[] outputs = { "[\"id\"]", "[\"transcripts\"]", "[\"transcripts.id\",\"transcripts\"]",
+                "{\"transcripts\":[\"xrefs\"]}", "{\"transcripts\":[]}", "[\"location.end\",\"name\"]" };
+        for (String output : outputs) {
+            QueryOutput o = QueryOutput.build(output);
+            assertEquals("Filter and read match for " + output, o.compile().filter(gene()), read(o.compile()));
+        }
+    }
+
+    @Test
+    public void testReadNotObject() throws IOException {
+        try (JsonParser parser = om.getFactory().createParser("[1,2]")) {
+            assertNull("Array not read", QueryOutputProjection.ALL.read(parser));
+        }
+    }
+
+    @Test
+    public void testCopy() throws IOException {
+        QueryOutputProjection projection = QueryOutput
+                .build("[\"id\",\"location\",{\"transcripts\":[\"id\",\"xrefs\"]}]").compile();
+        Map<String, Object> gene = gene();
+        Map<String, Object> copy = projection.copy(gene);
+        assertEquals("Original unchanged", gene(), gene);
+        assertEquals("Copy matches filter", projection.filter(gene()), copy);
+        assertTrue("Whole values shared", copy.get("location") == gene.get("location"));
+        assertFalse("Filtered values copied", copy.get("transcripts") == gene.get("transcripts"));
+    }
+
+}
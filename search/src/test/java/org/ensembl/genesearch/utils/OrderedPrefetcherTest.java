@@ -0,0 +1,82 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.genesearch.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link OrderedPrefetcher}
+ * 
+ * @author dstaines
+ *
+ */
+public class OrderedPrefetcherTest {
+
+    @Test
+    public void testOrdered() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            int n = i;
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(ThreadLocalRandom.current().nextInt(10));
+                running.decrementAndGet();
+                return n;
+            });
+        }
+        List<Integer> results = new ArrayList<>();
+        OrderedPrefetcher.forEachOrdered(tasks.iterator(), 4, results::add);
+        assertEquals("All results returned", 50, results.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("Results in order", Integer.valueOf(i), results.get(i));
+        }
+        assertTrue("Concurrency bounded", maxRunning.get() <= 4);
+        assertTrue("Tasks run concurrently", maxRunning.get() > 1);
+    }
+
+    @Test
+    public void testFailure() {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            tasks.add(() -> {
+                if (n == 5) {
+                    throw new IllegalStateException("page " + n);
+                }
+                return n;
+            });
+        }
+        List<Integer> results = new ArrayList<>();
+        try {
+            OrderedPrefetcher.forEachOrdered(tasks.iterator(), 3, results::add);
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("Original exception rethrown", "page 5", e.getMessage());
+        }
+        assertEquals("Results before failure consumed", 5, results.size());
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.ensembl.gti.genesearch.services.converter.DelimitedWriter.Dialect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of rows written per second by {@link DelimitedWriter} compared
+ * with the stream-and-join approach it replaced in
+ * {@link org.ensembl.gti.genesearch.services.FetchService}. Each invocation
+ * writes {@link #ROWS} rows, reported per row.
+ *
+ * @author dstaines
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DelimitedWriterBenchmark {
+
+    private static final int ROWS = 100000;
+    private static final List<String> NAMES = Arrays.asList("id", "name", "genome", "description", "biotype",
+            "start", "end", "strand", "synonyms");
+
+    @Param({ "CSV", "TSV" })
+    public Dialect dialect;
+
+    private List<Map<String, Object>> rows;
+
+    @Setup
+    public void setup() {
+        rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", "ENSG000001" + i);
+            row.put("name", "GENE" + i);
+            row.put("genome", "homo_sapiens");
+            row.put("description", "BRCA2 DNA repair associated [Source:HGNC Symbol;Acc:HGNC:" + i + "]");
+            row.put("biotype", "protein_coding");
+            row.put("start", 32315474 + i);
+            row.put("end", 32400266 + i);
+            row.put("strand", i % 2 == 0 ? 1 : -1);
+            if (i % 3 == 0) {
+                row.put("synonyms", Arrays.asList("BRCC2", "FACD"));
+            }
+            rows.add(row);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void delimitedWriter() throws IOException {
+        try (DelimitedWriter writer = new DelimitedWriter(newWriter(), dialect)) {
+            writer.writeHeader(NAMES);
+            for (Map<String, Object> row : rows) {
+                writer.writeRow(NAMES, row);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void streamJoin() throws IOException {
+        String separator = dialect == Dialect.TSV ? "\t" : ",";
+        try (Writer writer = newWriter()) {
+            writer.write(String.join(separator, NAMES));
+            writer.write('\n');
+            for (Map<String, Object> row : rows) {
+                writer.write(NAMES.stream().map(e -> String.valueOf(row.get(e))).collect(Collectors.joining(separator)));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static Writer newWriter() {
+        OutputStream os = new NullOutputStream();
+        return new OutputStreamWriter(os, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Benchmark of genes written per second by {@link MapXmlWriter} compared with
+ * the implementation it replaced (reproduced in {@link LegacyWriter}), which
+ * built debug messages for every value and checked types via reflection. Each
+ * invocation writes {@link #GENES} genes, reported per gene.
+ *
+ * @author dstaines
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MapXmlWriterBenchmark {
+
+    private static final int GENES = 10000;
+
+    private List<Map<String, Object>> genes;
+
+    @Setup
+    public void setup() {
+        genes = new ArrayList<>(GENES);
+        for (int i = 0; i < GENES; i++) {
+            Map<String, Object> gene = new HashMap<>();
+            gene.put("id", "ENSG000001" + i);
+            gene.put("name", "GENE" + i);
+            gene.put("genome", "homo_sapiens");
+            gene.put("description", "BRCA2 DNA repair associated [Source:HGNC Symbol;Acc:HGNC:" + i + "]");
+            gene.put("biotype", "protein_coding");
+            gene.put("start", 32315474 + i);
+            gene.put("end", 32400266 + i);
+            gene.put("strand", i % 2 == 0 ? 1 : -1);
+            gene.put("synonyms", Arrays.asList("BRCC2", "FACD"));
+            List<Map<String, Object>> transcripts = new ArrayList<>();
+            for (int j = 0; j < 3; j++) {
+                Map<String, Object> transcript = new HashMap<>();
+                transcript.put("id", "ENST000003" + i + j);
+                transcript.put("biotype", "protein_coding");
+                transcript.put("start", 32315474 + i + j);
+                transcript.put("end", 32400266 + i);
+                Map<String, Object> translation = new HashMap<>();
+                translation.put("id", "ENSP000003" + i + j);
+                transcript.put("translations", Arrays.asList(translation));
+                transcripts.add(transcript);
+            }
+            gene.put("transcripts", transcripts);
+            genes.add(gene);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GENES)
+    public void streamingWriter() throws XMLStreamException {
+        XMLStreamWriter xsw = MapXmlWriter.createWriter(new NullOutputStream());
+        MapXmlWriter writer = new MapXmlWriter(xsw);
+        writer.openDoc();
+        xsw.writeStartElement("genes");
+        for (Map<String, Object> gene : genes) {
+            writer.writeData("gene", gene);
+        }
+        xsw.writeEndElement();
+        writer.endDoc();
+        xsw.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GENES)
+    public void legacyWriter() throws XMLStreamException {
+        XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(new NullOutputStream());
+        LegacyWriter writer = new LegacyWriter(xsw);
+        xsw.writeStartDocument();
+        xsw.writeStartElement("genes");
+        for (Map<String, Object> gene : genes) {
+            writer.writeData("gene", gene);
+        }
+        xsw.writeEndElement();
+        xsw.writeEndDocument();
+        xsw.flush();
+    }
+
+    /**
+     * Copy of the original writer's hot path for comparison
+     */
+    private static class LegacyWriter {
+
+        private final Logger log = LoggerFactory.getLogger(LegacyWriter.class);
+        private final XMLStreamWriter writer;
+
+        private LegacyWriter(XMLStreamWriter writer) {
+            this.writer = writer;
+        }
+
+        private void writeData(String name, Object data) throws XMLStreamException {
+            writer.writeStartDocument();
+            writeObject(name, data);
+            writer.writeEndDocument();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void writeObject(String name, Object data) throws XMLStreamException {
+            Class<?> clazz = data.getClass();
+            log.debug("Data received:" + name + "/" + data.toString());
+            if (Map.class.isAssignableFrom(clazz)) {
+                writeMap(name, (Map<String, Object>) data);
+            } else if (Collection.class.isAssignableFrom(clazz)) {
+                writeCollection(name, (Collection<Object>) data);
+            } else {
+                writer.writeAttribute(name, String.valueOf(data));
+            }
+        }
+
+        private void writeCollection(String name, Collection<Object> dataCollection) throws XMLStreamException {
+            if (dataCollection != null && !dataCollection.isEmpty()) {
+                String elemName = name.endsWith("s") ? name.substring(0, name.length() - 1) : name + "_elem";
+                writer.writeStartElement(name);
+                for (Object obj : dataCollection) {
+                    Class<?> oClazz = obj.getClass();
+                    if (Map.class.isAssignableFrom(oClazz) || List.class.isAssignableFrom(oClazz)) {
+                        writeObject(elemName, obj);
+                    } else {
+                        writer.writeStartElement(elemName);
+                        writer.writeCharacters(String.valueOf(obj));
+                        writer.writeEndElement();
+                    }
+                }
+                writer.writeEndElement();
+            }
+        }
+
+        private void writeMap(String name, Map<String, Object> dataMap) throws XMLStreamException {
+            if (dataMap != null && !dataMap.isEmpty()) {
+                log.debug("write Map " + dataMap + "/" + name);
+                writer.writeStartElement(name);
+                for (Entry<String, Object> e : dataMap.entrySet()) {
+                    log.debug("Current Entry " + e);
+                    if (e.getValue() != null) {
+                        Class<?> eClazz = e.getValue().getClass();
+                        if (!Map.class.isAssignableFrom(eClazz) && !Collection.class.isAssignableFrom(eClazz)) {
+                            writer.writeAttribute(e.getKey(), String.valueOf(e.getValue()));
+                        }
+                    }
+                }
+                for (Entry<String, Object> e : dataMap.entrySet()) {
+                    if (e.getValue() != null) {
+                        Class<?> eClazz = e.getValue().getClass();
+                        if (Map.class.isAssignableFrom(eClazz) || Collection.class.isAssignableFrom(eClazz)) {
+                            writeObject(e.getKey(), e.getValue());
+                        }
+                    }
+                }
+                writer.writeEndElement();
+            }
+        }
+    }
+
+}
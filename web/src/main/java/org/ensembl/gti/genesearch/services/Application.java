@@ -27,6 +27,9 @@ public class Application {
 
 	public static final String APPLICATION_X_JAVASCRIPT = "application/x-javascript";
 	public static final String TEXT_CSV = "text/csv";
+	public static final String TEXT_TSV = "text/tab-separated-values";
 	public static final String APPLICATION_EXCEL = "application/vnd.ms-excel";
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
+	public static final String APPLICATION_ARROW_STREAM = "application/vnd.apache.arrow.stream";
 	
 }
\ No newline at end of file
@@ -30,10 +30,11 @@ public class CellLineFetchService extends FetchService {
 
 	/**
 	 * @param provider
+	 * @param exportExecutor
 	 */
 	@Autowired
-	public CellLineFetchService(EndpointSearchProvider provider) {
-		super(provider);
+	public CellLineFetchService(EndpointSearchProvider provider, ExportExecutor exportExecutor) {
+		super(provider, exportExecutor);
 	}
 
 	/*
@@ -0,0 +1,98 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.ensembl.gti.genesearch.services;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.ws.rs.BeanParam;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.ensembl.genesearch.SearchContext;
+import org.glassfish.jersey.server.JSONP;
+import org.springframework.web.bind.annotation.RequestBody;
+
+/**
+ * Base class for a /count endpoint, returning only the number of matching
+ * results or whether any exist
+ * 
+ * @author dstaines
+ *
+ */
+@Produces({ MediaType.APPLICATION_JSON, Application.APPLICATION_X_JAVASCRIPT })
+public abstract class CountService extends SearchBasedService {
+
+	public static final String RESULT_COUNT = "resultCount";
+	public static final String EXISTS = "exists";
+
+	public CountService(EndpointSearchProvider provider) {
+		super(provider);
+	}
+
+	@GET
+	@JSONP
+	public Map<String, Object> get(@BeanParam QueryParams params) {
+		log.info("Get from count");
+		return count(params);
+	}
+
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@JSONP
+	public Map<String, Object> post(@RequestBody QueryParams params) {
+		log.info("Post to count");
+		return count(params);
+	}
+
+	@Path(EXISTS)
+	@GET
+	@JSONP
+	public Map<String, Object> getExists(@BeanParam QueryParams params) {
+		log.info("Get from exists");
+		return exists(params);
+	}
+
+	@Path(EXISTS)
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@JSONP
+	public Map<String, Object> postExists(@RequestBody QueryParams params) {
+		log.info("Post to exists");
+		return exists(params);
+	}
+
+	public Map<String, Object> count(QueryParams params) {
+		log.info("count:" + params);
+		try (SearchContext context = openContext(params)) {
+			// fields are passed so joins named in the output are counted as for query
+			return Collections.singletonMap(RESULT_COUNT,
+					getSearch().count(parseQuery(params.getQueries()), params.getFields()));
+		}
+	}
+
+	public Map<String, Object> exists(QueryParams params) {
+		log.info("exists:" + params);
+		try (SearchContext context = openContext(params)) {
+			return Collections.singletonMap(EXISTS,
+					getSearch().exists(parseQuery(params.getQueries()), params.getFields()));
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.SearchType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Token identifying the version of the data served, combining the configured
+ * release with the versions reported by each search (e.g. index UUIDs). The
+ * token is refreshed on a background thread every <code>data.version.ttl</code>
+ * seconds, so requests never wait for the backends. A backend that fails to
+ * report its version keeps the last version it reported, so a transient
+ * failure does not change the token.
+ * 
+ * @author dstaines
+ *
+ */
+@Component
+public class DataVersion {
+
+	final Logger log = LoggerFactory.getLogger(this.getClass());
+	private final EndpointSearchProvider provider;
+	private final String release;
+	private final long ttl;
+	private final ScheduledExecutorService scheduler;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	// last version reported by each search, only used on the scheduler thread
+	private final Map<SearchType, String> versions = new EnumMap<>(SearchType.class);
+	private volatile String version;
+
+	/**
+	 * @param provider
+	 *            provider for retrieving searches
+	 * @param release
+	 *            configured release number (may be empty)
+	 * @param ttl
+	 *            seconds between refreshes of the version
+	 */
+	@Autowired
+	public DataVersion(EndpointSearchProvider provider, @Value("${data.release:}") String release,
+			@Value("${data.version.ttl:60}") long ttl) {
+		this.provider = provider;
+		this.release = release;
+		this.ttl = Math.max(1, ttl);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("data-version").setDaemon(true).build());
+	}
+
+	/**
+	 * Return the last computed version without waiting. Refreshes are started
+	 * by the first call, so searches are not built before they are needed.
+	 * 
+	 * @return current version token, or null if no version is known yet
+	 */
+	public String getVersion() {
+		if (started.compareAndSet(false, true)) {
+			scheduler.scheduleWithFixedDelay(this::refresh, 0, ttl, TimeUnit.SECONDS);
+		}
+		return version;
+	}
+
+	/**
+	 * Recompute the version, keeping the current one if this fails
+	 */
+	protected void refresh() {
+		try {
+			String newVersion = computeVersion();
+			if (newVersion != null && !newVersion.equals(version)) {
+				log.info("Data version is now " + newVersion);
+				version = newVersion;
+			}
+		} catch (RuntimeException e) {
+			log.warn("Could not refresh data version", e);
+		}
+	}
+
+	protected String computeVersion() {
+		for (SearchType type : SearchType.values()) {
+			Search search = provider.getRegistry().getSearch(type);
+			if (search != null) {
+				String searchVersion = search.getDataVersion();
+				if (searchVersion != null) {
+					versions.put(type, searchVersion);
+				} else if (versions.containsKey(type)) {
+					log.warn("No data version from " + type + ", keeping " + versions.get(type));
+				}
+			}
+		}
+		if (StringUtils.isEmpty(release) && versions.isEmpty()) {
+			return null;
+		}
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		if (!StringUtils.isEmpty(release)) {
+			hasher.putString(release, StandardCharsets.UTF_8);
+		}
+		for (Map.Entry<SearchType, String> e : versions.entrySet()) {
+			hasher.putString(e.getKey().name(), StandardCharsets.UTF_8).putString(e.getValue(),
+					StandardCharsets.UTF_8);
+		}
+		return hasher.hash().toString();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+}
@@ -37,6 +37,9 @@ public class EVAEndpointProvider extends EndpointSearchProvider {
     @Value("${eva.rest.url:}")
     private String evaRestUrl;
 
+    @Value("${eva.rest.parallelism:${rest.fetch_parallelism:4}}")
+    private int evaRestParallelism;
+
     public EVAEndpointProvider() {
         super();
     }
@@ -46,9 +49,10 @@ public class EVAEndpointProvider extends EndpointSearchProvider {
         super.registerSearches(reg);
         DataTypeInfo evaGenomeType = DataTypeInfo.fromResource("/datatypes/evagenomes_datatype_info.json");
         DataTypeInfo variantType = DataTypeInfo.fromResource("/datatypes/evavariants_datatype_info.json");
-        Search evaGenomesSearch = new EVAGenomeRestSearch(evaRestUrl, evaGenomeType);
-        Search variantSearch = new EVAVariantRestSearch(evaRestUrl, variantType,
-                new EVAGenomeFinder(evaGenomesSearch, reg.getSearch(SearchType.GENOMES)));
+        Search evaGenomesSearch = new EVAGenomeRestSearch(evaRestUrl, evaGenomeType, getHttpClient());
+        EVAVariantRestSearch variantSearch = new EVAVariantRestSearch(evaRestUrl, variantType,
+                new EVAGenomeFinder(evaGenomesSearch, getGenomeCache()), getHttpClient());
+        variantSearch.setFetchParallelism(evaRestParallelism);
         reg.registerSearch(SearchType.VARIANTS, variantSearch);
     }
 
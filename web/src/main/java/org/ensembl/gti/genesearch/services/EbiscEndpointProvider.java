@@ -13,9 +13,11 @@
  */
 package org.ensembl.gti.genesearch.services;
 
+import org.apache.commons.lang3.StringUtils;
 import org.ensembl.genesearch.SearchType;
 import org.ensembl.genesearch.impl.CellLineSearch;
 import org.ensembl.genesearch.impl.EbiscVariantSearch;
+import org.ensembl.genesearch.impl.HtsGetClient;
 import org.ensembl.genesearch.impl.SearchRegistry;
 import org.ensembl.genesearch.info.DataTypeInfo;
 import org.springframework.beans.factory.annotation.Value;
@@ -42,6 +44,8 @@ public class EbiscEndpointProvider extends EndpointSearchProvider {
     private String egaUrl;
     @Value("${ebisc.ega.accession:}")
     private String egaAccession;
+    @Value("${cell_lines.refresh:" + CellLineSearch.DEFAULT_REFRESH + "}")
+    private long cellLineRefresh;
 
     public EbiscEndpointProvider() {
         super();
@@ -52,11 +56,13 @@ public class EbiscEndpointProvider extends EndpointSearchProvider {
         super.registerSearches(reg);
         // EBiSC cell line metadata
         DataTypeInfo cellLineType = DataTypeInfo.fromResource("/datatypes/celllines_datatype_info.json");
-        CellLineSearch cellLineSearch = new CellLineSearch(cellLineType, ebiscUrl, ebiscUser, ebiscToken);
+        CellLineSearch cellLineSearch = new CellLineSearch(cellLineType, ebiscUrl, ebiscUser, ebiscToken,
+                getHttpClient(), cellLineRefresh);
         reg.registerSearch(SearchType.CELL_LINES, cellLineSearch);
         // HTSget API
         DataTypeInfo variantInfo = DataTypeInfo.fromResource("/datatypes/ebisc_datatype_info.json");
-        EbiscVariantSearch variantSearch = new EbiscVariantSearch(variantInfo, egaUrl, egaAccession, cellLineSearch);
+        EbiscVariantSearch variantSearch = new EbiscVariantSearch(variantInfo,
+                new HtsGetClient(egaUrl, StringUtils.EMPTY, getHttpClient()), egaAccession, cellLineSearch);
         reg.registerSearch(SearchType.VARIANTS, variantSearch);
         this.setCellLineSearch(cellLineSearch);
         this.setVariantSearch(variantSearch);
@@ -14,24 +14,40 @@
 
 package org.ensembl.gti.genesearch.services;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.RestClient;
 import org.ensembl.genesearch.Search;
 import org.ensembl.genesearch.SearchType;
 import org.ensembl.genesearch.clients.ClientBuilder;
+import org.ensembl.genesearch.clients.SharedHttpClient;
 import org.ensembl.genesearch.impl.DivisionAwareSequenceSearch;
+import org.ensembl.genesearch.impl.ESHttpSearch;
 import org.ensembl.genesearch.impl.ESSearch;
 import org.ensembl.genesearch.impl.ESSearchFlatten;
+import org.ensembl.genesearch.impl.EnsemblRestSequenceSearch;
 import org.ensembl.genesearch.impl.ExpressionSearch;
+import org.ensembl.genesearch.impl.GenomeMetadataCache;
 import org.ensembl.genesearch.impl.GeneSearch;
+import org.ensembl.genesearch.impl.RestBasedSearch;
 import org.ensembl.genesearch.impl.SearchRegistry;
+import org.ensembl.genesearch.impl.SequenceStore;
 import org.ensembl.genesearch.impl.SolrSearch;
 import org.ensembl.genesearch.impl.TranscriptSearch;
 import org.ensembl.genesearch.impl.VariantSearch;
 import org.ensembl.genesearch.info.DataTypeInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 /**
@@ -58,10 +74,15 @@ public class EndpointSearchProvider {
     protected Search sequenceSearch = null;
     protected Client client = null;
     protected Search cellLineSearch = null;
+    protected GenomeMetadataCache genomeCache = null;
 
     private SolrClient solrAnalyticsClient = null;
     private SolrClient solrExperimentsClient = null;
     private SearchRegistry registry = null;
+    @Autowired(required = false)
+    protected HealthMonitor healthMonitor;
+    @Autowired
+    protected SharedHttpClient httpClient;
     @Value("${es.host}")
     private String hostName;
     @Value("${es.cluster}")
@@ -70,6 +91,9 @@ public class EndpointSearchProvider {
     protected int port;
     @Value("${es.node}")
     protected boolean node;
+    @Value("${es.http.port:-1}")
+    protected int httpPort;
+    protected RestClient restClient = null;
     @Value("${es.genes.index:genes}")
     protected String genesIndex = ESSearch.GENES_INDEX;
     @Value("${es.genomes.index:genomes}")
@@ -79,6 +103,25 @@ public class EndpointSearchProvider {
     protected String ensRestUrl;
     @Value("${rest.url.eg}")
     protected String egRestUrl;
+    @Value("${rest.fetch_parallelism:" + RestBasedSearch.DEFAULT_FETCH_PARALLELISM + "}")
+    protected int restFetchParallelism;
+    @Value("${rest.sequence.batch_size:" + EnsemblRestSequenceSearch.DEFAULT_BATCH_SIZE + "}")
+    protected int sequenceBatchSize;
+    @Value("${rest.sequence.workers:" + EnsemblRestSequenceSearch.DEFAULT_WORKERS + "}")
+    protected int sequenceWorkers;
+    @Value("${rest.sequence.retries:" + EnsemblRestSequenceSearch.DEFAULT_MAX_RETRIES + "}")
+    protected int sequenceRetries;
+    @Value("${genome.cache.refresh:" + GenomeMetadataCache.DEFAULT_REFRESH + "}")
+    protected long genomeCacheRefresh;
+    @Value("${genome.cache.negative_ttl:" + GenomeMetadataCache.DEFAULT_NEGATIVE_TTL + "}")
+    protected long genomeCacheNegativeTtl;
+
+    @Value("${sequence.cache.dir:}")
+    protected String sequenceCacheDir;
+    @Value("${sequence.cache.size_mb:1024}")
+    protected long sequenceCacheSize;
+    @Value("${data.release:}")
+    protected String dataRelease;
 
     @Value("${solr.expression.url:}")
     protected String solrAnalyticsUrl;
@@ -101,10 +144,53 @@ public class EndpointSearchProvider {
         return client;
     }
 
+    /**
+     * @return REST client for Elastic, or null if no HTTP port is configured.
+     *         The client is closed by {@link #shutdown()}.
+     */
+    public synchronized RestClient getESRestClient() {
+        if (restClient == null && httpPort > 0) {
+            restClient = ClientBuilder.buildRestClient(this.hostName, this.httpPort);
+        }
+        return restClient;
+    }
+
     public void setESClient(Client client) {
         this.client = client;
     }
 
+    /**
+     * @return pooled HTTP client for REST-based searches, as configured by
+     *         {@link HttpClientConfig} and closed with the application context
+     * @throws IllegalStateException
+     *             if no client has been injected
+     */
+    public SharedHttpClient getHttpClient() {
+        if (httpClient == null) {
+            throw new IllegalStateException("No shared HTTP client has been configured");
+        }
+        return httpClient;
+    }
+
+    public void setHttpClient(SharedHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Close the REST client for Elastic, if one has been created
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (restClient != null) {
+            try {
+                restClient.close();
+            } catch (IOException e) {
+                log.warn("Could not close Elastic REST client", e);
+            }
+            restClient = null;
+        }
+    }
+
     public SolrClient getSolrAnalyticsClient() {
         if (solrAnalyticsClient == null) {
             solrAnalyticsClient = new HttpSolrClient.Builder().withBaseSolrUrl(solrAnalyticsUrl).build();
@@ -134,6 +220,18 @@ public class EndpointSearchProvider {
 
             registerSearches(registry);
 
+            if (healthMonitor != null) {
+                // start probing every backend as soon as it exists
+                List<Search> searches = new ArrayList<>();
+                for (SearchType type : SearchType.values()) {
+                    Search search = registry.getSearch(type);
+                    if (search != null && !searches.contains(search)) {
+                        searches.add(search);
+                    }
+                }
+                healthMonitor.registerAll(searches);
+            }
+
         }
         return registry;
     }
@@ -165,19 +263,50 @@ public class EndpointSearchProvider {
     private void registerEnsemblRestSearches(SearchRegistry reg) {
         // Ensembl REST searches
         DataTypeInfo seqType = DataTypeInfo.fromResource("/datatypes/sequences_datatype_info.json");
-        Search seqSearch = new DivisionAwareSequenceSearch(registry.getSearch(SearchType.GENOMES), seqType,
-                getEnsRestUrl(), getEgRestUrl());
+        DivisionAwareSequenceSearch seqSearch = new DivisionAwareSequenceSearch(getGenomeCache(),
+                newSequenceSearch(getEnsRestUrl(), seqType), newSequenceSearch(getEgRestUrl(), seqType));
+        if (!StringUtils.isEmpty(sequenceCacheDir)) {
+            if (StringUtils.isEmpty(dataRelease)) {
+                // the cache is only valid for a single release
+                log.warn("Not using sequence cache in " + sequenceCacheDir + " as data.release is not set");
+            } else {
+                try {
+                    seqSearch.setCache(
+                            new SequenceStore(Paths.get(sequenceCacheDir), dataRelease, sequenceCacheSize << 20));
+                } catch (IOException e) {
+                    log.warn("Could not open sequence cache in " + sequenceCacheDir, e);
+                }
+            }
+        }
         reg.registerSearch(SearchType.SEQUENCES, seqSearch);
     }
 
+    private EnsemblRestSequenceSearch newSequenceSearch(String url, DataTypeInfo seqType) {
+        EnsemblRestSequenceSearch search = new EnsemblRestSequenceSearch(url, seqType, sequenceBatchSize,
+                getHttpClient());
+        search.setWorkers(sequenceWorkers);
+        search.setMaxRetries(sequenceRetries);
+        return search;
+    }
+
     private void registerESSearches(SearchRegistry reg) {
         // Elastic based searches
         DataTypeInfo geneType = DataTypeInfo.fromResource("/datatypes/genes_datatype_info.json");
         DataTypeInfo genomeType = DataTypeInfo.fromResource("/datatypes/genomes_datatype_info.json");
         DataTypeInfo transcriptType = DataTypeInfo.fromResource("/datatypes/transcripts_datatype_info.json");
 
-        Search esGenomeSearch = new ESSearch(getESClient(), genomesIndex, ESSearch.GENOME_ESTYPE, genomeType);
-        Search esGeneSearch = new ESSearch(getESClient(), genesIndex, ESSearch.GENE_ESTYPE, geneType);
+        Search esGenomeSearch;
+        Search esGeneSearch;
+        if (getESRestClient() != null) {
+            // fetch via binary REST responses
+            esGenomeSearch = new ESHttpSearch(getESClient(), getESRestClient(), genomesIndex, ESSearch.GENOME_ESTYPE,
+                    genomeType);
+            esGeneSearch = new ESHttpSearch(getESClient(), getESRestClient(), genesIndex, ESSearch.GENE_ESTYPE,
+                    geneType);
+        } else {
+            esGenomeSearch = new ESSearch(getESClient(), genomesIndex, ESSearch.GENOME_ESTYPE, genomeType);
+            esGeneSearch = new ESSearch(getESClient(), genesIndex, ESSearch.GENE_ESTYPE, geneType);
+        }
         Search esTranscriptSearch = new ESSearchFlatten(getESClient(), genesIndex, ESSearch.GENE_ESTYPE, "transcripts",
                 "genes", transcriptType);
 
@@ -201,6 +330,18 @@ public class EndpointSearchProvider {
         return genomeSearch;
     }
 
+    /**
+     * @return cache of genome metadata shared by searches needing genome
+     *         lookups
+     */
+    public GenomeMetadataCache getGenomeCache() {
+        if (genomeCache == null) {
+            genomeCache = new GenomeMetadataCache(getRegistry().getSearch(SearchType.GENOMES), genomeCacheRefresh,
+                    genomeCacheNegativeTtl);
+        }
+        return genomeCache;
+    }
+
     public void setGeneSearch(Search search) {
         this.geneSearch = search;
     }
@@ -13,11 +13,11 @@
  */
 package org.ensembl.gti.genesearch.services;
 
-import org.ensembl.genesearch.Search;
 import org.ensembl.genesearch.SearchType;
 import org.ensembl.genesearch.impl.EnsemblVariantSearch;
 import org.ensembl.genesearch.impl.SearchRegistry;
 import org.ensembl.genesearch.info.DataTypeInfo;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
@@ -31,6 +31,9 @@ import org.springframework.stereotype.Component;
 @Profile("ensembl_rest")
 public class EnsemblRESTVariationEndpointProvider extends EndpointSearchProvider {
 
+    @Value("${rest.variant.window_features:" + EnsemblVariantSearch.DEFAULT_WINDOW_FEATURES + "}")
+    private int windowFeatures;
+
     public EnsemblRESTVariationEndpointProvider() {
         super();
     }
@@ -39,7 +42,9 @@ public class EnsemblRESTVariationEndpointProvider extends EndpointSearchProvider
     protected void registerSearches(SearchRegistry reg) {
         super.registerSearches(reg);
         DataTypeInfo variantType = DataTypeInfo.fromResource("/datatypes/variants_datatype_info.json");
-        Search variantSearch = new EnsemblVariantSearch(ensRestUrl, variantType);
+        EnsemblVariantSearch variantSearch = new EnsemblVariantSearch(ensRestUrl, variantType, getHttpClient());
+        variantSearch.setFetchParallelism(restFetchParallelism);
+        variantSearch.setWindowFeatures(windowFeatures);
         reg.registerSearch(SearchType.VARIANTS, variantSearch);
     }
 
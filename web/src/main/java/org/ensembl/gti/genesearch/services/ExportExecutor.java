@@ -0,0 +1,123 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.ensembl.gti.genesearch.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.ensembl.gti.genesearch.services.errors.ErrorDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Bounded executor for long-running exports, used by {@link FetchService} so
+ * that large fetches do not tie up the request threads that also serve
+ * interactive queries. Responses are resumed on an export thread, so the
+ * entity is streamed from that thread and a slow client blocks only its own
+ * export. Once all threads are busy and the queue is full, further exports
+ * are rejected with 503 Service Unavailable.
+ *
+ * @author dstaines
+ *
+ */
+@Component
+public class ExportExecutor {
+
+	/**
+	 * seconds clients are asked to wait before retrying a rejected export
+	 */
+	public static final int RETRY_AFTER = 30;
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * @param threads
+	 *            maximum number of concurrent exports
+	 * @param queueDepth
+	 *            maximum number of exports waiting for a thread
+	 */
+	@Autowired
+	public ExportExecutor(@Value("${export.threads:4}") int threads, @Value("${export.queue:16}") int queueDepth) {
+		log.info("Creating export executor with " + threads + " threads and queue of " + queueDepth);
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueDepth),
+				new ThreadFactoryBuilder().setNameFormat("export-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * Generate a response on an export thread and resume the supplied
+	 * asynchronous response with it
+	 *
+	 * @param asyncResponse
+	 *            suspended response
+	 * @param task
+	 *            generates the response to write
+	 * @return true if the export was accepted
+	 */
+	public boolean submit(AsyncResponse asyncResponse, Supplier<Response> task) {
+		try {
+			executor.execute(() -> {
+				try {
+					asyncResponse.resume(task.get());
+				} catch (RuntimeException e) {
+					asyncResponse.resume(e);
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			log.warn("Rejecting export: " + executor.getActiveCount() + " running, " + executor.getQueue().size()
+					+ " queued");
+			Status status = Status.SERVICE_UNAVAILABLE;
+			asyncResponse.resume(Response.status(status).header("Retry-After", RETRY_AFTER)
+					.entity(new ErrorDetails(status, e)).type(MediaType.APPLICATION_JSON).build());
+			return false;
+		}
+	}
+
+	/**
+	 * @return number of exports currently running
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return number of exports waiting for a thread
+	 */
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
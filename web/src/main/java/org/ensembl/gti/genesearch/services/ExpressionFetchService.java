@@ -30,10 +30,11 @@ public class ExpressionFetchService extends FetchService {
 
 	/**
 	 * @param provider
+	 * @param exportExecutor
 	 */
 	@Autowired
-	public ExpressionFetchService(EndpointSearchProvider provider) {
-		super(provider);
+	public ExpressionFetchService(EndpointSearchProvider provider, ExportExecutor exportExecutor) {
+		super(provider, exportExecutor);
 	}
 
 	/*
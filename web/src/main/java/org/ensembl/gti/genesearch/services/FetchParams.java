@@ -57,6 +57,8 @@ public class FetchParams {
     private String fileName = "genes";
     private Map<String, Object> queries = Collections.emptyMap();
     private boolean array = false;
+    private String session;
+    private boolean header = false;
 
     public String getAccept() {
         return accept;
@@ -160,4 +162,37 @@ public class FetchParams {
         this.array = array;
     }
 
+    /**
+     * @return optional client session identifier, used to route successive
+     *         requests from the same client to the same backend replicas
+     */
+    public String getSession() {
+        return session;
+    }
+
+    /**
+     * @return true if line-based output formats should start with a header
+     *         line describing the fields
+     */
+    public boolean isHeader() {
+        return header;
+    }
+
+    @QueryParam("header")
+    @DefaultValue("false")
+    public void setHeader(String header) {
+        this.header = Boolean.valueOf(header);
+    }
+
+    @JsonProperty("header")
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    @QueryParam("session")
+    @JsonProperty("session")
+    public void setSession(String session) {
+        this.session = session;
+    }
+
 }
\ No newline at end of file
@@ -17,9 +17,12 @@ package org.ensembl.gti.genesearch.services;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -31,18 +34,25 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.commons.lang3.StringUtils;
+import org.ensembl.genesearch.SearchContext;
+import org.ensembl.genesearch.impl.EbiscVariantSearch;
 import org.ensembl.genesearch.info.FieldInfo;
+import org.ensembl.gti.genesearch.services.converter.DelimitedWriter;
+import org.ensembl.gti.genesearch.services.converter.DelimitedWriter.Dialect;
+import org.ensembl.gti.genesearch.services.converter.MapArrowWriter;
 import org.ensembl.gti.genesearch.services.converter.MapXmlWriter;
 import org.glassfish.jersey.server.JSONP;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.RequestBody;
 
 import com.fasterxml.jackson.core.JsonEncoding;
@@ -52,7 +62,8 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
- * Base service for /fetch
+ * Base service for /fetch. Fetches are carried out asynchronously on the
+ * bounded {@link ExportExecutor} rather than on the request thread.
  * 
  * @author dstaines
  *
@@ -63,35 +74,119 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @Consumes(MediaType.APPLICATION_JSON)
 public abstract class FetchService extends SearchBasedService {
 
-	public FetchService(EndpointSearchProvider provider) {
+	/**
+	 * number of records written between flushes of streamed output (NDJSON and
+	 * XML)
+	 */
+	public static final int FLUSH_INTERVAL = 1000;
+
+	private final ExportExecutor exportExecutor;
+
+	@Value("${export.arrow.batch_size:" + MapArrowWriter.DEFAULT_BATCH_SIZE + "}")
+	protected int arrowBatchSize = MapArrowWriter.DEFAULT_BATCH_SIZE;
+
+	/**
+	 * seconds after which an export is cancelled (0 for no limit)
+	 */
+	@Value("${export.timeout:3600}")
+	protected long exportTimeout = 3600;
+
+	public FetchService(EndpointSearchProvider provider, ExportExecutor exportExecutor) {
 		super(provider);
+		this.exportExecutor = exportExecutor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.ensembl.gti.genesearch.services.SearchBasedService#openContext(org.
+	 * ensembl.gti.genesearch.services.FetchParams)
+	 */
+	@Override
+	protected SearchContext openContext(FetchParams params) {
+		SearchContext context = super.openContext(params);
+		if (exportTimeout > 0) {
+			context.cancelAfter(exportTimeout, TimeUnit.SECONDS);
+		}
+		return context;
+	}
+
+	/**
+	 * Cancel the search in progress after a failure to write results (usually
+	 * because the client has disconnected), so that backend work in flight
+	 * stops at the next page or batch
+	 * 
+	 * @param e
+	 *            cause of failure
+	 * @return exception to throw
+	 */
+	protected WebApplicationException writeFailed(Exception e) {
+		SearchContext.current().cancel("could not write results: " + e.getMessage());
+		return new WebApplicationException("Could not write fetch results", e);
 	}
-	
+
 	@GET
 	@JSONP
-	public Response get(@BeanParam FetchParams params) {
+	public void get(@BeanParam FetchParams params, @Suspended AsyncResponse asyncResponse) {
 		if (StringUtils.isEmpty(params.getAccept())) {
 			params.setAccept(MediaType.APPLICATION_JSON);
 		}
-		return fetchByAccept(params);
+		fetchAsync(params, asyncResponse);
 	}
 
 	@GET
 	@Produces(MediaType.APPLICATION_XML + ";qs=0.1")
-	public Response getAsXml(@BeanParam FetchParams params) {
+	public void getAsXml(@BeanParam FetchParams params, @Suspended AsyncResponse asyncResponse) {
 		if (StringUtils.isEmpty(params.getAccept())) {
 			params.setAccept(MediaType.APPLICATION_XML);
 		}
-		return fetchByAccept(params);
+		fetchAsync(params, asyncResponse);
 	}
 
 	@GET
-	@Produces({ Application.APPLICATION_EXCEL + ";qs=0.1", Application.TEXT_CSV + ";qs=0.1" })
-	public Response getAsCsv(@BeanParam FetchParams params) {
+	@Produces(Application.APPLICATION_NDJSON + ";qs=0.1")
+	public void getAsNdjson(@BeanParam FetchParams params, @Suspended AsyncResponse asyncResponse) {
+		if (StringUtils.isEmpty(params.getAccept())) {
+			params.setAccept(Application.APPLICATION_NDJSON);
+		}
+		fetchAsync(params, asyncResponse);
+	}
+
+	@GET
+	@Produces(Application.APPLICATION_ARROW_STREAM + ";qs=0.1")
+	public void getAsArrow(@BeanParam FetchParams params, @Suspended AsyncResponse asyncResponse) {
+		if (StringUtils.isEmpty(params.getAccept())) {
+			params.setAccept(Application.APPLICATION_ARROW_STREAM);
+		}
+		fetchAsync(params, asyncResponse);
+	}
+
+	@GET
+	@Produces(Application.APPLICATION_EXCEL + ";qs=0.1")
+	public void getAsExcel(@BeanParam FetchParams params, @Suspended AsyncResponse asyncResponse) {
 		if (StringUtils.isEmpty(params.getAccept())) {
 			params.setAccept(Application.APPLICATION_EXCEL);
 		}
-		return fetchByAccept(params);
+		fetchAsync(params, asyncResponse);
+	}
+
+	@GET
+	@Produces(Application.TEXT_CSV + ";qs=0.1")
+	public void getAsCsv(@BeanParam FetchParams params, @Suspended AsyncResponse asyncResponse) {
+		if (StringUtils.isEmpty(params.getAccept())) {
+			params.setAccept(Application.TEXT_CSV);
+		}
+		fetchAsync(params, asyncResponse);
+	}
+
+	@GET
+	@Produces(Application.TEXT_TSV + ";qs=0.1")
+	public void getAsTsv(@BeanParam FetchParams params, @Suspended AsyncResponse asyncResponse) {
+		if (StringUtils.isEmpty(params.getAccept())) {
+			params.setAccept(Application.TEXT_TSV);
+		}
+		fetchAsync(params, asyncResponse);
 	}
 
 	@POST
@@ -99,63 +194,134 @@ public abstract class FetchService extends SearchBasedService {
 	@Consumes({ MediaType.APPLICATION_JSON })
 	@Produces({ MediaType.APPLICATION_JSON + ";qs=1", Application.APPLICATION_X_JAVASCRIPT,
 			MediaType.TEXT_PLAIN + ";qs=0.1", MediaType.TEXT_HTML + ";qs=0.1" })
-	public Response post(@RequestBody FetchParams params) throws JsonParseException, JsonMappingException, IOException {
+	public void post(@RequestBody FetchParams params, @Suspended AsyncResponse asyncResponse) throws JsonParseException, JsonMappingException, IOException {
 		if (StringUtils.isEmpty(params.getAccept())) {
 			params.setAccept(MediaType.APPLICATION_JSON);
 		}
-		return fetchByAccept(params);
+		fetchAsync(params, asyncResponse);
 	}
 
 	@POST
 	@Consumes({ MediaType.APPLICATION_FORM_URLENCODED })
-	public Response postAsForm(@FormParam("accept") String accept, @FormParam("query") String query,
-			@FormParam("fields") String fields) {
+	public void postAsForm(@FormParam("accept") String accept, @FormParam("query") String query,
+			@FormParam("fields") String fields, @Suspended AsyncResponse asyncResponse) {
 		FetchParams params = new FetchParams();
 		params.setAccept(accept);
 		params.setQuery(query);
 		params.setFields(fields);
-		return fetchByAccept(params);
+		fetchAsync(params, asyncResponse);
 	}
 
 	@POST
 	@Produces(MediaType.APPLICATION_XML + ";qs=0.1")
 	@Consumes(MediaType.APPLICATION_XML)
-	public Response postAsXml(@BeanParam @RequestBody FetchParams params)
+	public void postAsXml(@BeanParam @RequestBody FetchParams params, @Suspended AsyncResponse asyncResponse)
 			throws JsonParseException, JsonMappingException, IOException {
 		if (StringUtils.isEmpty(params.getAccept())) {
 			params.setAccept(MediaType.APPLICATION_XML);
 		}
-		return fetchByAccept(params);
+		fetchAsync(params, asyncResponse);
+	}
+
+	@POST
+	@Produces(Application.APPLICATION_NDJSON + ";qs=0.1")
+	@Consumes({ MediaType.APPLICATION_JSON })
+	public void postAsNdjson(@BeanParam @RequestBody FetchParams params, @Suspended AsyncResponse asyncResponse)
+			throws JsonParseException, JsonMappingException, IOException {
+		if (StringUtils.isEmpty(params.getAccept())) {
+			params.setAccept(Application.APPLICATION_NDJSON);
+		}
+		fetchAsync(params, asyncResponse);
+	}
+
+	@POST
+	@Produces(Application.APPLICATION_ARROW_STREAM + ";qs=0.1")
+	@Consumes({ MediaType.APPLICATION_JSON })
+	public void postAsArrow(@BeanParam @RequestBody FetchParams params, @Suspended AsyncResponse asyncResponse)
+			throws JsonParseException, JsonMappingException, IOException {
+		if (StringUtils.isEmpty(params.getAccept())) {
+			params.setAccept(Application.APPLICATION_ARROW_STREAM);
+		}
+		fetchAsync(params, asyncResponse);
 	}
 
 	@POST
 	@Produces(Application.APPLICATION_EXCEL + ";qs=0.1")
 	@Consumes({ MediaType.APPLICATION_JSON })
-	public Response postAsCsv(@BeanParam @RequestBody FetchParams params)
+	public void postAsExcel(@BeanParam @RequestBody FetchParams params, @Suspended AsyncResponse asyncResponse)
 			throws JsonParseException, JsonMappingException, IOException {
 		if (StringUtils.isEmpty(params.getAccept())) {
-			params.setAccept(MediaType.APPLICATION_XML);
+			params.setAccept(Application.APPLICATION_EXCEL);
+		}
+		fetchAsync(params, asyncResponse);
+	}
+
+	@POST
+	@Produces(Application.TEXT_CSV + ";qs=0.1")
+	@Consumes({ MediaType.APPLICATION_JSON })
+	public void postAsCsv(@BeanParam @RequestBody FetchParams params, @Suspended AsyncResponse asyncResponse)
+			throws JsonParseException, JsonMappingException, IOException {
+		if (StringUtils.isEmpty(params.getAccept())) {
+			params.setAccept(Application.TEXT_CSV);
+		}
+		fetchAsync(params, asyncResponse);
+	}
+
+	@POST
+	@Produces(Application.TEXT_TSV + ";qs=0.1")
+	@Consumes({ MediaType.APPLICATION_JSON })
+	public void postAsTsv(@BeanParam @RequestBody FetchParams params, @Suspended AsyncResponse asyncResponse)
+			throws JsonParseException, JsonMappingException, IOException {
+		if (StringUtils.isEmpty(params.getAccept())) {
+			params.setAccept(Application.TEXT_TSV);
 		}
-		return fetchByAccept(params);
+		fetchAsync(params, asyncResponse);
+	}
+
+	/**
+	 * Carry out a fetch on the export executor, resuming the supplied response
+	 * once complete
+	 * 
+	 * @param params
+	 * @param asyncResponse
+	 */
+	protected void fetchAsync(FetchParams params, AsyncResponse asyncResponse) {
+		exportExecutor.submit(asyncResponse, () -> fetchByAccept(params));
 	}
 
 	public Response fetchByAccept(FetchParams params) {
 		Response response;
+		assertSampleHeadersSupported(params);
 		switch (params.getAccept()) {
 		case MediaType.APPLICATION_JSON:
 		case Application.APPLICATION_X_JAVASCRIPT: {
 			response = fetchAsJson(params);
 			break;
 		}
+		case Application.APPLICATION_NDJSON: {
+			response = fetchAsNdjson(params);
+			break;
+		}
+		case Application.APPLICATION_ARROW_STREAM: {
+			response = fetchAsArrow(params);
+			break;
+		}
 		case MediaType.APPLICATION_XML: {
 			response = fetchAsXml(params);
 			break;
 		}
-		case Application.APPLICATION_EXCEL:
+		case Application.APPLICATION_EXCEL: {
+			response = fetchAsExcel(params);
+			break;
+		}
 		case Application.TEXT_CSV: {
 			response = fetchAsCsv(params);
 			break;
 		}
+		case Application.TEXT_TSV: {
+			response = fetchAsTsv(params);
+			break;
+		}
 		default: {
 			throw new WebApplicationException("Cannot provide content of type " + params.getAccept(),
 					Response.Status.BAD_REQUEST);
@@ -164,6 +330,39 @@ public abstract class FetchService extends SearchBasedService {
 		return response;
 	}
 
+	/**
+	 * Sample metadata in header mode is written as extra records with
+	 * different fields to the results, which would corrupt formats with fixed
+	 * columns
+	 * 
+	 * @param params
+	 * @throws WebApplicationException
+	 *             if header mode is requested for a columnar format
+	 */
+	protected void assertSampleHeadersSupported(FetchParams params) {
+		Object mode = params.getQueries().get(EbiscVariantSearch.SAMPLE_METADATA);
+		if (!(mode instanceof Collection ? ((Collection<?>) mode).contains(EbiscVariantSearch.HEADER)
+				: EbiscVariantSearch.HEADER.equals(mode))) {
+			return;
+		}
+		boolean columnar;
+		switch (params.getAccept()) {
+		case Application.APPLICATION_ARROW_STREAM:
+		case Application.APPLICATION_EXCEL:
+		case Application.TEXT_CSV:
+		case Application.TEXT_TSV:
+			columnar = true;
+			break;
+		default:
+			columnar = params.isArray();
+		}
+		if (columnar) {
+			throw new WebApplicationException(EbiscVariantSearch.SAMPLE_METADATA + "=" + EbiscVariantSearch.HEADER
+					+ " cannot be used with " + (params.isArray() ? "array" : params.getAccept()) + " output",
+					Response.Status.BAD_REQUEST);
+		}
+	}
+
 	public Response fetchAsJson(FetchParams params) {
 		log.info("fetch to JSON:" + params.toString());
 		StreamingOutput stream = new StreamingOutput() {
@@ -186,7 +385,7 @@ public abstract class FetchService extends SearchBasedService {
 							}
 							jg.writeEndArray();
 						} catch (IOException e) {
-							throw new WebApplicationException("Could not write fetch results", e);
+							throw writeFailed(e);
 						}
 					};
 
@@ -195,11 +394,13 @@ public abstract class FetchService extends SearchBasedService {
 						try {
 							jg.writeObject(t);
 						} catch (IOException e) {
-							throw new WebApplicationException("Could not write fetch results", e);
+							throw writeFailed(e);
 						}
 					};
 				}
-				getSearch().fetch(consumer, parseQuery(params.getQueries()), params.getFields());
+				try (SearchContext context = openContext(params)) {
+					getSearch().fetch(consumer, parseQuery(params.getQueries()), params.getFields());
+				}
 				jg.writeEndArray();
 				jg.writeEndObject();
 				jg.close();
@@ -210,6 +411,92 @@ public abstract class FetchService extends SearchBasedService {
 				.header("Content-Disposition", "attachment; filename=" + params.getFileName() + ".json").build();
 	}
 
+	/**
+	 * Write results as newline-delimited JSON, one record per line, optionally
+	 * preceded by a header line containing the fields. Output is flushed every
+	 * {@link #FLUSH_INTERVAL} records so clients can process it as it
+	 * arrives.
+	 * 
+	 * @param params
+	 * @return response
+	 */
+	public Response fetchAsNdjson(FetchParams params) {
+		log.info("fetch to NDJSON:" + params.toString());
+		StreamingOutput stream = new StreamingOutput() {
+
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				JsonGenerator jg = new ObjectMapper().getFactory().createGenerator(output, JsonEncoding.UTF8);
+				jg.setRootValueSeparator(null);
+				List<FieldInfo> fieldInfo = getSearch().getFieldInfo(params.getFields());
+				if (params.isHeader()) {
+					jg.writeStartObject();
+					jg.writeObjectField("fields", fieldInfo);
+					jg.writeEndObject();
+					jg.writeRaw('\n');
+				}
+				AtomicInteger n = new AtomicInteger();
+				Consumer<Map<String, Object>> consumer = t -> {
+					try {
+						if (params.isArray()) {
+							jg.writeStartArray();
+							for (FieldInfo f : fieldInfo) {
+								jg.writeObject(t.get(f.getName()));
+							}
+							jg.writeEndArray();
+						} else {
+							jg.writeObject(t);
+						}
+						jg.writeRaw('\n');
+						if (n.incrementAndGet() % FLUSH_INTERVAL == 0) {
+							jg.flush();
+						}
+					} catch (IOException e) {
+						throw writeFailed(e);
+					}
+				};
+				try (SearchContext context = openContext(params)) {
+					getSearch().fetch(consumer, parseQuery(params.getQueries()), params.getFields());
+				}
+				jg.close();
+			}
+
+		};
+		return Response.ok().entity(stream).type(Application.APPLICATION_NDJSON)
+				.header("Content-Disposition", "attachment; filename=" + params.getFileName() + ".ndjson").build();
+	}
+
+	/**
+	 * Write results as an Apache Arrow IPC stream, buffering rows into record
+	 * batches of {@link #arrowBatchSize}
+	 * 
+	 * @param params
+	 * @return response
+	 */
+	public Response fetchAsArrow(FetchParams params) {
+		log.info("fetch to Arrow:" + params.toString());
+		StreamingOutput stream = new StreamingOutput() {
+
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				List<FieldInfo> fieldInfo = getSearch().getFieldInfo(params.getFields());
+				try (MapArrowWriter writer = new MapArrowWriter(fieldInfo, output, arrowBatchSize);
+						SearchContext context = openContext(params)) {
+					getSearch().fetch(t -> {
+						try {
+							writer.write(t);
+						} catch (IOException e) {
+							throw writeFailed(e);
+						}
+					}, parseQuery(params.getQueries()), params.getFields());
+				}
+			}
+
+		};
+		return Response.ok().entity(stream).type(Application.APPLICATION_ARROW_STREAM)
+				.header("Content-Disposition", "attachment; filename=" + params.getFileName() + ".arrows").build();
+	}
+
 	public Response fetchAsXml(FetchParams params) {
 		String name = getSearch().getDataType().getName().getObjectName();
 		log.info("fetch to XML:" + params.toString());
@@ -217,7 +504,7 @@ public abstract class FetchService extends SearchBasedService {
 			@Override
 			public void write(OutputStream output) throws IOException, WebApplicationException {
 				try {
-					XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(output);
+					XMLStreamWriter xsw = MapXmlWriter.createWriter(output);
 					xsw.writeStartDocument();
 					xsw.writeStartElement(name + "s");
 					xsw.writeStartElement("fields");
@@ -234,17 +521,24 @@ public abstract class FetchService extends SearchBasedService {
 					}
 					xsw.writeEndElement();
 					xsw.writeStartElement("results");
-					MapXmlWriter writer = new MapXmlWriter(xsw);
-					getSearch().fetch(t -> {
-							try {
-								writer.writeData(name, t);
-							} catch (XMLStreamException e) {
-								throw new WebApplicationException(e);
-							}
-					}, parseQuery(params.getQueries()), params.getFields());
+					MapXmlWriter writer = new MapXmlWriter(xsw, getSearch().getDataType());
+					AtomicInteger n = new AtomicInteger();
+					try (SearchContext context = openContext(params)) {
+						getSearch().fetch(t -> {
+								try {
+									writer.writeData(name, t);
+									if (n.incrementAndGet() % FLUSH_INTERVAL == 0) {
+										xsw.flush();
+									}
+								} catch (XMLStreamException e) {
+									throw writeFailed(e);
+								}
+						}, parseQuery(params.getQueries()), params.getFields());
+					}
 					xsw.writeEndElement();
 					xsw.writeEndElement();
 					xsw.writeEndDocument();
+					xsw.flush();
 				} catch (XMLStreamException | FactoryConfigurationError e) {
 					throw new WebApplicationException(e);
 				}
@@ -255,30 +549,51 @@ public abstract class FetchService extends SearchBasedService {
 	}
 
 	public Response fetchAsCsv(FetchParams params) {
-		log.info("fetch to CSV:" + params.toString());
+		return fetchAsDelimited(params, Dialect.CSV, Application.TEXT_CSV, "csv");
+	}
+
+	public Response fetchAsExcel(FetchParams params) {
+		return fetchAsDelimited(params, Dialect.EXCEL, Application.APPLICATION_EXCEL, "csv");
+	}
+
+	public Response fetchAsTsv(FetchParams params) {
+		return fetchAsDelimited(params, Dialect.TSV, Application.TEXT_TSV, "tsv");
+	}
+
+	/**
+	 * Write results as delimited text with a header row
+	 * 
+	 * @param params
+	 * @param dialect
+	 *            variant of delimited text to write
+	 * @param type
+	 *            content type of response
+	 * @param extension
+	 *            extension for attachment name
+	 * @return response
+	 */
+	protected Response fetchAsDelimited(FetchParams params, Dialect dialect, String type, String extension) {
+		log.info("fetch to " + dialect + ":" + params.toString());
 		StreamingOutput stream = new StreamingOutput() {
 			@Override
 			public void write(OutputStream os) throws IOException, WebApplicationException {
-
-				Writer writer = new OutputStreamWriter(os);
 				List<String> fieldNames = getSearch().getFieldInfo(params.getFields()).stream().map(i -> i.getName())
 						.collect(Collectors.toList());
-				writer.write(StringUtils.join(fieldNames, ','));
-				writer.write('\n');
-				getSearch().fetch(t -> {
+				try (DelimitedWriter writer = new DelimitedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8),
+						dialect); SearchContext context = openContext(params)) {
+					writer.writeHeader(fieldNames);
+					getSearch().fetch(t -> {
 						try {
-							writer.write(fieldNames.stream().map(e -> String.valueOf(t.get(e)))
-									.collect(Collectors.joining(",")));
-							writer.write('\n');
+							writer.writeRow(fieldNames, t);
 						} catch (IOException e) {
-							throw new WebApplicationException(e);
-					}
-				}, parseQuery(params.getQueries()), params.getFields());
-				writer.close();
+							throw writeFailed(e);
+						}
+					}, parseQuery(params.getQueries()), params.getFields());
+				}
 			}
 		};
-		return Response.ok().entity(stream).type(Application.TEXT_CSV)
-				.header("Content-Disposition", "attachment; filename=" + params.getFileName() + ".csv").build();
+		return Response.ok().entity(stream).type(type).header("Content-Disposition",
+				"attachment; filename=" + params.getFileName() + "." + extension).build();
 	}
 
 }
\ No newline at end of file
@@ -30,10 +30,11 @@ public class GeneFetchService extends FetchService {
 
 	/**
 	 * @param provider
+	 * @param exportExecutor
 	 */
 	@Autowired
-	public GeneFetchService(EndpointSearchProvider provider) {
-		super(provider);
+	public GeneFetchService(EndpointSearchProvider provider, ExportExecutor exportExecutor) {
+		super(provider, exportExecutor);
 	}
 
 	/*
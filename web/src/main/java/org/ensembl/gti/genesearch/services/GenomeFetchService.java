@@ -30,10 +30,11 @@ public class GenomeFetchService extends FetchService {
 
 	/**
 	 * @param provider
+	 * @param exportExecutor
 	 */
 	@Autowired
-	public GenomeFetchService(EndpointSearchProvider provider) {
-		super(provider);
+	public GenomeFetchService(EndpointSearchProvider provider, ExportExecutor exportExecutor) {
+		super(provider, exportExecutor);
 	}
 
 	/*
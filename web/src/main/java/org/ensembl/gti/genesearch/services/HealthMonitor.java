@@ -0,0 +1,250 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.ensembl.genesearch.Search;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Monitor that checks whether searches are up in the background, so that
+ * health endpoints return a cached status immediately rather than waiting on
+ * slow backends. Each search is probed every <code>health.interval</code>
+ * seconds on its own thread, so backends are probed in parallel and a hung
+ * backend only affects its own status. A probe that takes longer than
+ * <code>health.timeout</code> milliseconds marks its search as down, and a
+ * status older than <code>health.max_age</code> seconds is treated as down.
+ * <p>
+ * Searches are registered by {@link EndpointSearchProvider} as soon as they
+ * are created, with every search probed at once in parallel. Requests for the
+ * status of a search never wait for a probe: a search that has not yet been
+ * probed is reported as unknown, and a search that was not registered is
+ * registered on its first request.
+ *
+ * @author dstaines
+ *
+ */
+@Component
+public class HealthMonitor {
+
+	/**
+	 * Result of probing a search
+	 */
+	public static final class Status {
+		public static final String UP = "up";
+		public static final String DOWN = "down";
+		public static final String TIMEOUT = "timeout";
+		public static final String ERROR = "error";
+		public static final String STALE = "stale";
+		public static final String UNKNOWN = "unknown";
+
+		private final String state;
+		private final long latency;
+		private final long checked;
+
+		private Status(String state, long latency, long checked) {
+			this.state = state;
+			this.latency = latency;
+			this.checked = checked;
+		}
+
+		public boolean isUp() {
+			return UP.equals(state);
+		}
+
+		public String getState() {
+			return state;
+		}
+
+		/**
+		 * @return milliseconds taken by the probe
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return details of the status for reporting
+		 */
+		public Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("status", state);
+			map.put("latency_ms", latency);
+			map.put("age_ms", checked == 0 ? -1 : System.currentTimeMillis() - checked);
+			return map;
+		}
+	}
+
+	private static final Status UNKNOWN = new Status(Status.UNKNOWN, 0, 0);
+
+	/**
+	 * Background checks for a single search
+	 */
+	private final class Probe {
+		private final Search search;
+		private volatile Status status = UNKNOWN;
+		private Future<?> running;
+		private long started;
+
+		private Probe(Search search) {
+			this.search = search;
+		}
+
+		private synchronized void start() {
+			if (running != null && !running.isDone()) {
+				// still waiting on the previous probe, which has been or will
+				// be marked as timed out
+				return;
+			}
+			long start = System.currentTimeMillis();
+			started = start;
+			running = probes.submit(() -> {
+				String state;
+				try {
+					state = search.up() ? Status.UP : Status.DOWN;
+				} catch (RuntimeException e) {
+					log.warn("Health check failed for " + search.getClass().getSimpleName(), e);
+					state = Status.ERROR;
+				}
+				long now = System.currentTimeMillis();
+				// a late result replaces a timeout, as it is more recent
+				status = new Status(state, now - start, now);
+			});
+			scheduler.schedule(() -> checkTimeout(start), timeout, TimeUnit.MILLISECONDS);
+		}
+
+		private synchronized void checkTimeout(long start) {
+			if (started == start && !running.isDone()) {
+				long now = System.currentTimeMillis();
+				log.warn("Health check for " + search.getClass().getSimpleName() + " timed out after "
+						+ (now - start) + " ms");
+				status = new Status(Status.TIMEOUT, now - start, now);
+			}
+		}
+
+		private Status getStatus() {
+			Status current = status;
+			if (current.checked > 0 && System.currentTimeMillis() - current.checked > maxAge) {
+				return new Status(Status.STALE, current.latency, current.checked);
+			}
+			return current;
+		}
+	}
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+	private final Map<Search, Probe> searches = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService probes;
+	private final long timeout;
+	private final long maxAge;
+
+	/**
+	 * @param interval
+	 *            seconds between probes of each search
+	 * @param timeout
+	 *            milliseconds after which a probe is considered to have failed
+	 * @param maxAge
+	 *            seconds after which a status is considered stale
+	 */
+	@Autowired
+	public HealthMonitor(@Value("${health.interval:10}") long interval, @Value("${health.timeout:2000}") long timeout,
+			@Value("${health.max_age:30}") long maxAge) {
+		this.timeout = timeout;
+		this.maxAge = TimeUnit.SECONDS.toMillis(maxAge);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("health-scheduler").setDaemon(true).build());
+		// at most one probe runs per search
+		this.probes = Executors.newCachedThreadPool(
+				new ThreadFactoryBuilder().setNameFormat("health-probe-%d").setDaemon(true).build());
+		scheduler.scheduleWithFixedDelay(this::probeAll, interval, interval, TimeUnit.SECONDS);
+	}
+
+	private void probeAll() {
+		for (Probe probe : searches.values()) {
+			try {
+				probe.start();
+			} catch (RuntimeException e) {
+				log.warn("Could not start health check", e);
+			}
+		}
+	}
+
+	/**
+	 * Start monitoring the supplied search, probing it straight away if it
+	 * was not already registered
+	 *
+	 * @param search
+	 * @return probe for the search
+	 */
+	private Probe register(Search search) {
+		Probe probe = searches.get(search);
+		if (probe == null) {
+			Probe newProbe = new Probe(search);
+			probe = searches.putIfAbsent(search, newProbe);
+			if (probe == null) {
+				probe = newProbe;
+				probe.start();
+			}
+		}
+		return probe;
+	}
+
+	/**
+	 * Start monitoring the supplied searches, probing any not already
+	 * registered in parallel
+	 *
+	 * @param searches
+	 */
+	public void registerAll(Collection<Search> searches) {
+		for (Search search : searches) {
+			register(search);
+		}
+	}
+
+	/**
+	 * Get the latest status of the supplied search without waiting, starting
+	 * to monitor it if it was not registered
+	 *
+	 * @param search
+	 * @return cached status, which is unknown until the first probe completes
+	 *         or times out
+	 */
+	public Status getStatus(Search search) {
+		return register(search).getStatus();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdownNow();
+		probes.shutdownNow();
+	}
+
+}
@@ -14,12 +14,17 @@
 
 package org.ensembl.gti.genesearch.services;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 
 import org.ensembl.genesearch.Search;
 import org.ensembl.genesearch.SearchType;
+import org.ensembl.gti.genesearch.services.HealthMonitor.Status;
+import org.ensembl.gti.genesearch.services.filters.CompressingOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,7 +32,8 @@ import org.springframework.boot.actuate.health.Health;
 import org.springframework.stereotype.Service;
 
 /**
- * Endpoint to check if services are running
+ * Endpoint to check if services are running, using the status cached by
+ * {@link HealthMonitor}
  * 
  * @author dstaines
  *
@@ -38,14 +44,18 @@ public class HealthService {
 
     final Logger log = LoggerFactory.getLogger(this.getClass());
     protected final EndpointSearchProvider provider;
+    protected final HealthMonitor monitor;
 
     /**
      * @param provider
      *            provider for retrieving search
+     * @param monitor
+     *            monitor providing cached search status
      */
     @Autowired
-    public HealthService(EndpointSearchProvider provider) {
+    public HealthService(EndpointSearchProvider provider, HealthMonitor monitor) {
         this.provider = provider;
+        this.monitor = monitor;
     }
 
     @GET
@@ -56,10 +66,9 @@ public class HealthService {
         for (SearchType type : SearchType.values()) {
             Search search = provider.getRegistry().getSearch(type);
             if (search != null) {
-                if (search.up()) {
-                    builder.withDetail(type.name(), "up");
-                } else {
-                    builder.withDetail(type.name(), "down");
+                Status status = monitor.getStatus(search);
+                builder.withDetail(type.name(), status.toMap());
+                if (!status.isUp()) {
                     ok = false;
                 }
             } else {
@@ -76,4 +85,26 @@ public class HealthService {
         return builder.build();
     }
 
+    /**
+     * @return backend statistics (such as request cache hits) for each search
+     *         type, plus response compression and shared HTTP connection
+     *         pool statistics
+     */
+    @GET
+    @Path("stats")
+    @Produces("application/json")
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (SearchType type : SearchType.values()) {
+            Search search = provider.getRegistry().getSearch(type);
+            if (search != null) {
+                stats.put(type.name(), search.getStats());
+            }
+        }
+        stats.put("gzip", CompressingOutputStream.GZIP_STATS.toMap());
+        stats.put("deflate", CompressingOutputStream.DEFLATE_STATS.toMap());
+        stats.put("http", provider.getHttpClient().getStats());
+        return stats;
+    }
+
 }
@@ -0,0 +1,42 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.ensembl.gti.genesearch.services;
+
+import org.ensembl.genesearch.clients.SharedHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the pooled HTTP client shared by all REST-based searches
+ * 
+ * @author dstaines
+ *
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public SharedHttpClient sharedHttpClient(
+            @Value("${http.max_total:" + SharedHttpClient.DEFAULT_MAX_TOTAL + "}") int maxTotal,
+            @Value("${http.max_per_route:" + SharedHttpClient.DEFAULT_MAX_PER_ROUTE + "}") int maxPerRoute,
+            @Value("${http.connect_timeout:" + SharedHttpClient.DEFAULT_CONNECT_TIMEOUT + "}") int connectTimeout,
+            @Value("${http.read_timeout:" + SharedHttpClient.DEFAULT_READ_TIMEOUT + "}") int readTimeout,
+            @Value("${http.pool_timeout:" + SharedHttpClient.DEFAULT_POOL_TIMEOUT + "}") int poolTimeout,
+            @Value("${http.keep_alive:" + SharedHttpClient.DEFAULT_KEEP_ALIVE + "}") long keepAlive) {
+        return new SharedHttpClient(maxTotal, maxPerRoute, connectTimeout, readTimeout, poolTimeout, keepAlive);
+    }
+
+}
@@ -15,18 +15,24 @@ package org.ensembl.gti.genesearch.services;
 
 import java.util.Collection;
 
+import javax.annotation.PostConstruct;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import org.apache.commons.lang3.StringUtils;
 import org.ensembl.genesearch.info.DataTypeInfo;
 import org.ensembl.genesearch.info.FieldInfo;
 import org.ensembl.genesearch.info.FieldType;
+import org.ensembl.gti.genesearch.services.filters.Conditional;
 import org.glassfish.jersey.server.JSONP;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 @Produces({ MediaType.APPLICATION_JSON, Application.APPLICATION_X_JAVASCRIPT })
 public abstract class InfoService extends SearchBasedService {
 
@@ -35,13 +41,40 @@ public abstract class InfoService extends SearchBasedService {
     public static final String SORT = "sort";
     public static final String FACET = "facet";
 
+    private static final ObjectMapper mapper = new ObjectMapper();
+
     public InfoService(EndpointSearchProvider provider) {
 		super(provider);
 	}
 
+	private volatile byte[] info;
+
+	/**
+	 * Serialise the data type description once at startup, as it only changes
+	 * with a new deployment
+	 */
+	@PostConstruct
+	public void init() {
+		try {
+			info = mapper.writeValueAsBytes(getDataType());
+		} catch (JsonProcessingException | RuntimeException e) {
+			log.warn("Could not serialise data type info, will retry on request", e);
+		}
+	}
+
 	@Path("info")
 	@GET
 	@JSONP
+	@Conditional
+	public Response getInfo() throws JsonProcessingException {
+		byte[] bytes = info;
+		if (bytes == null) {
+			bytes = mapper.writeValueAsBytes(getDataType());
+			info = bytes;
+		}
+		return Response.ok(bytes).build();
+	}
+
 	public DataTypeInfo getDataType() {
 		return getSearch().getDataType();
 	}
@@ -49,6 +82,7 @@ public abstract class InfoService extends SearchBasedService {
 	@Path("info/fields")
 	@GET
 	@JSONP
+	@Conditional
 	public Collection<FieldInfo> getFields(@QueryParam("type") String type) {
 		DataTypeInfo dataType = getDataType();
 		if (!StringUtils.isEmpty(type)) {
@@ -17,11 +17,15 @@ package org.ensembl.gti.genesearch.services;
 import org.ensembl.gti.genesearch.services.errors.DefaultExceptionMapper;
 import org.ensembl.gti.genesearch.services.errors.NotFoundExceptionMapper;
 import org.ensembl.gti.genesearch.services.errors.QueryHandlerExceptionMapper;
+import org.ensembl.gti.genesearch.services.errors.SearchCancelledExceptionMapper;
+import org.ensembl.gti.genesearch.services.filters.AdmissionFilter;
 import org.ensembl.gti.genesearch.services.filters.CORSFilter;
+import org.ensembl.gti.genesearch.services.filters.CompressionEncoder;
+import org.ensembl.gti.genesearch.services.filters.ConditionalRequestFilter;
 import org.glassfish.jersey.jackson.JacksonFeature;
-import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.server.filter.EncodingFilter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
 /**
@@ -30,41 +34,53 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 public class JerseyConfig extends ResourceConfig {
-    public JerseyConfig() {
+    public JerseyConfig(@Value("${compression.level:" + CompressionEncoder.DEFAULT_LEVEL + "}") int compressionLevel,
+            @Value("${cache.max_age:600}") int cacheMaxAge, DataVersion dataVersion, AdmissionFilter admissionFilter) {
         register(HealthService.class);
         register(SwaggerService.class);
         register(GeneQueryService.class);
+        register(GeneCountService.class);
         register(GeneFetchService.class);
         register(GeneService.class);
         register(GeneInfoService.class);
         register(TranscriptQueryService.class);
+        register(TranscriptCountService.class);
         register(TranscriptFetchService.class);
         register(TranscriptService.class);
         register(TranscriptInfoService.class);
         register(GenomeQueryService.class);
+        register(GenomeCountService.class);
         register(GenomeFetchService.class);
         register(GenomeService.class);
         register(GenomeInfoService.class);
         register(VariantQueryService.class);
+        register(VariantCountService.class);
         register(VariantFetchService.class);
         register(VariantService.class);
         register(VariantInfoService.class);
         register(ExpressionQueryService.class);
+        register(ExpressionCountService.class);
         register(ExpressionFetchService.class);
         register(ExpressionService.class);
         register(ExpressionInfoService.class);
         register(CellLineQueryService.class);
+        register(CellLineCountService.class);
         register(CellLineFetchService.class);
         register(CellLineService.class);
         register(CellLineInfoService.class);
         register(JacksonFeature.class);
         register(InfoService.class);
         register(CORSFilter.class);
+        register(admissionFilter);
+        register(new ConditionalRequestFilter(dataVersion::getVersion, cacheMaxAge));
         //register(LoggingFilter.class);
         register(QueryHandlerExceptionMapper.class);
+        register(SearchCancelledExceptionMapper.class);
         register(NotFoundExceptionMapper.class);
         register(DefaultExceptionMapper.class);
-        EncodingFilter.enableFor(this, GZipEncoder.class);
+        register(EncodingFilter.class);
+        register(new CompressionEncoder.Gzip(compressionLevel));
+        register(new CompressionEncoder.Deflate(compressionLevel));
     }
 
 }
\ No newline at end of file
@@ -35,7 +35,6 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
@@ -44,6 +43,7 @@ import org.ensembl.genesearch.QueryOutput;
 import org.ensembl.genesearch.QueryResult;
 import org.ensembl.gti.genesearch.services.converter.MapXmlWriter;
 import org.ensembl.gti.genesearch.services.errors.ObjectNotFoundException;
+import org.ensembl.gti.genesearch.services.filters.Conditional;
 
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -67,6 +67,7 @@ public abstract class ObjectService extends SearchBasedService {
 	@Path("{id}")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
+	@Conditional
 	public Map<String, Object> get(@PathParam("id") String id, @QueryParam("fields") String fields) {
 		if (StringUtils.isEmpty(fields)) {
 			return getSearch().fetchById(id);
@@ -109,6 +110,7 @@ public abstract class ObjectService extends SearchBasedService {
 	@Path("/select")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
+	@Conditional
 	public QueryResult get(@QueryParam("query") String query, @DefaultValue("0") @QueryParam("offset") int offset,
 			@DefaultValue("10") @QueryParam("limit") int limit) {
 		return getSearch().select(query, offset, limit);
@@ -118,6 +120,7 @@ public abstract class ObjectService extends SearchBasedService {
 	@Path("{id}")
 	@GET
 	@Produces(MediaType.APPLICATION_XML + ";qs=0.1")
+	@Conditional
 	public Response getAsXml(@PathParam("id") String id) {
 		String name = getSearch().getDataType().getName().getObjectName();
 		try {
@@ -148,10 +151,10 @@ public abstract class ObjectService extends SearchBasedService {
 			public void write(OutputStream os) throws IOException, WebApplicationException {
 
 				try {
-					XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(os);
+					XMLStreamWriter xsw = MapXmlWriter.createWriter(os);
 					xsw.writeStartDocument();
 					xsw.writeStartElement(plName);
-					MapXmlWriter writer = new MapXmlWriter(xsw);
+					MapXmlWriter writer = new MapXmlWriter(xsw, getSearch().getDataType());
 					getSearch().fetchByIds(new Consumer<Map<String, Object>>() {
 						@Override
 						public void accept(Map<String, Object> t) {
@@ -165,6 +168,7 @@ public abstract class ObjectService extends SearchBasedService {
 					}, ids.toArray(new String[ids.size()]));
 					xsw.writeEndElement();
 					xsw.writeEndDocument();
+					xsw.flush();
 					xsw.close();
 				} catch (XMLStreamException | FactoryConfigurationError e) {
 					throw new WebApplicationException(e);
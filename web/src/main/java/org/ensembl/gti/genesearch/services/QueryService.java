@@ -24,6 +24,8 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 
 import org.ensembl.genesearch.QueryResult;
+import org.ensembl.genesearch.SearchContext;
+import org.ensembl.gti.genesearch.services.filters.Conditional;
 import org.glassfish.jersey.server.JSONP;
 import org.springframework.web.bind.annotation.RequestBody;
 
@@ -42,6 +44,7 @@ public abstract class QueryService extends SearchBasedService {
 
     @GET
     @JSONP
+    @Conditional
     // @ApiOperation(
     // value = "Get the state of the services",
     // notes = "Find out how the service and its components are holding up",
@@ -62,9 +65,11 @@ public abstract class QueryService extends SearchBasedService {
 
     public Map<String, Object> query(QueryParams params) {
         log.info("query:" + params);
-        QueryResult results = getSearch().query(parseQuery(params.getQueries()), params.getFields(), params.getFacets(),
-                params.getOffset(), params.getLimit(), params.getSorts());
-        return results.toMap(params.isArray());
+        try (SearchContext context = openContext(params)) {
+            QueryResult results = getSearch().query(parseQuery(params.getQueries()), params.getFields(),
+                    params.getFacets(), params.getOffset(), params.getLimit(), params.getSorts());
+            return results.toMap(params.isArray());
+        }
     }
 
 }
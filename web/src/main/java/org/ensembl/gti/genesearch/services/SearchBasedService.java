@@ -22,11 +22,14 @@ import javax.ws.rs.Path;
 
 import org.ensembl.genesearch.Query;
 import org.ensembl.genesearch.Search;
+import org.ensembl.genesearch.SearchContext;
 import org.ensembl.genesearch.query.DataTypeAwareQueryHandler;
 import org.ensembl.genesearch.query.QueryHandler;
+import org.ensembl.gti.genesearch.services.HealthMonitor.Status;
 import org.glassfish.jersey.server.JSONP;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.actuate.health.Health;
 
 /**
@@ -40,6 +43,8 @@ public abstract class SearchBasedService {
 	final Logger log = LoggerFactory.getLogger(this.getClass());
 	private QueryHandler handler;
 	protected final EndpointSearchProvider provider;
+	@Autowired(required = false)
+	protected HealthMonitor healthMonitor;
 
 	/**
 	 * @param provider
@@ -65,11 +70,26 @@ public abstract class SearchBasedService {
 		return getHandler().parseQuery(q);
 	}
 
+	/**
+	 * Open a {@link SearchContext} on the current thread for the supplied
+	 * request. This must be called on the thread that invokes {@link Search}
+	 * and closed once the search is complete.
+	 * 
+	 * @param params
+	 * @return open context
+	 */
+	protected SearchContext openContext(FetchParams params) {
+		return SearchContext.open(params.getSession());
+	}
+
 	@Path("health")
 	@GET
 	@JSONP
 	public Health health() {
-		if (getSearch().up()) {
+		if (healthMonitor != null) {
+			Status status = healthMonitor.getStatus(getSearch());
+			return (status.isUp() ? Health.up() : Health.down()).withDetails(status.toMap()).build();
+		} else if (getSearch().up()) {
 			return Health.up().build();
 		} else {
 			return Health.down().build();
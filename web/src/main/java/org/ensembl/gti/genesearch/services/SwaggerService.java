@@ -17,12 +17,14 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.annotation.PostConstruct;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.ensembl.gti.genesearch.services.filters.Conditional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -42,22 +44,46 @@ public class SwaggerService {
             "/transcripts_swagger.json", "/genomes_swagger.json", "/variants_swagger.json", "/expression_swagger.json",
             "/cell_lines_swagger.json" };
 
+    private volatile byte[] swagger;
+
+    /**
+     * Merge the API description once at startup, as it only changes with a
+     * new deployment
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            swagger = readSwagger();
+        } catch (IOException e) {
+            log.error("Could not read swagger JSON file", e);
+        }
+    }
+
     @GET
     @Produces("application/json")
+    @Conditional
     public Response swagger() {
-        try {
-
-            Map<String, Object> base = mapper.readValue(this.getClass().getResource("/swagger.json").openStream(), ref);
-            Map<String, Object> paths = new HashMap<>();
-            for (String pathRes : RES) {
-                // resources are endpoints keyed by path
-                paths.putAll(mapper.readValue(this.getClass().getResource(pathRes).openStream(), ref));
+        byte[] bytes = swagger;
+        if (bytes == null) {
+            try {
+                bytes = readSwagger();
+                swagger = bytes;
+            } catch (IOException e) {
+                log.error("Could not read swagger JSON file", e);
+                return Response.serverError().entity("Could not read API description").build();
             }
-            base.put("paths", paths);
-            return Response.ok().entity(base).type(MediaType.APPLICATION_JSON).build();
-        } catch (IOException e) {
-            log.error("Could not read swagger JSON file", e);
-            return Response.serverError().entity("Could not read API description").build();
         }
+        return Response.ok().entity(bytes).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    private byte[] readSwagger() throws IOException {
+        Map<String, Object> base = mapper.readValue(this.getClass().getResource("/swagger.json").openStream(), ref);
+        Map<String, Object> paths = new HashMap<>();
+        for (String pathRes : RES) {
+            // resources are endpoints keyed by path
+            paths.putAll(mapper.readValue(this.getClass().getResource(pathRes).openStream(), ref));
+        }
+        base.put("paths", paths);
+        return mapper.writeValueAsBytes(base);
     }
 }
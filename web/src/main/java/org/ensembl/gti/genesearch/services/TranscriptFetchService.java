@@ -30,10 +30,11 @@ public class TranscriptFetchService extends FetchService {
 
 	/**
 	 * @param provider
+	 * @param exportExecutor
 	 */
 	@Autowired
-	public TranscriptFetchService(EndpointSearchProvider provider) {
-		super(provider);
+	public TranscriptFetchService(EndpointSearchProvider provider, ExportExecutor exportExecutor) {
+		super(provider, exportExecutor);
 	}
 
 	/*
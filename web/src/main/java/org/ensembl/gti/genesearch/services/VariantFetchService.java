@@ -30,10 +30,11 @@ public class VariantFetchService extends FetchService {
 
 	/**
 	 * @param provider
+	 * @param exportExecutor
 	 */
 	@Autowired
-	public VariantFetchService(EndpointSearchProvider provider) {
-		super(provider);
+	public VariantFetchService(EndpointSearchProvider provider, ExportExecutor exportExecutor) {
+		super(provider, exportExecutor);
 	}
 
 	/*
@@ -0,0 +1,235 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.converter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Utility class to write maps as delimited text (CSV or TSV). Values are
+ * written into a reusable character buffer which is passed to the underlying
+ * {@link Writer} when full, so no intermediate strings are built per row.
+ * <p>
+ * Missing values are written as empty cells. Lists of simple values are joined
+ * with {@link #LIST_SEPARATOR}, and other nested values are written as JSON.
+ *
+ * @author dstaines
+ */
+public class DelimitedWriter implements AutoCloseable {
+
+    /**
+     * Supported variants of delimited output
+     */
+    public static enum Dialect {
+        /**
+         * comma separated with RFC 4180 quoting
+         */
+        CSV(',', "\n", true, false),
+        /**
+         * as CSV but with CRLF line endings and a UTF-8 byte order mark so
+         * Excel detects the encoding
+         */
+        EXCEL(',', "\r\n", true, true),
+        /**
+         * tab separated with no quoting: tabs and line breaks in values are
+         * replaced with spaces
+         */
+        TSV('\t', "\n", false, false);
+
+        private final char separator;
+        private final String lineEnd;
+        private final boolean quote;
+        private final boolean bom;
+
+        private Dialect(char separator, String lineEnd, boolean quote, boolean bom) {
+            this.separator = separator;
+            this.lineEnd = lineEnd;
+            this.quote = quote;
+            this.bom = bom;
+        }
+    }
+
+    public static final char LIST_SEPARATOR = ';';
+    private static final int BUFFER_SIZE = 8192;
+    private static final char QUOTE = '"';
+    private static final char BOM = '\uFEFF';
+    private static final ObjectMapper om = new ObjectMapper();
+
+    private final Writer writer;
+    private final Dialect dialect;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private boolean started = false;
+
+    /**
+     * @param writer  destination
+     * @param dialect variant of output to write
+     */
+    public DelimitedWriter(Writer writer, Dialect dialect) {
+        this.writer = writer;
+        this.dialect = dialect;
+    }
+
+    /**
+     * Write a header row
+     *
+     * @param names column names
+     * @throws IOException
+     */
+    public void writeHeader(List<String> names) throws IOException {
+        start();
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                append(dialect.separator);
+            }
+            writeValue(names.get(i));
+        }
+        append(dialect.lineEnd);
+    }
+
+    /**
+     * Write the values for the named columns from the supplied map
+     *
+     * @param names columns to write
+     * @param map   row to write
+     * @throws IOException
+     */
+    public void writeRow(List<String> names, Map<String, Object> map) throws IOException {
+        start();
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                append(dialect.separator);
+            }
+            writeValue(map.get(names.get(i)));
+        }
+        append(dialect.lineEnd);
+    }
+
+    private void start() throws IOException {
+        if (!started) {
+            started = true;
+            if (dialect.bom) {
+                append(BOM);
+            }
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            if (isSimple(list)) {
+                StringBuilder s = new StringBuilder();
+                for (Object o : list) {
+                    if (s.length() > 0) {
+                        s.append(LIST_SEPARATOR);
+                    }
+                    s.append(o);
+                }
+                writeString(s);
+            } else {
+                writeString(om.writeValueAsString(value));
+            }
+        } else if (value instanceof Map) {
+            writeString(om.writeValueAsString(value));
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private static boolean isSimple(List<?> list) {
+        for (Object o : list) {
+            if (o instanceof Map || o instanceof List) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeString(CharSequence s) throws IOException {
+        int len = s.length();
+        if (dialect.quote) {
+            if (needsQuotes(s)) {
+                append(QUOTE);
+                for (int i = 0; i < len; i++) {
+                    char c = s.charAt(i);
+                    if (c == QUOTE) {
+                        append(QUOTE);
+                    }
+                    append(c);
+                }
+                append(QUOTE);
+            } else {
+                append(s);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+            }
+        }
+    }
+
+    private boolean needsQuotes(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == dialect.separator || c == QUOTE || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(char c) throws IOException {
+        if (pos == buffer.length) {
+            flushBuffer();
+        }
+        buffer[pos++] = c;
+    }
+
+    private void append(CharSequence s) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            append(s.charAt(i));
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        writer.write(buffer, 0, pos);
+        pos = 0;
+    }
+
+    /**
+     * Pass any buffered output to the underlying writer and flush it
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        writer.close();
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.ensembl.genesearch.info.FieldInfo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Utility class to write maps as an Apache Arrow IPC stream. The schema is
+ * derived from the {@link FieldInfo} for the requested fields, and rows are
+ * buffered into record batches of a fixed size before being written.
+ * <p>
+ * Numbers, booleans and strands are written as typed columns. Nested fields,
+ * and any other non-scalar values, are written as JSON strings since
+ * {@link FieldInfo} does not describe the structure of nested objects.
+ *
+ * @author dstaines
+ */
+public class MapArrowWriter implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private static final ObjectMapper om = new ObjectMapper();
+
+    private final List<FieldInfo> fields;
+    private final int batchSize;
+    private final BufferAllocator allocator;
+    private final VectorSchemaRoot root;
+    private final ArrowStreamWriter writer;
+    private int row = 0;
+
+    /**
+     * @param fields    fields to write as columns
+     * @param os        destination stream
+     * @param batchSize number of rows per record batch
+     * @throws IOException
+     */
+    public MapArrowWriter(List<FieldInfo> fields, OutputStream os, int batchSize) throws IOException {
+        this.fields = fields;
+        this.batchSize = batchSize;
+        this.allocator = new RootAllocator(Long.MAX_VALUE);
+        this.root = VectorSchemaRoot.create(buildSchema(fields), allocator);
+        this.writer = new ArrowStreamWriter(root, null, Channels.newChannel(os));
+        writer.start();
+        allocate();
+    }
+
+    /**
+     * Build an Arrow schema for the supplied fields
+     *
+     * @param fields
+     * @return schema
+     */
+    public static Schema buildSchema(List<FieldInfo> fields) {
+        List<Field> arrowFields = new ArrayList<>(fields.size());
+        for (FieldInfo info : fields) {
+            arrowFields.add(new Field(info.getName(),
+                    org.apache.arrow.vector.types.pojo.FieldType.nullable(getArrowType(info)), null));
+        }
+        return new Schema(arrowFields);
+    }
+
+    private static ArrowType getArrowType(FieldInfo info) {
+        switch (info.getType()) {
+            case NUMBER:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case STRAND:
+                return new ArrowType.Int(32, true);
+            case BOOLEAN:
+                return ArrowType.Bool.INSTANCE;
+            default:
+                return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    /**
+     * Add a row to the current batch, writing the batch if it is full
+     *
+     * @param map
+     * @throws IOException
+     */
+    public void write(Map<String, Object> map) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            Object value = map.get(fields.get(i).getName());
+            if (value != null) {
+                setValue(root.getVector(i), value);
+            }
+        }
+        if (++row == batchSize) {
+            writeBatch();
+        }
+    }
+
+    private void setValue(FieldVector vector, Object value) throws JsonProcessingException {
+        if (vector instanceof Float8Vector) {
+            Double d = toDouble(value);
+            if (d != null) {
+                ((Float8Vector) vector).setSafe(row, d);
+            }
+        } else if (vector instanceof IntVector) {
+            Double d = toDouble(value);
+            if (d != null) {
+                ((IntVector) vector).setSafe(row, d.intValue());
+            }
+        } else if (vector instanceof BitVector) {
+            boolean b = value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString());
+            ((BitVector) vector).setSafe(row, b ? 1 : 0);
+        } else {
+            String s = value instanceof Map || value instanceof List ? om.writeValueAsString(value)
+                    : value.toString();
+            ((VarCharVector) vector).setSafe(row, s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return Double.valueOf(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void allocate() {
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.allocateNew();
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.setValueCount(row);
+        }
+        root.setRowCount(row);
+        writer.writeBatch();
+        row = 0;
+        allocate();
+    }
+
+    /**
+     * Write any remaining rows and end the stream
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (row > 0) {
+                writeBatch();
+            }
+            writer.end();
+        } finally {
+            writer.close();
+            root.close();
+            allocator.close();
+        }
+    }
+
+}
@@ -13,13 +13,12 @@
  */
 package org.ensembl.gti.genesearch.services.converter;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Collection;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -28,14 +27,36 @@ import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
+import org.ensembl.genesearch.info.DataTypeInfo;
+import org.ensembl.genesearch.info.FieldInfo;
+
 /**
- * Utility class to write maps as XML
+ * Utility class to write maps as XML. Simple values are written as attributes
+ * and maps and collections as child elements, with the elements of a
+ * collection named with the singular form of the collection name. A single
+ * writer is intended to be used for a whole stream of objects, with element
+ * names cached as they are first seen (or precomputed from a
+ * {@link DataTypeInfo}).
  *
  * @author dstaines
  */
 public class MapXmlWriter {
 
-    final Logger log = LoggerFactory.getLogger(MapXmlWriter.class);
+    private static final int BUFFER_SIZE = 65536;
+    private static final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+
+    /**
+     * Create a buffered UTF-8 writer for the supplied stream. Callers must
+     * flush the writer once complete, and should flush it periodically when
+     * streaming so output is not held in the buffer.
+     *
+     * @param os
+     * @return writer
+     * @throws XMLStreamException
+     */
+    public static XMLStreamWriter createWriter(OutputStream os) throws XMLStreamException {
+        return factory.createXMLStreamWriter(new BufferedOutputStream(os, BUFFER_SIZE), "UTF-8");
+    }
 
     /**
      * Transform a map into XML
@@ -49,7 +70,7 @@ public class MapXmlWriter {
      */
     public static String mapToXml(String name, Map<String, Object> map) throws XMLStreamException, FactoryConfigurationError, UnsupportedEncodingException {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
-        XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(os);
+        XMLStreamWriter xsw = factory.createXMLStreamWriter(os);
         MapXmlWriter writer = new MapXmlWriter(xsw);
         xsw.writeStartDocument();
         writer.writeMap(name, map);
@@ -60,64 +81,79 @@ public class MapXmlWriter {
     }
 
     private final XMLStreamWriter writer;
-    private boolean open;
+    private final Map<String, String> elementNames = new HashMap<>();
 
     public MapXmlWriter(XMLStreamWriter writer) {
         this.writer = writer;
-        this.open = false;
+    }
+
+    /**
+     * @param writer
+     * @param dataType data type whose field names are used to precompute
+     *                 element names
+     */
+    public MapXmlWriter(XMLStreamWriter writer, DataTypeInfo dataType) {
+        this(writer);
+        for (FieldInfo info : dataType.getFieldInfo()) {
+            for (String name : info.getName().split("\\.")) {
+                getElementName(name);
+            }
+        }
     }
 
     public void openDoc() throws XMLStreamException {
         writer.writeStartDocument();
     }
 
-
     public void endDoc() throws XMLStreamException {
         writer.writeEndDocument();
     }
 
+    /**
+     * Write a single object as an element, without starting a new document
+     *
+     * @param name
+     * @param data
+     * @throws XMLStreamException
+     */
     public void writeData(String name, Object data) throws XMLStreamException {
-        writer.writeStartDocument();
         writeObject(name, data);
-        writer.writeEndDocument();
     }
 
     @SuppressWarnings("unchecked")
     public void writeObject(String name, Object data) throws XMLStreamException {
-        Class<?> clazz = data.getClass();
-        log.debug("Data received:" + name + "/" + data.toString());
-        if (Map.class.isAssignableFrom(clazz)) {
-            Map<String, Object> dataMap = (Map<String, Object>) data;
-            log.debug("Assignable Map " + dataMap);
-            writeMap(name, dataMap);
-        } else if (Collection.class.isAssignableFrom(clazz)) {
-            log.debug("Assignable Collection");
-            Collection<Object> dataCollection = (Collection<Object>) data;
-            writeCollection(name, dataCollection);
-        } else {
-            log.debug("Default behavior ");
-            if (data != null) {
-                writer.writeAttribute(name, String.valueOf(data));
-            } else {
-                writer.writeEndDocument();
-            }
+        if (data instanceof Map) {
+            writeMap(name, (Map<String, Object>) data);
+        } else if (data instanceof Collection) {
+            writeCollection(name, (Collection<Object>) data);
+        } else if (data != null) {
+            writer.writeAttribute(name, String.valueOf(data));
         }
-
     }
 
-    public void writeCollection(String name, Collection<Object> dataCollection) throws XMLStreamException {
-        if (dataCollection != null && !dataCollection.isEmpty()) {
-            log.debug("Write Collection");
-            String elemName = null;
+    /**
+     * @param name name of collection
+     * @return name to use for each element in the collection
+     */
+    protected String getElementName(String name) {
+        String elemName = elementNames.get(name);
+        if (elemName == null) {
             if (name.endsWith("s")) {
                 elemName = name.substring(0, name.length() - 1);
             } else {
                 elemName = name + "_elem";
             }
+            elementNames.put(name, elemName);
+        }
+        return elemName;
+    }
+
+    public void writeCollection(String name, Collection<Object> dataCollection) throws XMLStreamException {
+        if (dataCollection != null && !dataCollection.isEmpty()) {
+            String elemName = getElementName(name);
             writer.writeStartElement(name);
             for (Object obj : dataCollection) {
-                Class<?> oClazz = obj.getClass();
-                if (Map.class.isAssignableFrom(oClazz) || List.class.isAssignableFrom(oClazz)) {
+                if (obj instanceof Map || obj instanceof Collection) {
                     writeObject(elemName, obj);
                 } else {
                     writer.writeStartElement(elemName);
@@ -131,27 +167,23 @@ public class MapXmlWriter {
 
     public void writeMap(String name, Map<String, Object> dataMap) throws XMLStreamException {
         if (dataMap != null && !dataMap.isEmpty()) {
-            log.debug("write Map " + dataMap + "/" + name);
             writer.writeStartElement(name);
             // write attributes first
+            boolean hasChildren = false;
             for (Entry<String, Object> e : dataMap.entrySet()) {
-                log.debug("Current Entry " + e);
-                if (e.getValue() != null) {
-                    Class<?> eClazz = e.getValue().getClass();
-                    log.debug("Current Value " + e.getValue());
-                    if (!Map.class.isAssignableFrom(eClazz) && !Collection.class.isAssignableFrom(eClazz)) {
-
-                        writer.writeAttribute(e.getKey(), String.valueOf(e.getValue()));
-                        log.debug("Write Attribute " + e.getValue());
-                    }
+                Object value = e.getValue();
+                if (value instanceof Map || value instanceof Collection) {
+                    hasChildren = true;
+                } else if (value != null) {
+                    writer.writeAttribute(e.getKey(), String.valueOf(value));
                 }
             }
             // write child elements last
-            for (Entry<String, Object> e : dataMap.entrySet()) {
-                if (e.getValue() != null) {
-                    Class<?> eClazz = e.getValue().getClass();
-                    if (Map.class.isAssignableFrom(eClazz) || Collection.class.isAssignableFrom(eClazz)) {
-                        writeObject(e.getKey(), e.getValue());
+            if (hasChildren) {
+                for (Entry<String, Object> e : dataMap.entrySet()) {
+                    Object value = e.getValue();
+                    if (value instanceof Map || value instanceof Collection) {
+                        writeObject(e.getKey(), value);
                     }
                 }
             }
@@ -0,0 +1,40 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.errors;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import org.ensembl.genesearch.SearchCancelledException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Provider
+public class SearchCancelledExceptionMapper implements ExceptionMapper<SearchCancelledException> {
+
+	Logger log = LoggerFactory.getLogger(this.getClass());
+
+	@Override
+	public Response toResponse(SearchCancelledException exception) {
+		// usually the client has gone, so there is no need for a stack trace
+		log.info(exception.getMessage());
+		Status status = Response.Status.SERVICE_UNAVAILABLE;
+		return Response.status(status).entity(new ErrorDetails(status, exception)).type(MediaType.APPLICATION_JSON)
+				.build();
+	}
+
+}
@@ -0,0 +1,470 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.filters;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Admission control for expensive endpoints. Each class of endpoint has:
+ * <ul>
+ * <li>a token bucket per client, refilled at
+ * <code>admission.&lt;class&gt;.rate</code> requests per second up to
+ * <code>admission.&lt;class&gt;.burst</code></li>
+ * <li>a limit of <code>admission.&lt;class&gt;.concurrent</code> requests in
+ * progress, with requests beyond that queued and admitted in weighted fair
+ * queuing order, so a client with many queued requests cannot starve a client
+ * with few</li>
+ * </ul>
+ * Requests are rejected with a suggested retry delay if the client's bucket is
+ * empty, if it already has <code>admission.queue.per_client</code> requests
+ * queued, if <code>admission.queue.total</code> requests are already queued
+ * across all clients and classes (each queued request holds a container
+ * thread, so this must stay well below the size of the thread pool), or if a
+ * queued request is not admitted within
+ * <code>admission.queue.timeout</code> seconds. Token buckets are kept for
+ * at most <code>admission.max_clients</code> clients per class, evicting the
+ * least recently seen.
+ * <p>
+ * Queue depth, requests in progress and rejections are exported to the
+ * {@link MeterRegistry} as <code>genesearch.admission.*</code>, tagged by
+ * endpoint class and client. Clients are tagged by one of
+ * <code>admission.metrics.client_buckets</code> hashed buckets (see
+ * {@link #getClientTag(String)}) so that neither API keys nor an unbounded
+ * number of addresses reach the registry, and queue depth gauges are removed
+ * once a bucket has nothing queued.
+ *
+ * @author dstaines
+ */
+@Component
+public class AdmissionControl {
+
+    /**
+     * Classes of endpoint with separate limits
+     */
+    public static enum EndpointClass {
+        QUERY(20, 40, 32), FETCH(1, 5, 8), OBJECT(50, 100, 32);
+
+        private final double rate;
+        private final int burst;
+        private final int concurrent;
+
+        private EndpointClass(double rate, int burst, int concurrent) {
+            this.rate = rate;
+            this.burst = burst;
+            this.concurrent = concurrent;
+        }
+
+        private String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Reason for rejecting a request
+     */
+    public static enum Reason {
+        RATE, QUEUE_FULL, TIMEOUT
+    }
+
+    /**
+     * Thrown when a request is not admitted
+     */
+    public static class RejectedException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+        private final Reason reason;
+        private final long retryAfter;
+
+        public RejectedException(Reason reason, long retryAfter, String message) {
+            super(message);
+            this.reason = reason;
+            this.retryAfter = retryAfter;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        /**
+         * @return seconds the client should wait before retrying
+         */
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * Admission of a request, which must be released once the response is
+     * complete. Releasing more than once has no effect.
+     */
+    public static final class Permit {
+        private final Lane lane;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(Lane lane) {
+            this.lane = lane;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                lane.release();
+            }
+        }
+    }
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final String KEY_PREFIX = "key:";
+
+    /**
+     * Number of queued requests for one endpoint class and client bucket,
+     * with the gauge exporting it
+     */
+    private static final class Depth {
+        private final AtomicInteger queued = new AtomicInteger();
+        private Gauge gauge;
+    }
+
+    /**
+     * Token bucket refilled continuously at a fixed rate
+     */
+    private static final class Bucket {
+        private final double rate;
+        private final double burst;
+        private double tokens;
+        private long last;
+
+        private Bucket(double rate, double burst, long now) {
+            this.rate = rate;
+            this.burst = burst;
+            this.tokens = burst;
+            this.last = now;
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise the number of nanoseconds
+         *         until one is available
+         */
+        private synchronized long take(long now) {
+            tokens = Math.min(burst, tokens + (now - last) * rate / NANOS_PER_SECOND);
+            last = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / rate * NANOS_PER_SECOND);
+        }
+    }
+
+    /**
+     * Request waiting for admission, ordered by virtual finish time
+     */
+    private static final class Ticket implements Comparable<Ticket> {
+        private final Backlog backlog;
+        private final double finish;
+        private final long sequence;
+        private final Condition admitted;
+        private boolean granted = false;
+
+        private Ticket(Backlog backlog, double finish, long sequence, Condition admitted) {
+            this.backlog = backlog;
+            this.finish = finish;
+            this.sequence = sequence;
+            this.admitted = admitted;
+        }
+
+        @Override
+        public int compareTo(Ticket o) {
+            int c = Double.compare(finish, o.finish);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+
+    /**
+     * Queued requests for a single client
+     */
+    private static final class Backlog {
+        private final String client;
+        private final double weight;
+        private double lastFinish = 0;
+        private int queued = 0;
+
+        private Backlog(String client, double weight) {
+            this.client = client;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Concurrency limit and fair queue for one class of endpoint
+     */
+    private final class Lane {
+        private final EndpointClass endpoint;
+        private final double rate;
+        private final double burst;
+        private final int concurrent;
+        private final Cache<String, Bucket> buckets;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final PriorityQueue<Ticket> waiting = new PriorityQueue<>();
+        private final Map<String, Backlog> backlogs = new HashMap<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private double virtualTime = 0;
+        private long sequence = 0;
+
+        private Lane(EndpointClass endpoint, double rate, double burst, int concurrent) {
+            this.endpoint = endpoint;
+            this.rate = rate;
+            this.burst = burst;
+            this.concurrent = concurrent;
+            // idle clients are forgotten, as a full bucket is the initial state
+            this.buckets = CacheBuilder.newBuilder().maximumSize(maxClients)
+                    .expireAfterAccess((long) Math.ceil(burst / rate) + 60, TimeUnit.SECONDS).build();
+            registry.gauge("genesearch.admission.running", Tags.of("endpoint", endpoint.key()), running);
+        }
+
+        private Permit acquire(String client, double weight) throws RejectedException {
+            long now = System.nanoTime();
+            Bucket bucket;
+            try {
+                bucket = buckets.get(client, () -> new Bucket(rate, burst, now));
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+            long wait = bucket.take(now);
+            if (wait > 0) {
+                throw reject(endpoint, client, Reason.RATE, (wait + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND,
+                        "Rate limit for " + endpoint.key() + " requests exceeded");
+            }
+            lock.lock();
+            try {
+                if (waiting.isEmpty() && running.get() < concurrent) {
+                    running.incrementAndGet();
+                    return new Permit(this);
+                }
+                if (!reserveQueueSlot()) {
+                    throw reject(endpoint, client, Reason.QUEUE_FULL, queueTimeout, "Too many queued requests");
+                }
+                Backlog backlog = backlogs.computeIfAbsent(client, c -> new Backlog(c, weight));
+                if (backlog.queued >= maxQueued) {
+                    totalQueued.decrementAndGet();
+                    throw reject(endpoint, client, Reason.QUEUE_FULL, queueTimeout,
+                            "Too many queued " + endpoint.key() + " requests");
+                }
+                // start no earlier than the current virtual time, so idle
+                // clients do not accumulate credit
+                double finish = Math.max(virtualTime, backlog.lastFinish) + 1 / backlog.weight;
+                backlog.lastFinish = finish;
+                Ticket ticket = new Ticket(backlog, finish, sequence++, lock.newCondition());
+                waiting.add(ticket);
+                queued(backlog, 1);
+                long remaining = TimeUnit.SECONDS.toNanos(queueTimeout);
+                while (!ticket.granted && remaining > 0) {
+                    try {
+                        remaining = ticket.admitted.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (!ticket.granted) {
+                    waiting.remove(ticket);
+                    queued(backlog, -1);
+                    throw reject(endpoint, client, Reason.TIMEOUT, queueTimeout,
+                            "Timed out waiting for " + endpoint.key() + " capacity");
+                }
+                return new Permit(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release() {
+            lock.lock();
+            try {
+                Ticket next = waiting.poll();
+                if (next == null) {
+                    running.decrementAndGet();
+                } else {
+                    // the slot passes directly to the next request
+                    virtualTime = Math.max(virtualTime, next.finish - 1 / next.backlog.weight);
+                    next.granted = true;
+                    queued(next.backlog, -1);
+                    next.admitted.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void queued(Backlog backlog, int delta) {
+            backlog.queued += delta;
+            if (delta < 0) {
+                // slots are reserved by acquire before queuing
+                totalQueued.addAndGet(delta);
+            }
+            // depths for this lane are only changed while holding its lock
+            String tag = getClientTag(backlog.client);
+            String key = endpoint.key() + '\t' + tag;
+            Depth depth = depths.computeIfAbsent(key, k -> {
+                Depth d = new Depth();
+                d.gauge = Gauge.builder("genesearch.admission.queued", d.queued, AtomicInteger::get)
+                        .tags(Tags.of("endpoint", endpoint.key(), "client", tag)).register(registry);
+                return d;
+            });
+            if (depth.queued.addAndGet(delta) <= 0) {
+                depths.remove(key);
+                registry.remove(depth.gauge);
+            }
+            if (backlog.queued == 0) {
+                backlogs.remove(backlog.client);
+            }
+        }
+
+        private int getQueued() {
+            lock.lock();
+            try {
+                return waiting.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final int maxQueued;
+    private final int maxTotalQueued;
+    private final AtomicInteger totalQueued = new AtomicInteger();
+    private final long queueTimeout;
+    private final double keyWeight;
+    private final int clientBuckets;
+    private final long maxClients;
+    private final Map<EndpointClass, Lane> lanes = new HashMap<>();
+    private final Map<String, Depth> depths = new ConcurrentHashMap<>();
+
+    /**
+     * @param env      source of <code>admission.*</code> properties
+     * @param registry registry for admission metrics
+     */
+    @Autowired
+    public AdmissionControl(Environment env, MeterRegistry registry) {
+        this.registry = registry;
+        this.enabled = env.getProperty("admission.enabled", Boolean.class, true);
+        this.maxQueued = env.getProperty("admission.queue.per_client", Integer.class, 4);
+        this.maxTotalQueued = env.getProperty("admission.queue.total", Integer.class, 64);
+        this.queueTimeout = env.getProperty("admission.queue.timeout", Long.class, 10L);
+        this.keyWeight = env.getProperty("admission.key.weight", Double.class, 2.0);
+        this.clientBuckets = Math.max(1, env.getProperty("admission.metrics.client_buckets", Integer.class, 64));
+        this.maxClients = env.getProperty("admission.max_clients", Long.class, 100000L);
+        for (EndpointClass endpoint : EndpointClass.values()) {
+            String prefix = "admission." + endpoint.key() + ".";
+            double rate = env.getProperty(prefix + "rate", Double.class, endpoint.rate);
+            double burst = env.getProperty(prefix + "burst", Double.class, (double) endpoint.burst);
+            int concurrent = env.getProperty(prefix + "concurrent", Integer.class, endpoint.concurrent);
+            log.info("Admitting " + endpoint.key() + " requests at " + rate + "/s (burst " + burst + ") per client, "
+                    + concurrent + " concurrently");
+            lanes.put(endpoint, new Lane(endpoint, rate, burst, concurrent));
+        }
+    }
+
+    /**
+     * Reserve one of the <code>admission.queue.total</code> queue slots shared
+     * by all endpoint classes
+     *
+     * @return true if a slot was reserved
+     */
+    private boolean reserveQueueSlot() {
+        while (true) {
+            int n = totalQueued.get();
+            if (n >= maxTotalQueued) {
+                return false;
+            }
+            if (totalQueued.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Admit a request, waiting in the fair queue if the endpoint is at
+     * capacity
+     *
+     * @param endpoint class of endpoint requested
+     * @param client   client identifier (API key or address)
+     * @param keyed    true if the client supplied an API key, giving it
+     *                 <code>admission.key.weight</code> in the fair queue
+     * @return permit to release once the response is complete
+     * @throws RejectedException if the request should be rejected
+     */
+    public Permit acquire(EndpointClass endpoint, String client, boolean keyed) throws RejectedException {
+        return lanes.get(endpoint).acquire(client, keyed ? keyWeight : 1.0);
+    }
+
+    /**
+     * @param endpoint
+     * @return number of requests waiting for the endpoint class
+     */
+    public int getQueued(EndpointClass endpoint) {
+        return lanes.get(endpoint).getQueued();
+    }
+
+    /**
+     * Bucket a client identifier for use in metrics and logs, keeping API
+     * keys out of both and bounding the number of distinct tags
+     *
+     * @param client client identifier (<code>key:</code> followed by an API
+     *               key, or an address)
+     * @return <code>key-</code> or <code>addr-</code> followed by the bucket
+     *         number
+     */
+    public String getClientTag(String client) {
+        int bucket = Hashing.consistentHash(Hashing.murmur3_32().hashUnencodedChars(client), clientBuckets);
+        return (client.startsWith(KEY_PREFIX) ? "key-" : "addr-") + bucket;
+    }
+
+    private RejectedException reject(EndpointClass endpoint, String client, Reason reason, long retryAfter,
+            String message) {
+        registry.counter("genesearch.admission.rejected", "endpoint", endpoint.key(), "client",
+                getClientTag(client), "reason", reason.name().toLowerCase()).increment();
+        return new RejectedException(reason, Math.max(1, retryAfter), message);
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.filters;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ensembl.gti.genesearch.services.errors.ErrorDetails;
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl.EndpointClass;
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl.Permit;
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl.RejectedException;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Filter applying {@link AdmissionControl} to the query, count, fetch and
+ * object endpoints. Clients are identified by API key header if the key is
+ * one of those listed in <code>admission.keys</code>, or otherwise by address,
+ * so unrecognised keys cannot be used to obtain fresh rate limits or extra
+ * weight in the fair queue. Rejected requests get 429 Too Many Requests with a
+ * Retry-After header. Permits are released when Jersey has finished writing
+ * the response, so streamed and asynchronous fetches hold their slot until
+ * complete.
+ *
+ * @author dstaines
+ */
+@Component
+public class AdmissionFilter implements ContainerRequestFilter, ApplicationEventListener {
+
+    private static final String PERMIT_PROPERTY = AdmissionFilter.class.getName() + ".permit";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final AdmissionControl control;
+    private final String keyHeader;
+    private final boolean trustForwarded;
+    private final Set<String> keys;
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    /**
+     * @param control        admission control to apply
+     * @param keyHeader      name of header containing client API key
+     * @param trustForwarded if true, use the first address in
+     *                       X-Forwarded-For (when running behind a proxy)
+     * @param keys           comma-separated list of recognised API keys
+     */
+    @Autowired
+    public AdmissionFilter(AdmissionControl control, @Value("${admission.key_header:X-API-Key}") String keyHeader,
+            @Value("${admission.trust_forwarded:false}") boolean trustForwarded,
+            @Value("${admission.keys:}") String keys) {
+        this.control = control;
+        this.keyHeader = keyHeader;
+        this.trustForwarded = trustForwarded;
+        this.keys = StringUtils.isBlank(keys) ? Collections.emptySet()
+                : Arrays.stream(keys.split(",")).map(String::trim).filter(k -> !k.isEmpty())
+                        .collect(Collectors.toSet());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container
+     * .ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        if (!control.isEnabled()) {
+            return;
+        }
+        EndpointClass endpoint = classify(request.getUriInfo().getPathSegments());
+        if (endpoint == null) {
+            return;
+        }
+        String key = request.getHeaderString(keyHeader);
+        boolean keyed = isKnownKey(key);
+        String client = keyed ? "key:" + key : getAddress(request);
+        try {
+            request.setProperty(PERMIT_PROPERTY, control.acquire(endpoint, client, keyed));
+        } catch (RejectedException e) {
+            log.info("Rejecting " + endpoint + " request from " + control.getClientTag(client) + ": "
+                    + e.getReason());
+            Status status = Status.TOO_MANY_REQUESTS;
+            request.abortWith(Response.status(status).header("Retry-After", e.getRetryAfter())
+                    .entity(new ErrorDetails(status, e)).type(MediaType.APPLICATION_JSON).build());
+        }
+    }
+
+    /**
+     * @param key API key supplied by the client, or null
+     * @return true if the key is one of <code>admission.keys</code>
+     */
+    public boolean isKnownKey(String key) {
+        return !StringUtils.isEmpty(key) && keys.contains(key);
+    }
+
+    private String getAddress(ContainerRequestContext request) {
+        if (trustForwarded) {
+            String forwarded = request.getHeaderString("X-Forwarded-For");
+            if (!StringUtils.isEmpty(forwarded)) {
+                return StringUtils.substringBefore(forwarded, ",").trim();
+            }
+        }
+        return servletRequest.getRemoteAddr();
+    }
+
+    /**
+     * @param segments request path segments, e.g. genes/fetch
+     * @return class of endpoint, or null if not subject to admission control
+     */
+    public static EndpointClass classify(List<PathSegment> segments) {
+        if (segments.isEmpty() || segments.get(0).getPath().isEmpty()) {
+            return null;
+        }
+        String first = segments.get(0).getPath();
+        if ("health".equals(first) || "swagger.json".equals(first)) {
+            return null;
+        }
+        String op = segments.size() > 1 ? segments.get(1).getPath() : "";
+        switch (op) {
+        case "health":
+            // per data type health checks, as used by load balancers
+            return null;
+        case "query":
+        case "count":
+            return EndpointClass.QUERY;
+        case "fetch":
+            return EndpointClass.FETCH;
+        case "info":
+            return null;
+        default:
+            // object by ID, POST of IDs, or select
+            return EndpointClass.OBJECT;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.glassfish.jersey.server.monitoring.ApplicationEventListener#
+     * onEvent(org.glassfish.jersey.server.monitoring.ApplicationEvent)
+     */
+    @Override
+    public void onEvent(ApplicationEvent event) {
+        // no application level events needed
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.glassfish.jersey.server.monitoring.ApplicationEventListener#
+     * onRequest(org.glassfish.jersey.server.monitoring.RequestEvent)
+     */
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        return event -> {
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                Object permit = event.getContainerRequest().getProperty(PERMIT_PROPERTY);
+                if (permit != null) {
+                    ((Permit) permit).release();
+                }
+            }
+        };
+    }
+
+}
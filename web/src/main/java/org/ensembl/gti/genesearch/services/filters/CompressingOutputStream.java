@@ -0,0 +1,229 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * {@link DeflaterOutputStream} producing gzip or zlib ("deflate") output with
+ * a configurable level. The stream is sync-flushed whenever it is flushed, so
+ * that pages written by streaming responses reach the client immediately.
+ * {@link Deflater}s are pooled per thread, and the bytes and time spent
+ * compressing are recorded in {@link Stats}.
+ *
+ * @author dstaines
+ */
+public class CompressingOutputStream extends DeflaterOutputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    /**
+     * Cumulative statistics for compressed responses
+     */
+    public static final class Stats {
+        private final LongAdder streams = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        /**
+         * @return statistics as a map, including the overall compression ratio
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("streams", streams.sum());
+            map.put("bytes_in", bytesIn.sum());
+            map.put("bytes_out", bytesOut.sum());
+            map.put("compression_ms", nanos.sum() / 1000000);
+            long out = bytesOut.sum();
+            map.put("ratio", out == 0 ? 0.0 : (double) bytesIn.sum() / out);
+            return map;
+        }
+    }
+
+    public static final Stats GZIP_STATS = new Stats();
+    public static final Stats DEFLATE_STATS = new Stats();
+
+    /**
+     * A deflater held by a stream. The in-use flag lives here rather than in a
+     * {@link ThreadLocal}, so the stream can hand a pooled deflater back from
+     * whichever thread closes it.
+     */
+    private static final class Slot {
+        private final boolean pooled;
+        private final AtomicBoolean inUse = new AtomicBoolean(false);
+        private Deflater deflater;
+
+        private Slot(boolean pooled, Deflater deflater) {
+            this.pooled = pooled;
+            this.deflater = deflater;
+        }
+    }
+
+    /**
+     * Per-thread deflaters. A response is written by a single thread, so at
+     * most one stream per thread uses its pooled deflater at a time; any
+     * concurrent stream on the same thread gets its own.
+     */
+    private static final class DeflaterPool extends ThreadLocal<Slot> {
+        private final boolean nowrap;
+
+        private DeflaterPool(boolean nowrap) {
+            this.nowrap = nowrap;
+        }
+
+        @Override
+        protected Slot initialValue() {
+            return new Slot(true, null);
+        }
+
+        private Slot acquire(int level) {
+            Slot slot = get();
+            if (!slot.inUse.compareAndSet(false, true)) {
+                return new Slot(false, new Deflater(level, nowrap));
+            }
+            if (slot.deflater == null) {
+                slot.deflater = new Deflater(level, nowrap);
+            } else {
+                slot.deflater.reset();
+                slot.deflater.setLevel(level);
+            }
+            return slot;
+        }
+
+        private void release(Slot slot, Thread owner) {
+            if (!slot.pooled) {
+                slot.deflater.end();
+            } else if (owner != Thread.currentThread()) {
+                // closed on another thread: free the deflater now and let the
+                // owner create a fresh one on its next response
+                slot.deflater.end();
+                slot.deflater = null;
+                slot.inUse.set(false);
+            } else {
+                slot.inUse.set(false);
+            }
+        }
+    }
+
+    private static final DeflaterPool GZIP_POOL = new DeflaterPool(true);
+    private static final DeflaterPool DEFLATE_POOL = new DeflaterPool(false);
+
+    /**
+     * @param out   destination
+     * @param level compression level (0-9)
+     * @return stream writing gzip format
+     * @throws IOException
+     */
+    public static CompressingOutputStream gzip(OutputStream out, int level) throws IOException {
+        return new CompressingOutputStream(out, GZIP_POOL, level, true, GZIP_STATS);
+    }
+
+    /**
+     * @param out   destination
+     * @param level compression level (0-9)
+     * @return stream writing zlib format
+     * @throws IOException
+     */
+    public static CompressingOutputStream deflate(OutputStream out, int level) throws IOException {
+        return new CompressingOutputStream(out, DEFLATE_POOL, level, false, DEFLATE_STATS);
+    }
+
+    private final DeflaterPool pool;
+    private final Slot slot;
+    private final Thread owner = Thread.currentThread();
+    private final CRC32 crc;
+    private final Stats stats;
+    private long bytesIn = 0;
+    private long nanos = 0;
+    private boolean closed = false;
+
+    private CompressingOutputStream(OutputStream out, DeflaterPool pool, int level, boolean gzip, Stats stats)
+            throws IOException {
+        this(out, pool, pool.acquire(level), gzip, stats);
+    }
+
+    private CompressingOutputStream(OutputStream out, DeflaterPool pool, Slot slot, boolean gzip, Stats stats)
+            throws IOException {
+        super(out, slot.deflater, BUFFER_SIZE, true);
+        this.pool = pool;
+        this.slot = slot;
+        this.stats = stats;
+        if (gzip) {
+            crc = new CRC32();
+            out.write(GZIP_HEADER);
+        } else {
+            crc = null;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        super.write(b, off, len);
+        if (crc != null) {
+            crc.update(b, off, len);
+        }
+        bytesIn += len;
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (!def.finished()) {
+            long start = System.nanoTime();
+            super.finish();
+            if (crc != null) {
+                writeInt((int) crc.getValue());
+                writeInt((int) bytesIn);
+            }
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    private void writeInt(int i) throws IOException {
+        out.write(i & 0xff);
+        out.write((i >> 8) & 0xff);
+        out.write((i >> 16) & 0xff);
+        out.write((i >> 24) & 0xff);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            finish();
+            out.close();
+        } finally {
+            stats.streams.increment();
+            stats.bytesIn.add(bytesIn);
+            stats.bytesOut.add(def.getBytesWritten() + (crc == null ? 0 : GZIP_HEADER.length + 8));
+            stats.nanos.add(nanos);
+            pool.release(slot, owner);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.filters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+
+import org.glassfish.jersey.spi.ContentEncoder;
+
+/**
+ * Jersey {@link ContentEncoder}s for gzip and deflate, using
+ * {@link CompressingOutputStream} so that the compression level can be set and
+ * flushes of streaming responses are passed on to the client. Used in place
+ * of {@link org.glassfish.jersey.message.GZipEncoder} and
+ * {@link org.glassfish.jersey.message.DeflateEncoder}.
+ *
+ * @author dstaines
+ */
+public abstract class CompressionEncoder extends ContentEncoder {
+
+    public static final int DEFAULT_LEVEL = 6;
+
+    protected final int level;
+
+    protected CompressionEncoder(int level, String... encodings) {
+        super(encodings);
+        this.level = level;
+    }
+
+    /**
+     * gzip encoding
+     */
+    @Priority(Priorities.ENTITY_CODER)
+    public static class Gzip extends CompressionEncoder {
+
+        public Gzip(int level) {
+            super(level, "gzip", "x-gzip");
+        }
+
+        @Override
+        public InputStream decode(String contentEncoding, InputStream encodedStream) throws IOException {
+            return new GZIPInputStream(encodedStream);
+        }
+
+        @Override
+        public OutputStream encode(String contentEncoding, OutputStream entityStream) throws IOException {
+            return CompressingOutputStream.gzip(entityStream, level);
+        }
+    }
+
+    /**
+     * deflate (zlib) encoding
+     */
+    @Priority(Priorities.ENTITY_CODER)
+    public static class Deflate extends CompressionEncoder {
+
+        public Deflate(int level) {
+            super(level, "deflate");
+        }
+
+        @Override
+        public InputStream decode(String contentEncoding, InputStream encodedStream) throws IOException {
+            return new InflaterInputStream(encodedStream);
+        }
+
+        @Override
+        public OutputStream encode(String contentEncoding, OutputStream entityStream) throws IOException {
+            return CompressingOutputStream.deflate(entityStream, level);
+        }
+    }
+
+}
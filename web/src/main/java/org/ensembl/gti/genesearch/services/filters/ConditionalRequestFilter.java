@@ -0,0 +1,163 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.services.filters;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.function.Supplier;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Filter adding ETag and Cache-Control headers to responses from
+ * {@link Conditional} resource methods, and answering GET requests whose
+ * If-None-Match header matches the current ETag with 304 Not Modified without
+ * invoking the resource.
+ * <p>
+ * The ETag is a hash of the current data version and the normalised request
+ * (path, sorted query parameters and Accept header). Tags are weak, as the
+ * same representation may be sent with different content encodings. If no
+ * data version is available the filter does nothing.
+ *
+ * @author dstaines
+ */
+@Conditional
+public class ConditionalRequestFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String ETAG_PROPERTY = ConditionalRequestFilter.class.getName() + ".etag";
+
+    private final Supplier<String> dataVersion;
+    private final String cacheControl;
+
+    /**
+     * @param dataVersion supplier of the current data version (may return
+     *                    null if unknown)
+     * @param maxAge      number of seconds shared caches may serve a response
+     *                    for without revalidating
+     */
+    public ConditionalRequestFilter(Supplier<String> dataVersion, int maxAge) {
+        this.dataVersion = dataVersion;
+        this.cacheControl = "public, max-age=" + maxAge;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * javax.ws.rs.container.ContainerRequestFilter#filter(javax.ws.rs.container
+     * .ContainerRequestContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        String method = request.getMethod();
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            return;
+        }
+        String version = dataVersion.get();
+        if (version == null) {
+            return;
+        }
+        String etag = computeTag(version, request.getUriInfo(), request.getHeaderString(HttpHeaders.ACCEPT));
+        request.setProperty(ETAG_PROPERTY, etag);
+        if (matches(request.getHeaderString(HttpHeaders.IF_NONE_MATCH), etag)) {
+            request.abortWith(Response.notModified().build());
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * javax.ws.rs.container.ContainerResponseFilter#filter(javax.ws.rs.container
+     * .ContainerRequestContext, javax.ws.rs.container.ContainerResponseContext)
+     */
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+        Object etag = request.getProperty(ETAG_PROPERTY);
+        int status = response.getStatus();
+        if (etag != null && (status == Response.Status.OK.getStatusCode()
+                || status == Response.Status.NOT_MODIFIED.getStatusCode())) {
+            MultivaluedMap<String, Object> headers = response.getHeaders();
+            headers.putSingle(HttpHeaders.ETAG, etag);
+            headers.putSingle(HttpHeaders.CACHE_CONTROL, cacheControl);
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+    }
+
+    /**
+     * @param version data version
+     * @param uri     request URI
+     * @param accept  Accept header (may be null)
+     * @return weak ETag (including quotes) for the request
+     */
+    public static String computeTag(String version, UriInfo uri, String accept) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putString(version, StandardCharsets.UTF_8).putByte((byte) 0);
+        hasher.putString(uri.getPath(), StandardCharsets.UTF_8).putByte((byte) 0);
+        // parameter order does not change the response
+        List<String> params = new ArrayList<>();
+        for (Entry<String, List<String>> param : uri.getQueryParameters().entrySet()) {
+            for (String value : param.getValue()) {
+                params.add(param.getKey() + '=' + value);
+            }
+        }
+        Collections.sort(params);
+        for (String param : params) {
+            hasher.putString(param, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        if (accept != null) {
+            hasher.putString(accept, StandardCharsets.UTF_8);
+        }
+        return "W/\"" + hasher.hash().toString() + '"';
+    }
+
+    /**
+     * @param ifNoneMatch value of If-None-Match header (may be null)
+     * @param etag        current ETag
+     * @return true if the header matches the ETag (using weak comparison)
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag) || opaque.equals(stripWeak(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl;
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl.EndpointClass;
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl.Permit;
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl.Reason;
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl.RejectedException;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AdmissionControlTest {
+
+	@Test
+	public void testRateLimit() throws RejectedException {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MockEnvironment env = new MockEnvironment().withProperty("admission.fetch.rate", "0.01")
+				.withProperty("admission.fetch.burst", "2");
+		AdmissionControl control = new AdmissionControl(env, registry);
+		control.acquire(EndpointClass.FETCH, "a", false).release();
+		control.acquire(EndpointClass.FETCH, "a", false).release();
+		try {
+			control.acquire(EndpointClass.FETCH, "a", false);
+			fail("Bucket should be empty");
+		} catch (RejectedException e) {
+			assertEquals("Rate limited", Reason.RATE, e.getReason());
+			assertTrue("Retry after refill", e.getRetryAfter() > 1);
+		}
+		control.acquire(EndpointClass.FETCH, "b", false).release();
+		control.acquire(EndpointClass.QUERY, "a", false).release();
+		assertEquals("Rejection counted", 1.0, registry.get("genesearch.admission.rejected")
+				.tags("endpoint", "fetch", "client", control.getClientTag("a"), "reason", "rate").counter().count(),
+				0.0);
+	}
+
+	@Test
+	public void testClientTags() {
+		MockEnvironment env = new MockEnvironment().withProperty("admission.metrics.client_buckets", "4");
+		AdmissionControl control = new AdmissionControl(env, new SimpleMeterRegistry());
+		Set<String> tags = new HashSet<>();
+		for (int i = 0; i < 100; i++) {
+			tags.add(control.getClientTag("10.0.0." + i));
+			tags.add(control.getClientTag("key:secret" + i));
+		}
+		assertTrue("Address tags bounded", tags.stream().filter(t -> t.startsWith("addr-")).count() <= 4);
+		assertTrue("Key tags bounded", tags.stream().filter(t -> t.startsWith("key-")).count() <= 4);
+		assertFalse("Key not exposed", tags.stream().anyMatch(t -> t.contains("secret")));
+		assertEquals("Tag is stable", control.getClientTag("key:secret1"), control.getClientTag("key:secret1"));
+	}
+
+	@Test
+	public void testIdleQueueGaugeRemoved() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MockEnvironment env = new MockEnvironment().withProperty("admission.query.concurrent", "1");
+		AdmissionControl control = new AdmissionControl(env, registry);
+		Permit holder = control.acquire(EndpointClass.QUERY, "a", false);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		Thread queued = queue(control, "a", "a1", order, 1);
+		assertEquals("Queued request exported", 1.0, registry.get("genesearch.admission.queued")
+				.tags("endpoint", "query", "client", control.getClientTag("a")).gauge().value(), 0.0);
+		holder.release();
+		queued.join(5000);
+		assertTrue("Idle client gauge removed", registry.find("genesearch.admission.queued").gauges().isEmpty());
+	}
+
+	@Test
+	public void testFairQueue() throws Exception {
+		MockEnvironment env = new MockEnvironment().withProperty("admission.query.concurrent", "1");
+		AdmissionControl control = new AdmissionControl(env, new SimpleMeterRegistry());
+		Permit holder = control.acquire(EndpointClass.QUERY, "a", false);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> threads = new ArrayList<>();
+		// client a queues two requests before client b queues one
+		threads.add(queue(control, "a", "a1", order, 1));
+		threads.add(queue(control, "a", "a2", order, 2));
+		threads.add(queue(control, "b", "b1", order, 3));
+		holder.release();
+		for (Thread thread : threads) {
+			thread.join(5000);
+		}
+		assertEquals("Fair order", Arrays.asList("a1", "b1", "a2"), order);
+		assertEquals("Queue empty", 0, control.getQueued(EndpointClass.QUERY));
+	}
+
+	@Test
+	public void testQueueFull() throws Exception {
+		MockEnvironment env = new MockEnvironment().withProperty("admission.query.concurrent", "1")
+				.withProperty("admission.queue.per_client", "1");
+		AdmissionControl control = new AdmissionControl(env, new SimpleMeterRegistry());
+		Permit holder = control.acquire(EndpointClass.QUERY, "a", false);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		Thread queued = queue(control, "a", "a1", order, 1);
+		try {
+			control.acquire(EndpointClass.QUERY, "a", false);
+			fail("Client queue should be full");
+		} catch (RejectedException e) {
+			assertEquals("Queue full", Reason.QUEUE_FULL, e.getReason());
+		}
+		holder.release();
+		queued.join(5000);
+		assertEquals("Queued request admitted", Arrays.asList("a1"), order);
+	}
+
+	@Test
+	public void testTotalQueueFull() throws Exception {
+		MockEnvironment env = new MockEnvironment().withProperty("admission.query.concurrent", "1")
+				.withProperty("admission.queue.total", "1");
+		AdmissionControl control = new AdmissionControl(env, new SimpleMeterRegistry());
+		Permit holder = control.acquire(EndpointClass.QUERY, "a", false);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		Thread queued = queue(control, "a", "a1", order, 1);
+		try {
+			control.acquire(EndpointClass.QUERY, "b", false);
+			fail("Total queue should be full");
+		} catch (RejectedException e) {
+			assertEquals("Queue full", Reason.QUEUE_FULL, e.getReason());
+		}
+		holder.release();
+		queued.join(5000);
+		assertEquals("Queued request admitted", Arrays.asList("a1"), order);
+		// the slot is free again once the queued request is admitted
+		Permit next = control.acquire(EndpointClass.QUERY, "b", false);
+		Thread requeued = queue(control, "b", "b1", order, 1);
+		next.release();
+		requeued.join(5000);
+		assertEquals("Slot reused", Arrays.asList("a1", "b1"), order);
+	}
+
+	private static Thread queue(AdmissionControl control, String client, String name, List<String> order,
+			int expectedQueue) throws InterruptedException {
+		Thread thread = new Thread(() -> {
+			try {
+				Permit permit = control.acquire(EndpointClass.QUERY, client, false);
+				order.add(name);
+				permit.release();
+			} catch (RejectedException e) {
+				order.add(name + " rejected");
+			}
+		});
+		thread.start();
+		long end = System.currentTimeMillis() + 5000;
+		while (control.getQueued(EndpointClass.QUERY) < expectedQueue && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		return thread;
+	}
+
+}
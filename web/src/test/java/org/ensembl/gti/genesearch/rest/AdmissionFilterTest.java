@@ -0,0 +1,70 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.ensembl.gti.genesearch.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl;
+import org.ensembl.gti.genesearch.services.filters.AdmissionControl.EndpointClass;
+import org.ensembl.gti.genesearch.services.filters.AdmissionFilter;
+import org.glassfish.jersey.uri.UriComponent;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AdmissionFilterTest {
+
+	private static AdmissionFilter filter(String keys) {
+		return new AdmissionFilter(new AdmissionControl(new MockEnvironment(), new SimpleMeterRegistry()),
+				"X-API-Key", false, keys);
+	}
+
+	@Test
+	public void testKnownKeys() {
+		AdmissionFilter filter = filter("abc, def");
+		assertTrue("Listed key known", filter.isKnownKey("abc"));
+		assertTrue("Trimmed key known", filter.isKnownKey("def"));
+		assertFalse("Unlisted key ignored", filter.isKnownKey("xyz"));
+		assertFalse("Missing key ignored", filter.isKnownKey(null));
+	}
+
+	@Test
+	public void testNoKeys() {
+		AdmissionFilter filter = filter("");
+		assertFalse("No keys recognised", filter.isKnownKey("abc"));
+		assertFalse("Empty key ignored", filter.isKnownKey(""));
+	}
+
+	@Test
+	public void testClassify() {
+		assertNull("Health not limited", AdmissionFilter.classify(UriComponent.decodePath("health", true)));
+		assertNull("Type health not limited",
+				AdmissionFilter.classify(UriComponent.decodePath("genes/health", true)));
+		assertNull("Variant health not limited",
+				AdmissionFilter.classify(UriComponent.decodePath("variants/health", true)));
+		assertNull("Info not limited", AdmissionFilter.classify(UriComponent.decodePath("genes/info", true)));
+		assertEquals("Query limited", EndpointClass.QUERY,
+				AdmissionFilter.classify(UriComponent.decodePath("genes/query", true)));
+		assertEquals("Fetch limited", EndpointClass.FETCH,
+				AdmissionFilter.classify(UriComponent.decodePath("genes/fetch", true)));
+		assertEquals("Object limited", EndpointClass.OBJECT,
+				AdmissionFilter.classify(UriComponent.decodePath("genes/ENSG00000139618", true)));
+	}
+
+}
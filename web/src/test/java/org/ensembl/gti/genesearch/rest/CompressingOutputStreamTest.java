@@ -0,0 +1,88 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.ensembl.gti.genesearch.services.filters.CompressingOutputStream;
+import org.junit.Test;
+
+public class CompressingOutputStreamTest {
+
+	private static final String LINE = "{\"id\":\"ENSG00000139618\",\"name\":\"BRCA2\",\"biotype\":\"protein_coding\"}\n";
+
+	@Test
+	public void testGzip() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		String text = write(CompressingOutputStream.gzip(os, 6), os);
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+			assertEquals("gzip round trip", text, IOUtils.toString(in, StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void testDeflate() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		String text = write(CompressingOutputStream.deflate(os, 1), os);
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+			assertEquals("deflate round trip", text, IOUtils.toString(in, StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void testCloseOnOtherThread() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		CompressingOutputStream cos = CompressingOutputStream.gzip(os, 6);
+		cos.write(LINE.getBytes(StandardCharsets.UTF_8));
+		Thread closer = new Thread(() -> {
+			try {
+				cos.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		closer.start();
+		closer.join();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+			assertEquals("closed on other thread", LINE, IOUtils.toString(in, StandardCharsets.UTF_8));
+		}
+		// the owner thread can still compress after the cross-thread close
+		testGzip();
+	}
+
+	private static String write(CompressingOutputStream cos, ByteArrayOutputStream os) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			cos.write(LINE.getBytes(StandardCharsets.UTF_8));
+			text.append(LINE);
+		}
+		cos.flush();
+		assertTrue("Flush writes compressed output", os.size() > 0);
+		assertTrue("Output compressed", os.size() < text.length() / 10);
+		cos.close();
+		return text.toString();
+	}
+
+}
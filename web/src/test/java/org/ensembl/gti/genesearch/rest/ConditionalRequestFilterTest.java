@@ -0,0 +1,71 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+
+import org.ensembl.gti.genesearch.services.filters.ConditionalRequestFilter;
+import org.junit.Test;
+
+public class ConditionalRequestFilterTest {
+
+	@Test
+	public void testTag() {
+		String tag = ConditionalRequestFilter.computeTag("v1", uri("genes/query", "query", "{}", "fields", "id,name"),
+				"application/json");
+		assertTrue("Weak tag", tag.startsWith("W/\""));
+		assertEquals("Parameter order ignored", tag, ConditionalRequestFilter.computeTag("v1",
+				uri("genes/query", "fields", "id,name", "query", "{}"), "application/json"));
+		assertNotEquals("Version changes tag", tag, ConditionalRequestFilter.computeTag("v2",
+				uri("genes/query", "query", "{}", "fields", "id,name"), "application/json"));
+		assertNotEquals("Accept changes tag", tag, ConditionalRequestFilter.computeTag("v1",
+				uri("genes/query", "query", "{}", "fields", "id,name"), "application/javascript"));
+		assertNotEquals("Parameters change tag", tag, ConditionalRequestFilter.computeTag("v1",
+				uri("genes/query", "query", "{}", "fields", "id"), "application/json"));
+	}
+
+	@Test
+	public void testMatches() {
+		String tag = "W/\"abc\"";
+		assertFalse("No header", ConditionalRequestFilter.matches(null, tag));
+		assertTrue("Same tag", ConditionalRequestFilter.matches(tag, tag));
+		assertTrue("Strong form", ConditionalRequestFilter.matches("\"abc\"", tag));
+		assertTrue("List", ConditionalRequestFilter.matches("\"xyz\", W/\"abc\"", tag));
+		assertTrue("Wildcard", ConditionalRequestFilter.matches("*", tag));
+		assertFalse("Different tag", ConditionalRequestFilter.matches("W/\"xyz\"", tag));
+	}
+
+	private static UriInfo uri(String path, String... params) {
+		MultivaluedMap<String, String> map = new MultivaluedHashMap<>();
+		for (int i = 0; i < params.length; i += 2) {
+			map.put(params[i], Arrays.asList(params[i + 1]));
+		}
+		UriInfo uri = mock(UriInfo.class);
+		when(uri.getPath()).thenReturn(path);
+		when(uri.getQueryParameters()).thenReturn(map);
+		return uri;
+	}
+
+}
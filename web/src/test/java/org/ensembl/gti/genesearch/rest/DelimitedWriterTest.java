@@ -0,0 +1,68 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ensembl.gti.genesearch.services.converter.DelimitedWriter;
+import org.ensembl.gti.genesearch.services.converter.DelimitedWriter.Dialect;
+import org.junit.Test;
+
+public class DelimitedWriterTest {
+
+	private static final List<String> NAMES = Arrays.asList("id", "name", "synonyms", "transcripts", "missing");
+
+	private static String write(Dialect dialect) throws IOException {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("id", "G1");
+		map.put("name", "a \"quoted\",\tname");
+		map.put("synonyms", Arrays.asList("x", "y"));
+		map.put("transcripts", Collections.singletonList(Collections.singletonMap("id", "T1")));
+		StringWriter out = new StringWriter();
+		try (DelimitedWriter writer = new DelimitedWriter(out, dialect)) {
+			writer.writeHeader(NAMES);
+			writer.writeRow(NAMES, map);
+		}
+		return out.toString();
+	}
+
+	@Test
+	public void testCsv() throws IOException {
+		assertEquals("CSV quoted", "id,name,synonyms,transcripts,missing\n"
+				+ "G1,\"a \"\"quoted\"\",\tname\",x;y,\"[{\"\"id\"\":\"\"T1\"\"}]\",\n", write(Dialect.CSV));
+	}
+
+	@Test
+	public void testExcel() throws IOException {
+		String excel = write(Dialect.EXCEL);
+		assertEquals("BOM written", '\uFEFF', excel.charAt(0));
+		assertEquals("CRLF line endings", "id,name,synonyms,transcripts,missing\r\n",
+				excel.substring(1, excel.indexOf('\n') + 1));
+	}
+
+	@Test
+	public void testTsv() throws IOException {
+		assertEquals("TSV unquoted", "id\tname\tsynonyms\ttranscripts\tmissing\n"
+				+ "G1\ta \"quoted\", name\tx;y\t[{\"id\":\"T1\"}]\t\n", write(Dialect.TSV));
+	}
+
+}
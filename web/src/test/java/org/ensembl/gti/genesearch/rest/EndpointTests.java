@@ -36,6 +36,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.TestExecutionListeners;
@@ -55,7 +56,7 @@ import static org.junit.Assert.*;
  */
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringBootTest(classes = Application.class,
-        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "admission.enabled=false")
 @SpringBootApplication
 @TestExecutionListeners(DependencyInjectionTestExecutionListener.class)
 public class EndpointTests extends WebAppTests {
@@ -175,6 +176,31 @@ public class EndpointTests extends WebAppTests {
         assertEquals("Name found", "5_8S_rRNA", results.get(0).get("name"));
     }
 
+    @Test
+    public void testCountGetEndpoint() {
+        Map<String, Object> result = getUrlToObject(MAP_REF, restTemplate, getServiceUrl(GENES_COUNT));
+        assertEquals("Checking all results counted", 598, Long.parseLong(result.get("resultCount").toString()));
+        result = getUrlToObject(MAP_REF, restTemplate, getServiceUrl(GENES_COUNT) + "?query={query}",
+                "{\"genome\":\"nanoarchaeum_equitans_kin4_m\",\"biotype\":\"nonsense\"}");
+        assertEquals("Checking no results counted", 0, Long.parseLong(result.get("resultCount").toString()));
+    }
+
+    @Test
+    public void testCountPostEndpoint() {
+        Map<String, Object> result = postUrlToObject(MAP_REF, restTemplate, getServiceUrl(GENES_COUNT),
+                "{\"query\":{\"genome\":\"nanoarchaeum_equitans_kin4_m\"}}");
+        assertEquals("Checking all results counted", 598, Long.parseLong(result.get("resultCount").toString()));
+    }
+
+    @Test
+    public void testExistsGetEndpoint() {
+        Map<String, Object> result = getUrlToObject(MAP_REF, restTemplate, getServiceUrl(GENES_COUNT) + "/exists");
+        assertEquals("Checking results exist", true, result.get("exists"));
+        result = getUrlToObject(MAP_REF, restTemplate, getServiceUrl(GENES_COUNT) + "/exists?query={query}",
+                "{\"biotype\":\"nonsense\"}");
+        assertEquals("Checking no results exist", false, result.get("exists"));
+    }
+
     @Test
     public void testFetchGetEndpoint() {
         Map<String, Object> results = getUrlToObject(MAP_REF, restTemplate, getServiceUrl(GENES_FETCH));
@@ -199,6 +225,60 @@ public class EndpointTests extends WebAppTests {
         }
     }
 
+    @Test
+    public void testFetchNdjsonGetEndpoint() throws IOException {
+        String url = getServiceUrl(GENES_FETCH) + "?accept=" + Application.APPLICATION_NDJSON + "&header=true";
+        String[] lines = restTemplate.getForObject(url, String.class).split("\n");
+        assertEquals("Checking header and all results found", 599, lines.length);
+        Map<String, Object> header = new ObjectMapper().readValue(lines[0], MAP_REF);
+        assertTrue("Fields found in header", header.containsKey("fields"));
+        Map<String, Object> result = new ObjectMapper().readValue(lines[1], MAP_REF);
+        assertTrue("ID found", result.containsKey("id"));
+        assertFalse("Transcripts found", result.containsKey("transcripts"));
+    }
+
+    @Test
+    public void testFetchNdjsonPostEndpoint() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(Arrays.asList(MediaType.parseMediaType(Application.APPLICATION_NDJSON)));
+        ResponseEntity<String> response = restTemplate.exchange(getServiceUrl(GENES_FETCH), HttpMethod.POST,
+                new HttpEntity<>("{\"fields\":[\"id\"]}", headers), String.class);
+        assertEquals("Negotiated ndjson", 200, response.getStatusCodeValue());
+        String[] lines = response.getBody().split("\n");
+        assertEquals("Checking all results found", 598, lines.length);
+        Map<String, Object> result = new ObjectMapper().readValue(lines[0], MAP_REF);
+        assertTrue("ID found", result.containsKey("id"));
+    }
+
+    @Test
+    public void testFetchDelimitedAcceptHeader() {
+        for (String type : Arrays.asList(Application.TEXT_TSV, Application.TEXT_CSV)) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setAccept(Arrays.asList(MediaType.parseMediaType(type)));
+            ResponseEntity<String> response = restTemplate.exchange(getServiceUrl(GENES_FETCH) + "?fields=id,name",
+                    HttpMethod.GET, new HttpEntity<>(headers), String.class);
+            assertTrue("Negotiated " + type, response.getHeaders().getContentType().toString().startsWith(type));
+            String body = response.getBody();
+            assertFalse("No byte order mark for " + type, body.startsWith("\uFEFF"));
+            assertFalse("No CRLF for " + type, body.contains("\r\n"));
+            String header = body.split("\n")[0];
+            String delimiter = Application.TEXT_TSV.equals(type) ? "\t" : ",";
+            assertTrue("Header for " + type, header.startsWith("id" + delimiter));
+        }
+    }
+
+    @Test
+    public void testFetchSampleHeaderRejected() {
+        for (String type : Arrays.asList(Application.TEXT_TSV, Application.TEXT_CSV, Application.APPLICATION_EXCEL,
+                Application.APPLICATION_ARROW_STREAM)) {
+            ResponseEntity<String> response = restTemplate.exchange(
+                    getServiceUrl(GENES_FETCH) + "?accept=" + type + "&query={query}", HttpMethod.GET, null,
+                    String.class, "{\"sample_metadata\":\"header\"}");
+            assertEquals("Header mode rejected for " + type, 400, response.getStatusCodeValue());
+        }
+    }
+
     @Test
     public void testFetchPostEndpoint() {
         Map<String, Object> result = postUrlToObject(MAP_REF, restTemplate, getServiceUrl(GENES_FETCH), "{}");
@@ -0,0 +1,107 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.ensembl.genesearch.Search;
+import org.ensembl.gti.genesearch.services.HealthMonitor;
+import org.ensembl.gti.genesearch.services.HealthMonitor.Status;
+import org.junit.After;
+import org.junit.Test;
+
+public class HealthMonitorTest {
+
+	private final HealthMonitor monitor = new HealthMonitor(60, 200, 60);
+
+	@After
+	public void tearDown() {
+		monitor.shutdown();
+	}
+
+	/**
+	 * Wait for the first probe of a registered search to complete
+	 */
+	private Status awaitProbe(Search search) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		Status status = monitor.getStatus(search);
+		while (Status.UNKNOWN.equals(status.getState()) && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+			status = monitor.getStatus(search);
+		}
+		return status;
+	}
+
+	@Test
+	public void testUp() throws InterruptedException {
+		Search search = mock(Search.class);
+		when(search.up()).thenReturn(true);
+		monitor.registerAll(Arrays.asList(search));
+		Status status = awaitProbe(search);
+		assertTrue("Search up", status.isUp());
+		assertEquals("Status reported", Status.UP, status.toMap().get("status"));
+		// second request uses cached status
+		assertTrue("Search still up", monitor.getStatus(search).isUp());
+		verify(search, times(1)).up();
+	}
+
+	@Test
+	public void testDown() throws InterruptedException {
+		Search down = mock(Search.class);
+		when(down.up()).thenReturn(false);
+		Search broken = mock(Search.class);
+		when(broken.up()).thenThrow(new IllegalStateException("broken"));
+		monitor.registerAll(Arrays.asList(down, broken));
+		assertEquals("Search down", Status.DOWN, awaitProbe(down).getState());
+		assertEquals("Search failed", Status.ERROR, awaitProbe(broken).getState());
+	}
+
+	@Test
+	public void testTimeout() throws InterruptedException {
+		Search slow = mock(Search.class);
+		when(slow.up()).thenAnswer(i -> {
+			Thread.sleep(5000);
+			return true;
+		});
+		monitor.registerAll(Arrays.asList(slow));
+		long start = System.currentTimeMillis();
+		Status status = awaitProbe(slow);
+		assertTrue("Returned after timeout", System.currentTimeMillis() - start < 2000);
+		assertFalse("Slow search not up", status.isUp());
+		assertEquals("Timed out", Status.TIMEOUT, status.getState());
+	}
+
+	@Test
+	public void testUnregisteredDoesNotWait() throws InterruptedException {
+		Search slow = mock(Search.class);
+		when(slow.up()).thenAnswer(i -> {
+			Thread.sleep(5000);
+			return true;
+		});
+		long start = System.currentTimeMillis();
+		Status status = monitor.getStatus(slow);
+		assertTrue("Returned without waiting for probe", System.currentTimeMillis() - start < 100);
+		assertEquals("Unknown until probed", Status.UNKNOWN, status.getState());
+		assertEquals("Probe started on first request", Status.TIMEOUT, awaitProbe(slow).getState());
+	}
+
+}
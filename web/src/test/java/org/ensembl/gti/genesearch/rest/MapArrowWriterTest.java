@@ -0,0 +1,81 @@
+/*
+ *  See the NOTICE file distributed with this work for additional information
+ *  regarding copyright ownership.
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.ensembl.gti.genesearch.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.ensembl.genesearch.info.FieldInfo;
+import org.ensembl.genesearch.info.FieldType;
+import org.ensembl.gti.genesearch.services.converter.MapArrowWriter;
+import org.junit.Test;
+
+public class MapArrowWriterTest {
+
+	@Test
+	public void testBatches() throws IOException {
+		List<FieldInfo> fields = Arrays.asList(new FieldInfo("id", FieldType.ID),
+				new FieldInfo("start", FieldType.NUMBER), new FieldInfo("transcripts", FieldType.NESTED));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (MapArrowWriter writer = new MapArrowWriter(fields, os, 2)) {
+			for (int i = 0; i < 5; i++) {
+				Map<String, Object> map = new HashMap<>();
+				map.put("id", "G" + i);
+				map.put("start", i * 10);
+				if (i == 0) {
+					map.put("transcripts", Collections.singletonList(Collections.singletonMap("id", "T1")));
+				}
+				writer.write(map);
+			}
+		}
+		try (RootAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+				ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(os.toByteArray()),
+						allocator)) {
+			VectorSchemaRoot root = reader.getVectorSchemaRoot();
+			assertEquals("3 columns", 3, root.getSchema().getFields().size());
+			int batches = 0;
+			int rows = 0;
+			while (reader.loadNextBatch()) {
+				if (batches == 0) {
+					assertEquals("ID", "G0", ((VarCharVector) root.getVector("id")).getObject(0).toString());
+					assertEquals("Start", 0.0, ((Float8Vector) root.getVector("start")).get(0), 0.0);
+					assertEquals("Nested as JSON", "[{\"id\":\"T1\"}]",
+							((VarCharVector) root.getVector("transcripts")).getObject(0).toString());
+					assertTrue("Missing value null", root.getVector("transcripts").isNull(1));
+					assertFalse("Present value not null", root.getVector("id").isNull(1));
+				}
+				batches++;
+				rows += root.getRowCount();
+			}
+			assertEquals("3 batches", 3, batches);
+			assertEquals("5 rows", 5, rows);
+		}
+	}
+
+}
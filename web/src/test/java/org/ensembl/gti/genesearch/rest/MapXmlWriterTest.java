@@ -14,6 +14,7 @@
 package org.ensembl.gti.genesearch.rest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
@@ -44,7 +45,10 @@ public class MapXmlWriterTest {
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(os);
 		MapXmlWriter writer = new MapXmlWriter(xsw);
+		writer.openDoc();
 		writer.writeData("test", map);
+		writer.endDoc();
+		xsw.flush();
 		String xml = new String(os.toByteArray(), "UTF-8");
 		log.debug("xml" + os.toString());
 		assertEquals("Correct XML", "<?xml version='1.0' encoding='UTF-8'?><test 1=\"one\" 2=\"two\"/>", xml);
@@ -64,7 +68,10 @@ public class MapXmlWriterTest {
 		log.debug("outputStream:" + os.toString());
 		XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(os);
 		MapXmlWriter writer = new MapXmlWriter(xsw);
+		writer.openDoc();
 		writer.writeData("test", map);
+		writer.endDoc();
+		xsw.flush();
 		String xml = new String(os.toByteArray(), "UTF-8");
 		log.debug(xml);
 		assertEquals("Correct XML",
@@ -79,7 +86,10 @@ public class MapXmlWriterTest {
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(os);
 		MapXmlWriter writer = new MapXmlWriter(xsw);
+		writer.openDoc();
 		writer.writeData("tests", list);
+		writer.endDoc();
+		xsw.flush();
 		String xml = new String(os.toByteArray(), "UTF-8");
 		log.debug(xml);
 		assertEquals("Correct XML", "<?xml version='1.0' encoding='UTF-8'?><tests><test>three</test><test>four</test></tests>", xml);
@@ -97,7 +107,10 @@ public class MapXmlWriterTest {
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		XMLStreamWriter xsw = XMLOutputFactory.newInstance().createXMLStreamWriter(os);
 		MapXmlWriter writer = new MapXmlWriter(xsw);
+		writer.openDoc();
 		writer.writeData("test", map);
+		writer.endDoc();
+		xsw.flush();
 		String xml = new String(os.toByteArray(), "UTF-8");
 		log.debug(xml);
 		assertEquals("Correct XML",
@@ -105,4 +118,26 @@ public class MapXmlWriterTest {
 				xml);
 	}
 
+	@Test
+	public void testStream() throws XMLStreamException, FactoryConfigurationError, UnsupportedEncodingException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		XMLStreamWriter xsw = MapXmlWriter.createWriter(os);
+		MapXmlWriter writer = new MapXmlWriter(xsw);
+		writer.openDoc();
+		xsw.writeStartElement("tests");
+		for (int i = 0; i < 2; i++) {
+			Map<String, Object> map = new HashMap<>();
+			map.put("id", String.valueOf(i));
+			writer.writeData("test", map);
+		}
+		xsw.writeEndElement();
+		writer.endDoc();
+		assertEquals("Output buffered until flushed", 0, os.size());
+		xsw.flush();
+		String xml = new String(os.toByteArray(), "UTF-8");
+		log.debug(xml);
+		assertTrue("Single document", xml.startsWith("<?xml") && xml.indexOf("<?xml", 1) == -1);
+		assertTrue("Correct XML", xml.endsWith("<tests><test id=\"0\"/><test id=\"1\"/></tests>"));
+	}
+
 }
@@ -24,6 +24,7 @@ public class WebAppTests {
 
     String GENES_FETCH = "genes/fetch";
     String GENES_QUERY = "genes/query";
+    String GENES_COUNT = "genes/count";
     String GENOMES_FETCH = "genomes/fetch";
     String GENOMES_QUERY = "genomes/query";
     String GENOMES_SELECT = "genomes/select";